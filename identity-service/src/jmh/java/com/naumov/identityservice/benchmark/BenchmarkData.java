@@ -0,0 +1,124 @@
+package com.naumov.identityservice.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.naumov.identityservice.config.ContextConfiguration;
+import com.naumov.identityservice.dto.DtoConverter;
+import com.naumov.identityservice.dto.rq.PersonCreateUpdateRequest;
+import com.naumov.identityservice.model.IdentityDocument;
+import com.naumov.identityservice.model.Person;
+import com.naumov.identityservice.model.PersonAddress;
+import com.naumov.identityservice.repository.projection.PersonBulkView;
+
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Typical request and entities of a person with two addresses, two contacts and three identity documents.
+ * Strings contain characters that have to be escaped, as the real data does.
+ */
+final class BenchmarkData {
+    static final String PERSON_REQUEST_JSON = "{" +
+            "\"name\":\"Иванов Иван \\\"Младший\\\" Иванович\"," +
+            "\"date_of_birth\":\"12-01-1990\"," +
+            "\"is_hidden\":false," +
+            "\"addresses\":[" +
+            "{\"region\":\"Иркутская область\",\"address\":\"г. Иркутск, ул. Ленина, д. 1, кв. 1\"," +
+            "\"registration_address\":true}," +
+            "{\"region\":\"Москва\",\"address\":\"ул. Тверская/Пушкинская, д. 10\"," +
+            "\"registration_address\":false}]," +
+            "\"contacts\":[{\"phone_number\":\"+71234567890\"},{\"phone_number\":\"+71234567891\"}]," +
+            "\"identity_documents\":[" +
+            "{\"type\":\"INNER_PASSPORT\",\"full_number\":\"2510123456\",\"issue_date\":\"12-01-2010\"," +
+            "\"is_primary\":true}," +
+            "{\"type\":\"INTERNATIONAL_PASSPORT\",\"full_number\":\"750123456\",\"issue_date\":\"01-02-2015\"," +
+            "\"is_primary\":false}," +
+            "{\"type\":\"DRIVER_LICENSE\",\"full_number\":\"2626262626\",\"issue_date\":\"21-12-2021\"," +
+            "\"is_primary\":false}]" +
+            "}";
+
+    static ObjectMapper objectMapper() {
+        return new ContextConfiguration().objectMapper();
+    }
+
+    static PersonCreateUpdateRequest personRequest(ObjectMapper objectMapper) {
+        try {
+            return objectMapper.readValue(PERSON_REQUEST_JSON, PersonCreateUpdateRequest.class);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // the person as if it was saved: all entities have ids
+    static Person savedPerson(ObjectMapper objectMapper, DtoConverter dtoConverter) {
+        Person person = dtoConverter.fromPersonCreateUpdateRequest(personRequest(objectMapper));
+        AtomicLong ids = new AtomicLong(1);
+
+        person.setId(ids.getAndIncrement());
+        for (PersonAddress addressRecord : person.getAddressRecords()) {
+            addressRecord.setId(ids.getAndIncrement());
+            addressRecord.getAddress().setId(ids.getAndIncrement());
+            addressRecord.getAddress().getRegion().setId(ids.getAndIncrement());
+        }
+        person.getContacts().forEach(contact -> contact.setId(ids.getAndIncrement()));
+        person.getIdentityDocuments().forEach(document -> document.setId(ids.getAndIncrement()));
+
+        return person;
+    }
+
+    static PersonBulkView personBulkView() {
+        return new PersonBulkView() {
+            public Long getId() {
+                return 1L;
+            }
+
+            public String getName() {
+                return "Иванов Иван \"Младший\" Иванович";
+            }
+
+            public LocalDate getDateOfBirth() {
+                return LocalDate.of(1990, 1, 12);
+            }
+
+            public Long getDocumentId() {
+                return 2L;
+            }
+
+            public IdentityDocument.DocumentType getDocumentType() {
+                return IdentityDocument.DocumentType.INNER_PASSPORT;
+            }
+
+            public String getDocumentFullNumber() {
+                return "2510123456";
+            }
+
+            public LocalDate getDocumentIssueDate() {
+                return LocalDate.of(2010, 1, 12);
+            }
+
+            public Long getContactId() {
+                return 3L;
+            }
+
+            public String getContactPhoneNumber() {
+                return "+71234567890";
+            }
+
+            public Long getAddressId() {
+                return 4L;
+            }
+
+            public String getRegionName() {
+                return "Иркутская область";
+            }
+
+            public String getAddress() {
+                return "г. Иркутск, ул. Ленина, д. 1, кв. 1";
+            }
+        };
+    }
+
+    private BenchmarkData() {
+    }
+}
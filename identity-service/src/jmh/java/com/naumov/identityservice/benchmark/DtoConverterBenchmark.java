@@ -0,0 +1,55 @@
+package com.naumov.identityservice.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.naumov.identityservice.dto.DtoConverter;
+import com.naumov.identityservice.dto.rq.PersonCreateUpdateRequest;
+import com.naumov.identityservice.dto.rs.PersonCreateUpdateResponse;
+import com.naumov.identityservice.dto.rs.PersonGetBulkResponse;
+import com.naumov.identityservice.dto.rs.PersonGetResponse;
+import com.naumov.identityservice.model.Person;
+import com.naumov.identityservice.repository.projection.PersonBulkView;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DtoConverterBenchmark {
+    private DtoConverter dtoConverter;
+    private PersonCreateUpdateRequest personRequest;
+    private Person savedPerson;
+    private PersonBulkView personBulkView;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = BenchmarkData.objectMapper();
+        dtoConverter = new DtoConverter();
+        personRequest = BenchmarkData.personRequest(objectMapper);
+        savedPerson = BenchmarkData.savedPerson(objectMapper, dtoConverter);
+        personBulkView = BenchmarkData.personBulkView();
+    }
+
+    @Benchmark
+    public Person fromPersonCreateUpdateRequest() {
+        return dtoConverter.fromPersonCreateUpdateRequest(personRequest);
+    }
+
+    @Benchmark
+    public PersonCreateUpdateResponse toPersonCreateUpdateResponse() {
+        return dtoConverter.toPersonCreateUpdateResponse(savedPerson);
+    }
+
+    @Benchmark
+    public PersonGetResponse toPersonGetResponse() {
+        return dtoConverter.toPersonGetResponse(savedPerson);
+    }
+
+    @Benchmark
+    public PersonGetBulkResponse toPersonGetBulkResponse() {
+        return dtoConverter.toPersonGetBulkResponse(personBulkView);
+    }
+}
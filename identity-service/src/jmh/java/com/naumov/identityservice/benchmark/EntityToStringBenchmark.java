@@ -0,0 +1,63 @@
+package com.naumov.identityservice.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.naumov.identityservice.dto.DtoConverter;
+import com.naumov.identityservice.model.Address;
+import com.naumov.identityservice.model.IdentityDocument;
+import com.naumov.identityservice.model.Person;
+import com.naumov.identityservice.util.JsonUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hand-written JSON toString of the entities, it is called on every logged entity.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EntityToStringBenchmark {
+    private Person person;
+    private Address address;
+    private IdentityDocument identityDocument;
+    private String plainString;
+    private String escapedString;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = BenchmarkData.objectMapper();
+        person = BenchmarkData.savedPerson(objectMapper, new DtoConverter());
+        address = person.getAddressRecords().stream().skip(1).findFirst().orElseThrow().getAddress();
+        identityDocument = person.getIdentityDocuments().iterator().next();
+        plainString = "г. Иркутск, ул. Ленина, д. 1, кв. 1";
+        escapedString = "ул. Тверская\\tПушкинская, д. 10\\n";
+    }
+
+    @Benchmark
+    public String personToString() {
+        return person.toString();
+    }
+
+    @Benchmark
+    public String addressToString() {
+        return address.toString();
+    }
+
+    @Benchmark
+    public String identityDocumentToString() {
+        return identityDocument.toString();
+    }
+
+    @Benchmark
+    public String translateEscapesPlain() {
+        return JsonUtil.translateEscapes(plainString);
+    }
+
+    @Benchmark
+    public String translateEscapesEscaped() {
+        return JsonUtil.translateEscapes(escapedString);
+    }
+}
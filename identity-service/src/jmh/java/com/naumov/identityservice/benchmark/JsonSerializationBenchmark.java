@@ -0,0 +1,54 @@
+package com.naumov.identityservice.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.naumov.identityservice.dto.DtoConverter;
+import com.naumov.identityservice.dto.rq.PersonCreateUpdateRequest;
+import com.naumov.identityservice.dto.rs.PersonGetBulkResponse;
+import com.naumov.identityservice.dto.rs.PersonGetResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson (de)serialization with the application ObjectMapper configuration.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonSerializationBenchmark {
+    private ObjectMapper objectMapper;
+    private ObjectWriter personGetResponseWriter;
+    private ObjectWriter personGetBulkResponseWriter;
+    private PersonGetResponse personGetResponse;
+    private PersonGetBulkResponse personGetBulkResponse;
+
+    @Setup
+    public void setUp() {
+        DtoConverter dtoConverter = new DtoConverter();
+        objectMapper = BenchmarkData.objectMapper();
+        personGetResponseWriter = objectMapper.writerFor(PersonGetResponse.class);
+        personGetBulkResponseWriter = objectMapper.writerFor(PersonGetBulkResponse.class);
+        personGetResponse = dtoConverter.toPersonGetResponse(BenchmarkData.savedPerson(objectMapper, dtoConverter));
+        personGetBulkResponse = dtoConverter.toPersonGetBulkResponse(BenchmarkData.personBulkView());
+    }
+
+    @Benchmark
+    public byte[] writePersonGetResponse() throws JsonProcessingException {
+        return personGetResponseWriter.writeValueAsBytes(personGetResponse);
+    }
+
+    @Benchmark
+    public byte[] writePersonGetBulkResponse() throws JsonProcessingException {
+        return personGetBulkResponseWriter.writeValueAsBytes(personGetBulkResponse);
+    }
+
+    @Benchmark
+    public PersonCreateUpdateRequest readPersonCreateUpdateRequest() throws JsonProcessingException {
+        return objectMapper.readValue(BenchmarkData.PERSON_REQUEST_JSON, PersonCreateUpdateRequest.class);
+    }
+}
@@ -0,0 +1,67 @@
+package com.naumov.identityservice.benchmark;
+
+import com.naumov.identityservice.controller.PersonController;
+import com.naumov.identityservice.exception.BadInputException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpStatus;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logging of a client error (400) by concurrent request threads: the default configuration logs it at ERROR
+ * with the stack trace through a synchronous appender, the prod one at WARN without the stack trace through
+ * async loggers, rate-limited. Both write to size-capped files under target/benchmark-logs.
+ * <p>
+ * The async gain needs a spare core for the background thread, compare on a machine with several cores.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@State(Scope.Benchmark)
+public class LoggingBenchmark {
+    private static final int STACK_DEPTH = 80; // roughly the depth of an exception thrown under Spring MVC
+
+    private Logger logger;
+    private BadInputException exception;
+
+    @Setup
+    public void setUp() {
+        logger = LogManager.getLogger(PersonController.class);
+        exception = deepException(STACK_DEPTH);
+    }
+
+    @TearDown
+    public void tearDown() {
+        LogManager.shutdown(); // drains the async ring buffer
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-bench-dev.xml")
+    public void devErrorWithStackTrace() {
+        logger.error("Bad request, returning {}", HttpStatus.BAD_REQUEST, exception);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"-Dlog4j.configurationFile=log4j2-bench-prod.xml",
+            "-Dbench.burst.rate=1000000000"})
+    public void prodWarnWithoutRateLimit() {
+        logger.warn("Bad request, returning {}: {}", HttpStatus.BAD_REQUEST, exception.getMessage());
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-bench-prod.xml")
+    public void prodWarnRateLimited() {
+        logger.warn("Bad request, returning {}: {}", HttpStatus.BAD_REQUEST, exception.getMessage());
+    }
+
+    private static BadInputException deepException(int depth) {
+        if (depth == 0) return new BadInputException("Person's identity document with type=INNER_PASSPORT " +
+                "and fullNumber=0000000001 was requested for creation but already exists");
+
+        return deepException(depth - 1);
+    }
+}
@@ -0,0 +1,328 @@
+package com.naumov.identityservice.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.naumov.identityservice.IdentityServiceApplication;
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end load test: starts the whole service over an in-memory H2 database in PostgreSQL mode, seeds
+ * it with people through POST /people/bulk and drives a weighted mix of create, update, get, list and find
+ * requests over HTTP from several threads.
+ * <p>
+ * Reports throughput and p50/p99/p99.9/max latencies per operation, and the number of SQL statements
+ * per request taken from the Hibernate statistics. Run with
+ * <pre>
+ * mvn -P load-test test-compile exec:exec -Dloadtest.args="--people=100000 --threads=16 --duration=60"
+ * </pre>
+ * The absolute numbers are those of H2, compare runs of different revisions with the same settings.
+ * --sql-latency-ms delays every statement to imitate a remote database, --virtual-threads=true runs the service
+ * in its virtual threads mode.
+ */
+public class LoadTest {
+    private static final Path MAIN_CONFIG = Path.of("src", "main", "resources", "application.yaml");
+    private static final String[] DATES_OF_BIRTH = {"12-12-1990", "13-12-1990"};
+
+    private final LoadTestSettings settings;
+    private final String baseUri;
+    private final Statistics statistics;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Operation, OperationStats> operationStats = new EnumMap<>(Operation.class);
+    private final Map<Operation, Double> statementsPerRequest = new EnumMap<>(Operation.class);
+    private final Operation[] operationByWeight;
+    private final long[] seededIds;
+    private final AtomicLong nextNumber;
+    private volatile boolean running;
+
+    private LoadTest(LoadTestSettings settings, String baseUri, Statistics statistics) {
+        this.settings = settings;
+        this.baseUri = baseUri;
+        this.statistics = statistics;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+        this.seededIds = new long[settings.people];
+        this.nextNumber = new AtomicLong(settings.people);
+
+        List<Operation> operations = new ArrayList<>();
+        settings.weights.forEach((operation, weight) -> {
+            for (int i = 0; i < weight; i++) operations.add(operation);
+        });
+        if (operations.isEmpty()) throw new IllegalArgumentException("At least one operation weight must be positive");
+        this.operationByWeight = operations.toArray(new Operation[0]);
+
+        for (Operation operation : Operation.values()) operationStats.put(operation, new OperationStats());
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestSettings settings = LoadTestSettings.parse(args);
+        System.out.println("Load test settings: " + settings);
+
+        applicationProperties(settings).forEach((name, value) -> System.setProperty(name, String.valueOf(value)));
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(IdentityServiceApplication.class)
+                .initializers(applicationContext -> {
+                    if (settings.sqlLatencyMillis > 0) applicationContext.getBeanFactory()
+                            .addBeanPostProcessor(sqlLatencyDataSourcePostProcessor(settings.sqlLatencyMillis));
+                })
+                .run();
+        try {
+            String baseUri = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            Statistics statistics = context.getBean(EntityManagerFactory.class)
+                    .unwrap(SessionFactory.class)
+                    .getStatistics();
+
+            LoadTest loadTest = new LoadTest(settings, baseUri, statistics);
+            loadTest.seed();
+            loadTest.calibrate();
+            loadTest.run();
+            loadTest.report();
+        } finally {
+            context.close();
+        }
+    }
+
+    /*
+     * The test classpath shadows the main application.yaml with the test one, so the main config is loaded
+     * explicitly and only the database and the logging are replaced. System properties, as they take precedence
+     * over the config file.
+     * */
+    private static Map<String, Object> applicationProperties(LoadTestSettings settings) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("spring.devtools.restart.enabled", false);
+        properties.put("spring.config.location", "file:" + MAIN_CONFIG.toAbsolutePath());
+        properties.put("spring.datasource.url", "jdbc:h2:mem:loadtest;MODE=PostgreSQL;DB_CLOSE_DELAY=-1;" +
+                "DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH");
+        properties.put("spring.datasource.username", "sa");
+        properties.put("spring.datasource.password", "");
+        properties.put("spring.datasource.hikari.maximum-pool-size", settings.poolSize);
+        properties.put("spring.jpa.show-sql", false);
+        properties.put("spring.jpa.properties.hibernate.generate_statistics", true);
+        properties.put("spring.cache.type", settings.cache ? "caffeine" : "none");
+        properties.put("server.port", 0);
+        properties.put("server.tomcat.threads.max", settings.tomcatThreads);
+        properties.put("identity-service.virtual-threads.enabled", settings.virtualThreads);
+        properties.put("logging.level.root", "WARN");
+        properties.put("logging.level.org.hibernate.SQL", "WARN");
+        properties.put("logging.level.com.naumov.identityservice", "WARN");
+        return properties;
+    }
+
+    // added before the application's post processors, so the pool itself is wrapped and the delay holds a connection
+    private static BeanPostProcessor sqlLatencyDataSourcePostProcessor(long latencyMillis) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource dataSource) return new SqlLatencyDataSource(dataSource, latencyMillis);
+                return bean;
+            }
+        };
+    }
+
+    // --------------------------------------------- Phases
+
+    private void seed() throws Exception {
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(settings.seedThreads);
+        try {
+            List<Callable<Void>> batches = new ArrayList<>();
+            for (int from = 0; from < settings.people; from += settings.seedBatchSize) {
+                int batchFrom = from;
+                int batchTo = Math.min(from + settings.seedBatchSize, settings.people);
+                batches.add(() -> seedBatch(batchFrom, batchTo));
+            }
+
+            for (Future<Void> batch : executor.invokeAll(batches)) batch.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        System.out.printf("Seeded %d people in %.1f s%n", settings.people, seconds(System.nanoTime() - start));
+    }
+
+    private Void seedBatch(int from, int to) throws IOException, InterruptedException {
+        StringBuilder body = new StringBuilder();
+        for (int number = from; number < to; number++) body.append(PersonFixtures.personJson(number)).append('\n');
+
+        HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(uri("/people/bulk"))
+                        .header("Content-Type", "application/x-ndjson")
+                        .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200)
+            throw new IllegalStateException("Seeding failed with status " + response.statusCode() + ": " + response.body());
+
+        JsonNode result = objectMapper.readTree(response.body());
+        if (result.get("rejected").asInt() != 0)
+            throw new IllegalStateException("Seeding rejected people: " + response.body());
+
+        for (JsonNode item : result.get("results")) {
+            seededIds[from + item.get("index").asInt()] = item.get("id").asLong();
+        }
+
+        return null;
+    }
+
+    // sequential requests of every operation, so the statement count deltas belong to that operation only
+    private void calibrate() throws IOException, InterruptedException {
+        for (Operation operation : Operation.values()) {
+            long statementsBefore = statistics.getPrepareStatementCount();
+            for (int i = 0; i < settings.calibrationRequests; i++) send(prepare(operation, ThreadLocalRandom.current()));
+            long statements = statistics.getPrepareStatementCount() - statementsBefore;
+            statementsPerRequest.put(operation, (double) statements / settings.calibrationRequests);
+        }
+    }
+
+    private void run() throws InterruptedException {
+        running = true;
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < settings.threads; i++) {
+            Thread worker = new Thread(this::work, "load-test-worker-" + i);
+            worker.start();
+            workers.add(worker);
+        }
+
+        TimeUnit.SECONDS.sleep(settings.warmupSeconds);
+        operationStats.values().forEach(OperationStats::reset);
+        ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+        long statementsBefore = statistics.getPrepareStatementCount();
+
+        TimeUnit.SECONDS.sleep(settings.durationSeconds);
+        running = false;
+        for (Thread worker : workers) worker.join();
+
+        operationStats.values().forEach(OperationStats::finish);
+        long statements = statistics.getPrepareStatementCount() - statementsBefore;
+        long requests = operationStats.values().stream().mapToLong(OperationStats::count).sum();
+        System.out.printf("%nMixed run: %d requests, %.1f req/s, %.2f SQL statements per request%n",
+                requests, requests / (double) settings.durationSeconds, (double) statements / Math.max(1, requests));
+        System.out.printf("Peak platform threads: %d%n", ManagementFactory.getThreadMXBean().getPeakThreadCount());
+    }
+
+    private void work() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (running) {
+            Operation operation = operationByWeight[random.nextInt(operationByWeight.length)];
+            long start = System.nanoTime();
+            boolean success;
+            try {
+                HttpRequest request = prepare(operation, random);
+                start = System.nanoTime();
+                success = send(request);
+            } catch (IOException e) {
+                success = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            operationStats.get(operation).record(start, success);
+        }
+    }
+
+    private void report() {
+        System.out.printf("%n%-8s %10s %8s %10s %9s %9s %9s %9s %12s%n",
+                "op", "count", "errors", "ops/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "stmts/req");
+        for (Operation operation : Operation.values()) {
+            OperationStats stats = operationStats.get(operation);
+            System.out.printf("%-8s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %12.2f%n",
+                    operation.key(),
+                    stats.count(),
+                    stats.errors(),
+                    stats.count() / (double) settings.durationSeconds,
+                    stats.percentileMillis(50),
+                    stats.percentileMillis(99),
+                    stats.percentileMillis(99.9),
+                    stats.maxMillis(),
+                    statementsPerRequest.get(operation));
+        }
+    }
+
+    // --------------------------------------------- Operations
+
+    /*
+     * Builds the measured request of the operation. UPDATE reads the person first and sends it back with another
+     * date of birth, so only the PUT is measured.
+     * */
+    private HttpRequest prepare(Operation operation, ThreadLocalRandom random) throws IOException, InterruptedException {
+        return switch (operation) {
+            case CREATE -> HttpRequest.newBuilder(uri("/people"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(PersonFixtures.personJson(nextNumber.getAndIncrement())))
+                    .build();
+            case UPDATE -> {
+                HttpResponse<String> person = httpClient.send(get("/people/" + randomSeededId(random)),
+                        HttpResponse.BodyHandlers.ofString());
+                if (person.statusCode() != 200) throw new IOException("GET before PUT failed: " + person.statusCode());
+
+                ObjectNode updatedPerson = (ObjectNode) objectMapper.readTree(person.body());
+                updatedPerson.put("date_of_birth", DATES_OF_BIRTH[random.nextInt(DATES_OF_BIRTH.length)]);
+                yield HttpRequest.newBuilder(uri("/people"))
+                        .header("Content-Type", "application/json")
+                        .PUT(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(updatedPerson)))
+                        .build();
+            }
+            case GET -> get("/people/" + randomSeededId(random));
+            case LIST -> get("/people?after_id=" + randomSeededId(random) + "&page_size=" + settings.pageSize);
+            case FIND -> {
+                int number = random.nextInt(seededIds.length);
+                yield get("/people/find?name=" + encode(PersonFixtures.name(number)) +
+                        "&doc_type=" + PersonFixtures.docType() +
+                        "&doc_number=" + PersonFixtures.docNumber(number));
+            }
+        };
+    }
+
+    private boolean send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        return response.statusCode() / 100 == 2;
+    }
+
+    private long randomSeededId(ThreadLocalRandom random) {
+        return seededIds[random.nextInt(seededIds.length)];
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(uri(path)).GET().build();
+    }
+
+    private URI uri(String path) {
+        return URI.create(baseUri + path);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1_000_000_000.0;
+    }
+}
@@ -0,0 +1,73 @@
+package com.naumov.identityservice.loadtest;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Load test settings given as --name=value program arguments, see {@link #parse(String[])} for defaults.
+ */
+final class LoadTestSettings {
+    final int people;
+    final int seedThreads;
+    final int seedBatchSize;
+    final int threads;
+    final int warmupSeconds;
+    final int durationSeconds;
+    final int calibrationRequests;
+    final int pageSize;
+    final boolean cache;
+    final boolean virtualThreads;
+    final int tomcatThreads;
+    final int poolSize;
+    final int sqlLatencyMillis;
+    final Map<Operation, Integer> weights;
+
+    private LoadTestSettings(Map<String, String> args) {
+        people = intArg(args, "people", 100_000);
+        seedThreads = intArg(args, "seed-threads", 4);
+        seedBatchSize = intArg(args, "seed-batch-size", 5_000);
+        threads = intArg(args, "threads", 16);
+        warmupSeconds = intArg(args, "warmup", 15);
+        durationSeconds = intArg(args, "duration", 60);
+        calibrationRequests = intArg(args, "calibration-requests", 200);
+        pageSize = intArg(args, "page-size", 20);
+        cache = Boolean.parseBoolean(args.remove("cache"));
+        virtualThreads = Boolean.parseBoolean(args.remove("virtual-threads"));
+        tomcatThreads = intArg(args, "tomcat-threads", Math.max(200, threads));
+        poolSize = intArg(args, "pool-size", Math.max(12, threads));
+        sqlLatencyMillis = intArg(args, "sql-latency-ms", 0);
+
+        weights = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            weights.put(operation, intArg(args, "weight-" + operation.key(), operation.defaultWeight()));
+        }
+
+        if (!args.isEmpty()) throw new IllegalArgumentException("Unknown arguments: " + args.keySet());
+    }
+
+    static LoadTestSettings parse(String[] args) {
+        Map<String, String> parsed = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("="))
+                throw new IllegalArgumentException("Argument \"" + arg + "\" is not in --name=value form");
+
+            int separator = arg.indexOf('=');
+            parsed.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+
+        return new LoadTestSettings(parsed);
+    }
+
+    private static int intArg(Map<String, String> args, String name, int defaultValue) {
+        String value = args.remove(name);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    @Override
+    public String toString() {
+        return "people=" + people + ", threads=" + threads + ", warmup=" + warmupSeconds + "s, duration=" +
+                durationSeconds + "s, page-size=" + pageSize + ", cache=" + cache + ", virtual-threads=" + virtualThreads +
+                ", tomcat-threads=" + tomcatThreads + ", pool-size=" + poolSize + ", sql-latency-ms=" + sqlLatencyMillis + ", weights=" + weights;
+    }
+}
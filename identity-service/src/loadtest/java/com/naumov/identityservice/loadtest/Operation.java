@@ -0,0 +1,26 @@
+package com.naumov.identityservice.loadtest;
+
+/**
+ * Operations of the mixed workload with their default share of requests.
+ */
+enum Operation {
+    CREATE(10),
+    UPDATE(5),
+    GET(45),
+    LIST(20),
+    FIND(20);
+
+    private final int defaultWeight;
+
+    Operation(int defaultWeight) {
+        this.defaultWeight = defaultWeight;
+    }
+
+    int defaultWeight() {
+        return defaultWeight;
+    }
+
+    String key() {
+        return name().toLowerCase();
+    }
+}
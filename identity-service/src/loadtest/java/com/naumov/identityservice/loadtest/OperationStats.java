@@ -0,0 +1,52 @@
+package com.naumov.identityservice.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies in microseconds and errors of one operation, recorded concurrently by all the workers.
+ */
+final class OperationStats {
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final Recorder recorder = new Recorder(MAX_LATENCY_MICROS, 3);
+    private final LongAdder errors = new LongAdder();
+    private Histogram histogram;
+    private long measuredErrors;
+
+    void record(long startNanos, boolean success) {
+        long latencyMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+        recorder.recordValue(Math.min(latencyMicros, MAX_LATENCY_MICROS));
+        if (!success) errors.increment();
+    }
+
+    // drops everything recorded so far, e.g. during warmup
+    void reset() {
+        recorder.getIntervalHistogram();
+        errors.reset();
+    }
+
+    void finish() {
+        histogram = recorder.getIntervalHistogram();
+        measuredErrors = errors.sumThenReset();
+    }
+
+    long count() {
+        return histogram.getTotalCount();
+    }
+
+    long errors() {
+        return measuredErrors;
+    }
+
+    double percentileMillis(double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    double maxMillis() {
+        return histogram.getMaxValue() / 1000.0;
+    }
+}
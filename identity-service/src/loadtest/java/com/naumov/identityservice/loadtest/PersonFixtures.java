@@ -0,0 +1,42 @@
+package com.naumov.identityservice.loadtest;
+
+/**
+ * Deterministic people: the person number defines all its unique fields, so any seeded person can be
+ * found by the number without keeping its data.
+ */
+final class PersonFixtures {
+    private static final String[] REGIONS = {"Москва", "Санкт-Петербург", "Иркутская область", "Краснодарский край"};
+    private static final String DOC_TYPE = "INNER_PASSPORT";
+
+    static String name(long number) {
+        return "Person " + number;
+    }
+
+    static String docType() {
+        return DOC_TYPE;
+    }
+
+    static String docNumber(long number) {
+        return String.format("%010d", number);
+    }
+
+    static String region(long number) {
+        return REGIONS[(int) (number % REGIONS.length)];
+    }
+
+    static String personJson(long number) {
+        return "{" +
+                "\"name\":\"" + name(number) + "\"," +
+                "\"date_of_birth\":\"12-12-1990\"," +
+                "\"is_hidden\":false," +
+                "\"addresses\":[{\"region\":\"" + region(number) + "\",\"address\":\"Address " + number + "\"," +
+                "\"registration_address\":true}]," +
+                "\"contacts\":[{\"phone_number\":\"+7" + String.format("%010d", number) + "\"}]," +
+                "\"identity_documents\":[{\"type\":\"" + DOC_TYPE + "\",\"full_number\":\"" + docNumber(number) +
+                "\",\"issue_date\":\"12-12-2010\",\"is_primary\":true}]" +
+                "}";
+    }
+
+    private PersonFixtures() {
+    }
+}
@@ -0,0 +1,56 @@
+package com.naumov.identityservice.loadtest;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delays every statement execution by a fixed time, so the in-memory H2 behaves like a database over
+ * the network. The connection stays taken for the delay, as with a real database.
+ */
+final class SqlLatencyDataSource extends DelegatingDataSource {
+    private final long latencyMillis;
+
+    SqlLatencyDataSource(DataSource targetDataSource, long latencyMillis) {
+        super(targetDataSource);
+        this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return proxy(Connection.class, super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return proxy(Connection.class, super.getConnection(username, password));
+    }
+
+    private <T> T proxy(Class<? extends T> type, T target) {
+        Object proxy = Proxy.newProxyInstance(SqlLatencyDataSource.class.getClassLoader(), new Class<?>[]{type},
+                (self, method, args) -> {
+                    if (method.getName().startsWith("execute")) TimeUnit.MILLISECONDS.sleep(latencyMillis);
+                    Object result;
+                    try {
+                        result = method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+
+                    if (result instanceof CallableStatement statement) return proxy(CallableStatement.class, statement);
+                    if (result instanceof PreparedStatement statement) return proxy(PreparedStatement.class, statement);
+                    if (result instanceof Statement statement) return proxy(Statement.class, statement);
+                    return result;
+                });
+
+        return type.cast(proxy);
+    }
+}
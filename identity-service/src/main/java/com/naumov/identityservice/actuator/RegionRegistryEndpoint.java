@@ -0,0 +1,36 @@
+package com.naumov.identityservice.actuator;
+
+import com.naumov.identityservice.service.RegionRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * GET /actuator/regions shows the registry state, POST /actuator/regions reloads it
+ * after the regions table has been changed.
+ */
+@Component
+@Endpoint(id = "regions")
+public class RegionRegistryEndpoint {
+    private final RegionRegistry regionRegistry;
+
+    @Autowired
+    public RegionRegistryEndpoint(RegionRegistry regionRegistry) {
+        this.regionRegistry = regionRegistry;
+    }
+
+    @ReadOperation
+    public Map<String, Object> regions() {
+        return Map.of("size", regionRegistry.size());
+    }
+
+    @WriteOperation
+    public Map<String, Object> refresh() {
+        regionRegistry.refresh();
+        return regions();
+    }
+}
@@ -0,0 +1,48 @@
+package com.naumov.identityservice.config;
+
+import com.naumov.identityservice.datasource.AdaptivePoolSizer;
+import com.naumov.identityservice.datasource.ConnectionLimitingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.function.IntSupplier;
+
+/**
+ * Runtime sizing of the connection pool (identity-service.pool.adaptive.enabled), turned on by the adaptive-pool
+ * profile, see application-adaptive-pool.yaml. Sizes the primary pool, in the virtual threads mode from the
+ * threads waiting for its connection permits as well.
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "identity-service.pool.adaptive.enabled", havingValue = "true")
+public class AdaptivePoolConfiguration {
+
+    @Bean
+    public AdaptivePoolSizer adaptivePoolSizer(DataSource dataSource,
+                                               @Value("${identity-service.pool.adaptive.min-size}") int minSize,
+                                               @Value("${identity-service.pool.adaptive.max-size}") int maxSize,
+                                               @Value("${identity-service.pool.adaptive.window-samples}")
+                                               int windowSamples) throws SQLException {
+        HikariDataSource hikariDataSource = dataSource.unwrap(HikariDataSource.class);
+        IntSupplier queuedThreads = dataSource.isWrapperFor(ConnectionLimitingDataSource.class)
+                ? dataSource.unwrap(ConnectionLimitingDataSource.class)::getQueueLength
+                : () -> 0;
+        return new AdaptivePoolSizer(hikariDataSource, hikariDataSource::getHikariPoolMXBean, queuedThreads,
+                minSize, maxSize, windowSamples);
+    }
+
+    @Bean
+    public SchedulingConfigurer adaptivePoolSampling(AdaptivePoolSizer adaptivePoolSizer,
+                                                     @Value("${identity-service.pool.adaptive.sample-interval}")
+                                                     Duration sampleInterval) {
+        return taskRegistrar -> taskRegistrar.addFixedDelayTask(adaptivePoolSizer::sample, sampleInterval.toMillis());
+    }
+}
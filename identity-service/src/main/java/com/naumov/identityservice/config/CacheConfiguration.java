@@ -0,0 +1,16 @@
+package com.naumov.identityservice.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * Caches are configured with spring.cache.* properties and disabled with spring.cache.type=none.
+ * The caching advice wraps the transactional one, so annotated evictions happen after the transaction commit.
+ * The people cache is filled by PersonResponseCache and evicted by PersonCacheEvictions.
+ */
+@Configuration
+@EnableCaching(order = Ordered.HIGHEST_PRECEDENCE)
+public class CacheConfiguration {
+    public static final String PEOPLE_CACHE = "people";
+}
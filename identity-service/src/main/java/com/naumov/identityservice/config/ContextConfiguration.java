@@ -2,6 +2,9 @@ package com.naumov.identityservice.config;
 
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.naumov.identityservice.model.PooledLoSequenceGenerator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
@@ -15,4 +18,11 @@ public class ContextConfiguration {
                 .featuresToEnable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
                 .build();
     }
+
+    // must match the increment of the sequences, set by the same property in spring.liquibase.parameters
+    @Bean
+    public HibernatePropertiesCustomizer idAllocationSizeCustomizer(
+            @Value("${identity-service.id.allocation-size:100}") int allocationSize) {
+        return properties -> properties.put(PooledLoSequenceGenerator.ALLOCATION_SIZE_SETTING, allocationSize);
+    }
 }
@@ -0,0 +1,64 @@
+package com.naumov.identityservice.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.naumov.identityservice.dto.DtoConverter;
+import com.naumov.identityservice.dto.validation.PersonRequestValidator;
+import com.naumov.identityservice.loader.RegistryLoader;
+import com.naumov.identityservice.repository.RegionRepository;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Registry loader mode (identity-service.loader.enabled), see application-loader.yaml: loads --input, a file
+ * or - for the standard input, and writes the rejected records to --rejects, by default next to the input.
+ */
+@Configuration
+@ConditionalOnProperty(name = "identity-service.loader.enabled", havingValue = "true")
+public class RegistryLoaderConfiguration {
+    private static final Logger LOGGER = LogManager.getLogger(RegistryLoaderConfiguration.class);
+
+    @Bean
+    public RegistryLoader registryLoader(DataSource dataSource,
+                                         ObjectMapper objectMapper,
+                                         PersonRequestValidator personRequestValidator,
+                                         DtoConverter dtoConverter,
+                                         RegionRepository regionRepository,
+                                         @Value("${identity-service.id.allocation-size:100}") int allocationSize) {
+        return new RegistryLoader(dataSource, objectMapper, personRequestValidator, dtoConverter, regionRepository,
+                allocationSize);
+    }
+
+    @Bean
+    public ApplicationRunner registryLoaderRunner(RegistryLoader registryLoader) {
+        return args -> {
+            List<String> inputs = args.getOptionValues("input");
+            if (inputs == null || inputs.size() != 1)
+                throw new IllegalArgumentException("Loader mode requires one --input=<file>, - for the standard input");
+
+            String input = inputs.get(0);
+            List<String> rejects = args.getOptionValues("rejects");
+            Path rejectsPath = Path.of(rejects != null ? rejects.get(0)
+                    : input.equals("-") ? "rejects.csv" : input + ".rejects.csv");
+
+            try (InputStream in = input.equals("-") ? System.in : Files.newInputStream(Path.of(input));
+                 Writer rejectsOut = Files.newBufferedWriter(rejectsPath, StandardCharsets.UTF_8)) {
+                RegistryLoader.Result result = registryLoader.load(in, rejectsOut);
+                LOGGER.info("Loaded {} people from {}, rejected {}, see {}", result.loaded(), input,
+                        result.rejected(), rejectsPath);
+            }
+        };
+    }
+}
@@ -0,0 +1,97 @@
+package com.naumov.identityservice.config;
+
+import com.naumov.identityservice.config.VirtualThreadsConfiguration.ConnectionLimitingPostProcessor;
+import com.naumov.identityservice.datasource.ConnectionLimitingDataSource;
+import com.naumov.identityservice.datasource.ReadOnlyRoutingDataSource;
+import com.naumov.identityservice.datasource.ReplicaLagMonitor;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Read-only transactions on a PostgreSQL replica (identity-service.replica.enabled). The replica pool is
+ * configured with identity-service.replica.hikari and is not a DataSource bean, so the auto-configured primary
+ * stays the only one, wrapped into a {@link ReadOnlyRoutingDataSource} before the other data source wrappers
+ * (SQL statistics) apply. In the virtual threads mode both pools are limited by their own connection permits
+ * beneath the routing.
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "identity-service.replica.enabled", havingValue = "true")
+public class ReplicaRoutingConfiguration {
+
+    @Bean
+    public ReplicaLagMonitor replicaLagMonitor(Environment environment,
+                                               @Value("${identity-service.replica.lag-query}") String lagQuery,
+                                               @Value("${identity-service.replica.max-lag}") Duration maxLag) {
+        HikariDataSource replica = Binder.get(environment)
+                .bind("identity-service.replica.hikari", Bindable.ofInstance(new HikariDataSource()))
+                .orElseThrow(() -> new IllegalStateException("identity-service.replica.hikari is not configured"));
+
+        return new ReplicaLagMonitor(replica, lagQuery, maxLag);
+    }
+
+    @Bean
+    public SchedulingConfigurer replicaLagChecks(ReplicaLagMonitor replicaLagMonitor,
+                                                 @Value("${identity-service.replica.lag-check-interval}")
+                                                 Duration lagCheckInterval) {
+        return taskRegistrar -> taskRegistrar.addFixedDelayTask(replicaLagMonitor::checkLag,
+                lagCheckInterval.toMillis());
+    }
+
+    @Bean
+    public MeterBinder replicaMetrics(ReplicaLagMonitor replicaLagMonitor) {
+        return meterRegistry -> {
+            HikariDataSource replica = (HikariDataSource) replicaLagMonitor.getReplica();
+            replica.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            replicaLagMonitor.bindTo(meterRegistry);
+        };
+    }
+
+    // the declared type has to be Ordered, the post processors are sorted before they are instantiated
+    @Bean
+    public static ReplicaRoutingPostProcessor replicaRoutingDataSourcePostProcessor(
+            ObjectProvider<ReplicaLagMonitor> replicaLagMonitor,
+            ObjectProvider<ConnectionLimitingPostProcessor> connectionLimiting) {
+        return new ReplicaRoutingPostProcessor(replicaLagMonitor, connectionLimiting);
+    }
+
+    // runs right after the connection permits, so it wraps the pool and not the other wrappers
+    record ReplicaRoutingPostProcessor(ObjectProvider<ReplicaLagMonitor> replicaLagMonitor,
+                                       ObjectProvider<ConnectionLimitingPostProcessor> connectionLimiting)
+            implements BeanPostProcessor, Ordered {
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (bean instanceof HikariDataSource || bean instanceof ConnectionLimitingDataSource) {
+                ReplicaLagMonitor monitor = replicaLagMonitor.getObject();
+                HikariDataSource replica = (HikariDataSource) monitor.getReplica();
+                ConnectionLimitingPostProcessor limiting = connectionLimiting.getIfAvailable();
+                DataSource replicaTarget = limiting != null ? limiting.limit(replica, replica.getPoolName()) : replica;
+                return ReadOnlyRoutingDataSource.lazy((DataSource) bean, replicaTarget, monitor::isReplicaUsable);
+            }
+
+            return bean;
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.HIGHEST_PRECEDENCE + 1;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.naumov.identityservice.config;
+
+import com.naumov.identityservice.datasource.ConnectionLimitingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+
+/**
+ * Opt-in request handling on virtual threads (identity-service.virtual-threads.enabled): Tomcat runs every
+ * request on a new virtual thread instead of a worker of its bounded pool, so requests blocked on the database
+ * don't hold platform threads. The database concurrency is bounded by a {@link ConnectionLimitingDataSource}
+ * in front of every connection pool.
+ * <p>
+ * The PostgreSQL driver guards its socket I/O with locks instead of synchronized blocks since 42.6.0, so a
+ * virtual thread waiting for the database unmounts from its carrier, see postgresql.version in pom.xml.
+ */
+@Configuration
+@ConditionalOnProperty(name = "identity-service.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadsConfiguration {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadsProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    // MVC async processing, GET /people/export streams its body on this executor
+    @Bean(name = TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    public AsyncTaskExecutor applicationTaskExecutor() {
+        return new TaskExecutorAdapter(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    // the declared type has to be Ordered, the post processors are sorted before they are instantiated
+    @Bean
+    public static ConnectionLimitingPostProcessor connectionLimitingDataSourcePostProcessor(
+            @Value("${identity-service.virtual-threads.permit-timeout}") Duration permitTimeout) {
+        return new ConnectionLimitingPostProcessor(permitTimeout);
+    }
+
+    // bound separately, the registry itself depends on the data source through the pool metrics; the data source
+    // is taken first, so the replica pool is limited as well by then
+    @Bean
+    public MeterBinder connectionPermitMetrics(ConnectionLimitingPostProcessor connectionLimiting,
+                                               DataSource dataSource) {
+        return meterRegistry -> connectionLimiting.getLimitedPools()
+                .forEach(limitedPool -> limitedPool.bindTo(meterRegistry));
+    }
+
+    /**
+     * Runs first, so it wraps the pool itself and not the other wrappers, each pool gets its own permits.
+     * The replica pool is not a bean, it is limited by {@link #limit(HikariDataSource, String)} when the replica
+     * routing is set up.
+     */
+    public static final class ConnectionLimitingPostProcessor implements BeanPostProcessor, Ordered {
+        private final Duration permitTimeout;
+        private final List<ConnectionLimitingDataSource> limitedPools = new CopyOnWriteArrayList<>();
+
+        ConnectionLimitingPostProcessor(Duration permitTimeout) {
+            this.permitTimeout = permitTimeout;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (bean instanceof HikariDataSource pool) {
+                return limit(pool, pool.getPoolName() != null ? pool.getPoolName() : beanName);
+            }
+
+            return bean;
+        }
+
+        public ConnectionLimitingDataSource limit(HikariDataSource pool, String poolName) {
+            ConnectionLimitingDataSource limitedPool = new ConnectionLimitingDataSource(pool, poolName,
+                    pool::getMaximumPoolSize, permitTimeout);
+            limitedPools.add(limitedPool);
+            return limitedPool;
+        }
+
+        public List<ConnectionLimitingDataSource> getLimitedPools() {
+            return limitedPools;
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.HIGHEST_PRECEDENCE;
+        }
+    }
+}
@@ -1,27 +1,53 @@
 package com.naumov.identityservice.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.naumov.identityservice.dto.DtoConverter;
 import com.naumov.identityservice.dto.rq.PersonCreateUpdateRequest;
+import com.naumov.identityservice.dto.rq.PersonFindRequest;
+import com.naumov.identityservice.dto.rq.PersonPatchRequest;
 import com.naumov.identityservice.dto.rs.DefaultErrorResponse;
+import com.naumov.identityservice.dto.rs.PersonBatchGetResponse;
+import com.naumov.identityservice.dto.rs.PersonBulkCreateItemResponse;
+import com.naumov.identityservice.dto.rs.PersonBulkCreateResponse;
 import com.naumov.identityservice.dto.rs.PersonCreateUpdateResponse;
 import com.naumov.identityservice.dto.rs.PersonGetBulkResponse;
+import com.naumov.identityservice.dto.rs.PersonGetPageResponse;
 import com.naumov.identityservice.dto.rs.PersonGetResponse;
+import com.naumov.identityservice.dto.validation.PersonRequestValidator;
 import com.naumov.identityservice.exception.BadInputException;
 import com.naumov.identityservice.exception.ResourceNotFoundException;
+import com.naumov.identityservice.exception.VersionConflictException;
 import com.naumov.identityservice.model.Person;
+import com.naumov.identityservice.repository.projection.PersonBulkView;
+import com.naumov.identityservice.service.PersonCreateResult;
+import com.naumov.identityservice.service.PersonFindCriteria;
+import com.naumov.identityservice.service.PersonPatch;
 import com.naumov.identityservice.service.PersonService;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.hibernate.exception.JDBCConnectionException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessResourceException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.CannotCreateTransactionException;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.MissingServletRequestParameterException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.ConstraintViolationException;
 import javax.validation.Valid;
@@ -29,23 +55,52 @@ import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Positive;
 import javax.validation.constraints.PositiveOrZero;
-import java.util.List;
-import java.util.Optional;
+import javax.validation.constraints.Size;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.SQLTransientConnectionException;
+import java.util.*;
 import java.util.stream.Collectors;
 
+import static com.naumov.identityservice.util.CursorUtil.decodeCursor;
+import static com.naumov.identityservice.util.CursorUtil.encodeCursor;
+
 @RestController
 @RequestMapping("/people")
 @Validated
 public class PersonController {
     private static final Logger LOGGER = LogManager.getLogger(PersonController.class);
+    private static final int EXPORT_FLUSH_ROWS = 100;
+    private static final int FIND_BATCH_MAX_SIZE = 10000;
+    private static final int BATCH_GET_MAX_SIZE = 1000;
+    private static final String MERGE_PATCH_JSON_VALUE = "application/merge-patch+json";
+    // admin override of the hidden people filter of the list, export and find endpoints
+    private static final String INCLUDE_HIDDEN = "include_hidden";
 
     private final PersonService personService;
+    private final PersonResponseCache personResponseCache;
     private final DtoConverter dtoConverter;
+    private final ObjectMapper objectMapper;
+    private final PersonRequestValidator personRequestValidator;
+    private final int bulkChunkSize;
+    private final boolean jsonAggregation;
 
     @Autowired
-    public PersonController(PersonService personService, DtoConverter dtoConverter) {
+    public PersonController(PersonService personService,
+                            PersonResponseCache personResponseCache,
+                            DtoConverter dtoConverter,
+                            ObjectMapper objectMapper,
+                            PersonRequestValidator personRequestValidator,
+                            @Value("${identity-service.bulk.chunk-size:500}") int bulkChunkSize,
+                            @Value("${identity-service.read.json-aggregation:false}") boolean jsonAggregation) {
         this.personService = personService;
+        this.personResponseCache = personResponseCache;
         this.dtoConverter = dtoConverter;
+        this.objectMapper = objectMapper;
+        this.personRequestValidator = personRequestValidator;
+        this.bulkChunkSize = bulkChunkSize;
+        this.jsonAggregation = jsonAggregation;
     }
 
     @PostMapping
@@ -54,48 +109,274 @@ public class PersonController {
         return ResponseEntity.status(HttpStatus.CREATED).body(dtoConverter.toPersonCreateUpdateResponse(newPerson));
     }
 
+    /*
+     * Accepts either a JSON array or NDJSON (one person per line) and reads it as a stream,
+     * so the whole file is never held in memory. Every chunk of bulkChunkSize people is created
+     * in its own transaction. Invalid records are reported by their index in the input and do not
+     * affect the rest of the input; a syntactically broken record stops reading.
+     */
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<PersonBulkCreateResponse> createPeople(InputStream body) throws IOException {
+        List<PersonBulkCreateItemResponse> results = new ArrayList<>();
+        List<Integer> chunkIndexes = new ArrayList<>(bulkChunkSize);
+        List<Person> chunk = new ArrayList<>(bulkChunkSize);
+
+        try (MappingIterator<PersonCreateUpdateRequest> records = objectMapper
+                .readerFor(PersonCreateUpdateRequest.class)
+                .readValues(body)) {
+            for (int index = 0; ; index++) {
+                try {
+                    if (!records.hasNextValue()) break;
+                } catch (JsonParseException e) {
+                    results.add(bulkCreateError(index, "Malformed record, reading stopped: " + e.getOriginalMessage()));
+                    break;
+                }
+
+                try {
+                    PersonCreateUpdateRequest rq = records.nextValue();
+                    String violations = personRequestValidator.describeViolations(rq);
+                    if (violations != null) {
+                        results.add(bulkCreateError(index, violations));
+                        continue;
+                    }
+
+                    chunk.add(dtoConverter.fromPersonCreateUpdateRequest(rq));
+                    chunkIndexes.add(index);
+                } catch (JsonMappingException e) {
+                    results.add(bulkCreateError(index, e.getOriginalMessage()));
+                } catch (IllegalArgumentException e) {
+                    results.add(bulkCreateError(index, e.getMessage()));
+                }
+
+                if (chunk.size() == bulkChunkSize) createChunk(chunk, chunkIndexes, results);
+            }
+        }
+        createChunk(chunk, chunkIndexes, results);
+
+        results.sort(Comparator.comparing(PersonBulkCreateItemResponse::getIndex));
+        int rejected = (int) results.stream().filter(item -> item.getError() != null).count();
+        PersonBulkCreateResponse response = PersonBulkCreateResponse.builder()
+                .created(results.size() - rejected)
+                .rejected(rejected)
+                .results(results)
+                .build();
+
+        return ResponseEntity.status(HttpStatus.OK).body(response);
+    }
+
+    private void createChunk(List<Person> chunk, List<Integer> chunkIndexes, List<PersonBulkCreateItemResponse> results) {
+        if (chunk.isEmpty()) return;
+
+        try {
+            List<PersonCreateResult> chunkResults = personService.createPeople(chunk);
+            for (int i = 0; i < chunkResults.size(); i++) {
+                results.add(dtoConverter.toPersonBulkCreateItemResponse(chunkIndexes.get(i), chunkResults.get(i)));
+            }
+        } catch (DataIntegrityViolationException e) {
+            LOGGER.error("Bulk chunk creation failed, rejecting {} records", chunk.size(), e);
+            chunkIndexes.forEach(index -> results.add(bulkCreateError(index,
+                    "Chunk was rolled back due to a concurrent modification, retry the record")));
+        }
+
+        chunk.clear();
+        chunkIndexes.clear();
+    }
+
+    private PersonBulkCreateItemResponse bulkCreateError(int index, String error) {
+        return PersonBulkCreateItemResponse.builder()
+                .index(index)
+                .error(error)
+                .build();
+    }
+
+    /*
+     * With identity-service.read.json-aggregation the response is built by PostgreSQL in one statement
+     * and written as it is, bypassing the response cache.
+     * */
     @GetMapping("/{id}")
-    public ResponseEntity<PersonGetResponse> getPerson(@NotNull @PathVariable("id") Long personId) {
-        Person person = personService.getPerson(personId);
-        return ResponseEntity.status(HttpStatus.OK).body(dtoConverter.toPersonGetResponse(person));
+    public ResponseEntity<?> getPerson(@NotNull @PathVariable("id") Long personId) {
+        if (jsonAggregation) {
+            return ResponseEntity.status(HttpStatus.OK)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(personService.getPersonJson(personId));
+        }
+
+        return ResponseEntity.status(HttpStatus.OK).body(personResponseCache.getPerson(personId));
+    }
+
+    /*
+     * Responds with the people in the order of the requested ids, the duplicated ids are returned once.
+     * The ids of non-existing people are listed in missing_ids.
+     * */
+    @PostMapping("/batch-get")
+    public ResponseEntity<PersonBatchGetResponse> getPeopleByIds(@NotNull @Size(max = BATCH_GET_MAX_SIZE)
+                                                                 @RequestBody List<@NotNull Long> peopleIds) {
+        List<Person> people = personService.getPeople(peopleIds);
+
+        Set<Long> foundIds = people.stream()
+                .map(Person::getId)
+                .collect(Collectors.toSet());
+        List<Long> missingIds = peopleIds.stream()
+                .distinct()
+                .filter(id -> !foundIds.contains(id))
+                .collect(Collectors.toList());
+
+        PersonBatchGetResponse body = PersonBatchGetResponse.builder()
+                .people(people.stream()
+                        .map(dtoConverter::toPersonGetResponse)
+                        .collect(Collectors.toList()))
+                .missingIds(missingIds)
+                .build();
+
+        return ResponseEntity.status(HttpStatus.OK).body(body);
     }
 
     @GetMapping("/find")
     public ResponseEntity<Long> findPerson(@NotBlank @RequestParam("name") String fullName,
                                            @NotBlank @RequestParam("doc_type") String docType,
-                                           @NotBlank @RequestParam("doc_number") String docNumber) {
-        Optional<Long> optionalId = personService.findByNameAndDocument(fullName, docType, docNumber);
+                                           @NotBlank @RequestParam("doc_number") String docNumber,
+                                           @RequestParam(name = INCLUDE_HIDDEN, defaultValue = "false")
+                                           boolean includeHidden) {
+        Optional<Long> optionalId = personService.findByNameAndDocument(fullName, docType, docNumber, includeHidden);
 
         return optionalId.map(id -> ResponseEntity.status(HttpStatus.OK).body(id))
                 .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).build());
     }
 
+    /*
+     * Batch version of GET /people/find: responds with the found person id or null for every item
+     * of the request in the same order.
+     * */
+    @PostMapping("/find/batch")
+    public ResponseEntity<List<Long>> findPeople(@NotNull @Size(max = FIND_BATCH_MAX_SIZE) @RequestBody
+                                                 List<@NotNull @Valid PersonFindRequest> rq,
+                                                 @RequestParam(name = INCLUDE_HIDDEN, defaultValue = "false")
+                                                 boolean includeHidden) {
+        List<PersonFindCriteria> criteria = rq.stream()
+                .map(dtoConverter::fromPersonFindRequest)
+                .collect(Collectors.toList());
+
+        return ResponseEntity.status(HttpStatus.OK).body(personService.findByNameAndDocuments(criteria, includeHidden));
+    }
+
     @PutMapping
     public ResponseEntity<PersonCreateUpdateResponse> updatePerson(@Valid @RequestBody PersonCreateUpdateRequest rq) {
         Person updatedPerson = personService.updatePerson(dtoConverter.fromPersonCreateUpdateRequest(rq));
         return ResponseEntity.status(HttpStatus.OK).body(dtoConverter.toPersonCreateUpdateResponse(updatedPerson));
     }
 
+    /*
+     * JSON Merge Patch of a person: only the sent fields and collections are changed, a sent collection
+     * replaces the stored one. The version is required as for PUT. Responds with the new version and
+     * the ids of the items of the patched collections.
+     * */
+    @PatchMapping(value = "/{id}", consumes = {MERGE_PATCH_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<PersonCreateUpdateResponse> patchPerson(@NotNull @PathVariable("id") Long personId,
+                                                                  @Valid @RequestBody PersonPatchRequest rq) {
+        PersonPatch appliedPatch = personService.patchPerson(personId, dtoConverter.fromPersonPatchRequest(rq));
+        return ResponseEntity.status(HttpStatus.OK).body(dtoConverter.toPersonPatchResponse(personId, appliedPatch));
+    }
+
+    /*
+     * Two pagination modes:
+     * - page_number: OFFSET pagination, responds with a list of people. Deep pages get slower.
+     * - after_id or cursor: keyset pagination, responds with the people and the next_cursor for the next page,
+     *   next_cursor is null on the last page. The first page is requested with after_id=0.
+     * Hidden people are skipped by the query unless include_hidden=true, the cursor does not keep the flag,
+     * so it has to be sent with every page.
+     * */
     @GetMapping
-    public ResponseEntity<List<PersonGetBulkResponse>> getPeople(@NotNull @PositiveOrZero
-                                                                 @RequestParam(name = "page_number") Integer pageNumber,
-                                                                 @NotNull @Positive
-                                                                 @RequestParam(name = "page_size") Integer pageSize,
-                                                                 @RequestParam(required = false) String region) {
-        List<Person> people = region != null
-                ? personService.getPeople(region, pageNumber, pageSize)
-                : personService.getPeople(pageNumber, pageSize);
-
-        List<PersonGetBulkResponse> body = people.stream()
-                .map(dtoConverter::toPersonGetBulkResponse)
-                .collect(Collectors.toList());
+    public ResponseEntity<?> getPeople(@PositiveOrZero @RequestParam(name = "page_number", required = false)
+                                       Integer pageNumber,
+                                       @NotNull @Positive
+                                       @RequestParam(name = "page_size") Integer pageSize,
+                                       @PositiveOrZero @RequestParam(name = "after_id", required = false) Long afterId,
+                                       @RequestParam(required = false) String cursor,
+                                       @RequestParam(required = false) String region,
+                                       @RequestParam(name = INCLUDE_HIDDEN, defaultValue = "false")
+                                       boolean includeHidden) {
+        int modes = (pageNumber != null ? 1 : 0) + (afterId != null ? 1 : 0) + (cursor != null ? 1 : 0);
+        if (modes != 1)
+            throw new BadInputException("Exactly one of page_number, after_id and cursor must be specified");
+
+        if (pageNumber != null) {
+            List<PersonBulkView> people = region != null
+                    ? personService.getPeople(region, pageNumber, pageSize, includeHidden)
+                    : personService.getPeople(pageNumber, pageSize, includeHidden);
+
+            return ResponseEntity.status(HttpStatus.OK).body(toPersonGetBulkResponses(people));
+        }
+
+        long lastId = afterId != null ? afterId : decodeCursor(cursor);
+        List<PersonBulkView> people = region != null
+                ? personService.getPeopleAfter(region, lastId, pageSize, includeHidden)
+                : personService.getPeopleAfter(lastId, pageSize, includeHidden);
+
+        // a full page may be followed by more people, a shorter page is the last one
+        String nextCursor = people.size() == pageSize
+                ? encodeCursor(people.get(people.size() - 1).getId())
+                : null;
+
+        PersonGetPageResponse body = PersonGetPageResponse.builder()
+                .people(toPersonGetBulkResponses(people))
+                .nextCursor(nextCursor)
+                .build();
 
         return ResponseEntity.status(HttpStatus.OK).body(body);
     }
 
+    /*
+     * Full export as NDJSON, one PersonGetBulkResponse per line ordered by id. The people are read from
+     * a DB cursor and written as they arrive, so the whole registry is exported with one request and constant
+     * memory. Since the status is sent before the first line, a failure in the middle ends the response early.
+     * */
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportPeople(@RequestParam(required = false) String region,
+                                                              @PositiveOrZero
+                                                              @RequestParam(name = "from_id", defaultValue = "0")
+                                                              Long fromId,
+                                                              @PositiveOrZero
+                                                              @RequestParam(name = "to_id", required = false)
+                                                              Long toId,
+                                                              @RequestParam(name = INCLUDE_HIDDEN,
+                                                                      defaultValue = "false")
+                                                              boolean includeHidden) {
+        long lastId = toId != null ? toId : Long.MAX_VALUE;
+        if (fromId > lastId) throw new BadInputException("from_id must not be greater than to_id");
+
+        ObjectWriter writer = objectMapper.writerFor(PersonGetBulkResponse.class);
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                int[] written = {0};
+                personService.exportPeople(region, fromId, lastId, includeHidden, person -> {
+                    try {
+                        writer.writeValue(generator, dtoConverter.toPersonGetBulkResponse(person));
+                        generator.writeRaw('\n');
+                        if (++written[0] % EXPORT_FLUSH_ROWS == 0) generator.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (RuntimeException e) {
+                LOGGER.error("People export failed, the response is incomplete", e);
+                throw e;
+            }
+        };
+
+        return ResponseEntity.status(HttpStatus.OK)
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    private List<PersonGetBulkResponse> toPersonGetBulkResponses(List<PersonBulkView> people) {
+        return people.stream()
+                .map(dtoConverter::toPersonGetBulkResponse)
+                .collect(Collectors.toList());
+    }
+
     @ExceptionHandler({BadInputException.class, HttpMessageNotReadableException.class})
     public ResponseEntity<DefaultErrorResponse> handleBadRequest(Exception e) {
-        LOGGER.error("Bad request, returning {}", HttpStatus.BAD_REQUEST, e);
+        LOGGER.warn("Bad request, returning {}: {}", HttpStatus.BAD_REQUEST, e.getMessage());
 
         HttpHeaders httpHeaders = new HttpHeaders();
         httpHeaders.setContentType(MediaType.APPLICATION_JSON);
@@ -107,7 +388,7 @@ public class PersonController {
 
     @ExceptionHandler(ResourceNotFoundException.class)
     public ResponseEntity<DefaultErrorResponse> handleNotFound(Exception e) {
-        LOGGER.error("Not found, returning {}", HttpStatus.NOT_FOUND, e);
+        LOGGER.warn("Not found, returning {}: {}", HttpStatus.NOT_FOUND, e.getMessage());
 
         HttpHeaders httpHeaders = new HttpHeaders();
         httpHeaders.setContentType(MediaType.APPLICATION_JSON);
@@ -117,13 +398,25 @@ public class PersonController {
                 .body(new DefaultErrorResponse(e.getMessage()));
     }
 
+    @ExceptionHandler({VersionConflictException.class, ObjectOptimisticLockingFailureException.class})
+    public ResponseEntity<DefaultErrorResponse> handleConflict(Exception e) {
+        LOGGER.warn("Conflict, returning {}: {}", HttpStatus.CONFLICT, e.getMessage());
+
+        HttpHeaders httpHeaders = new HttpHeaders();
+        httpHeaders.setContentType(MediaType.APPLICATION_JSON);
+
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .headers(httpHeaders)
+                .body(new DefaultErrorResponse(e.getMessage()));
+    }
+
     @ExceptionHandler({
             MethodArgumentNotValidException.class,
             ConstraintViolationException.class,
             MissingServletRequestParameterException.class
     })
     public ResponseEntity<DefaultErrorResponse> handleValidationExceptions(Exception e) {
-        LOGGER.error("Bad request, returning {}", HttpStatus.BAD_REQUEST, e);
+        LOGGER.warn("Bad request, returning {}: {}", HttpStatus.BAD_REQUEST, e.getMessage());
 
         HttpHeaders httpHeaders = new HttpHeaders();
         httpHeaders.setContentType(MediaType.APPLICATION_JSON);
@@ -133,6 +426,32 @@ public class PersonController {
                 .body(new DefaultErrorResponse(e.getMessage()));
     }
 
+    // no connection within connection-timeout: overload or the database is down, the client may retry
+    @ExceptionHandler(CannotCreateTransactionException.class)
+    public ResponseEntity<DefaultErrorResponse> handleUnavailable(Exception e) {
+        LOGGER.warn("No database connection, returning {}: {}", HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+
+        HttpHeaders httpHeaders = new HttpHeaders();
+        httpHeaders.setContentType(MediaType.APPLICATION_JSON);
+        httpHeaders.set(HttpHeaders.RETRY_AFTER, "1");
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .headers(httpHeaders)
+                .body(new DefaultErrorResponse(e.getMessage()));
+    }
+
+    // with the replica routing the connection is taken at the first statement, not at the transaction begin
+    @ExceptionHandler({DataAccessResourceFailureException.class, TransientDataAccessResourceException.class,
+            JDBCConnectionException.class})
+    public ResponseEntity<DefaultErrorResponse> handleConnectionFailure(Exception e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            // the pool connection-timeout and the connection permit timeout
+            if (cause instanceof SQLTransientConnectionException) return handleUnavailable(e);
+        }
+
+        return handleAllOtherExceptions(e);
+    }
+
     @ExceptionHandler(RuntimeException.class)
     public ResponseEntity<DefaultErrorResponse> handleAllOtherExceptions(Exception e) {
         LOGGER.error("General exception handling, returning {}", HttpStatus.INTERNAL_SERVER_ERROR, e);
@@ -0,0 +1,57 @@
+package com.naumov.identityservice.controller;
+
+import com.naumov.identityservice.dto.DtoConverter;
+import com.naumov.identityservice.dto.rs.PersonGetResponse;
+import com.naumov.identityservice.service.PersonCacheEvictions;
+import com.naumov.identityservice.service.PersonService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import static com.naumov.identityservice.config.CacheConfiguration.PEOPLE_CACHE;
+
+/**
+ * Caches assembled person responses rather than Person entities: a detached Person holds lazy sets that are
+ * only initialized by the Person.WITH_ALL_ASSOCIATIONS graph of its own transaction. Entries are evicted by
+ * {@link PersonService#updatePerson} and {@link PersonService#patchPerson}, for the person itself and for
+ * the other people at an address whose region or address is changed, see {@link PersonCacheEvictions}.
+ */
+@Component
+public class PersonResponseCache {
+    private final PersonService personService;
+    private final DtoConverter dtoConverter;
+    private final CacheManager cacheManager;
+    private final PersonCacheEvictions personCacheEvictions;
+
+    @Autowired
+    public PersonResponseCache(PersonService personService,
+                               DtoConverter dtoConverter,
+                               CacheManager cacheManager,
+                               PersonCacheEvictions personCacheEvictions) {
+        this.personService = personService;
+        this.dtoConverter = dtoConverter;
+        this.cacheManager = cacheManager;
+        this.personCacheEvictions = personCacheEvictions;
+    }
+
+    /*
+     * Filled with the latest person: a replica may not have replayed the write that evicted the entry yet,
+     * and its old state would be cached, old version included, until the entry expires. A fill that raced
+     * with an eviction is evicted right after the put, its read may have seen the state before the commit.
+     * */
+    public PersonGetResponse getPerson(long personId) {
+        Cache cache = cacheManager.getCache(PEOPLE_CACHE);
+        if (cache == null) return dtoConverter.toPersonGetResponse(personService.getLatestPerson(personId));
+
+        PersonGetResponse cachedResponse = cache.get(personId, PersonGetResponse.class);
+        if (cachedResponse != null) return cachedResponse;
+
+        long evictionCount = personCacheEvictions.evictionCount(personId);
+        PersonGetResponse response = dtoConverter.toPersonGetResponse(personService.getLatestPerson(personId));
+        cache.put(personId, response);
+        if (personCacheEvictions.evictionCount(personId) != evictionCount) cache.evict(personId);
+
+        return response;
+    }
+}
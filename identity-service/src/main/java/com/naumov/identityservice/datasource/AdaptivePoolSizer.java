@@ -0,0 +1,100 @@
+package com.naumov.identityservice.datasource;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Resizes the Hikari pool at runtime between a minimum and a maximum size. The pool starts at the size
+ * suggested for the number of cores, {@link #coreBasedSize(int)}, and then follows the observed load: the pool
+ * is sampled periodically and resized once per window of samples. The threads waiting for a connection are
+ * those waiting in the pool and those queued in front of it, see {@link ConnectionLimitingDataSource}, which
+ * lets no more threads through than the pool may have connections.
+ * <ul>
+ *     <li>threads waited for a connection in at least half of the samples: grow by a quarter, at least by one</li>
+ *     <li>no waiters and the peak of active connections below half of the pool: shrink by a quarter, at least
+ *     by one, down to twice the peak</li>
+ * </ul>
+ * Hikari retires the connections above the new size as they become idle, see minimum-idle and idle-timeout.
+ */
+public class AdaptivePoolSizer {
+    private static final Logger LOGGER = LogManager.getLogger(AdaptivePoolSizer.class);
+
+    private final HikariConfigMXBean poolConfig;
+    private final Supplier<HikariPoolMXBean> poolStats;
+    private final IntSupplier queuedThreads;
+    private final int minSize;
+    private final int maxSize;
+    private final int windowSamples;
+
+    private int samples;
+    private int samplesWithWaiters;
+    private int peakActive;
+
+    public AdaptivePoolSizer(HikariConfigMXBean poolConfig,
+                             Supplier<HikariPoolMXBean> poolStats,
+                             IntSupplier queuedThreads,
+                             int minSize,
+                             int maxSize,
+                             int windowSamples) {
+        if (minSize < 1 || maxSize < minSize) throw new IllegalArgumentException("Expected 1 <= min size <= max size");
+        if (windowSamples < 1) throw new IllegalArgumentException("At least one sample per window is required");
+
+        this.poolConfig = poolConfig;
+        this.poolStats = poolStats;
+        this.queuedThreads = queuedThreads;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.windowSamples = windowSamples;
+
+        resize(clamp(coreBasedSize(Runtime.getRuntime().availableProcessors())), "the number of cores");
+    }
+
+    /**
+     * The starting point of the HikariCP pool sizing guide: cores * 2 plus the effective spindle count,
+     * taken as one for a database that keeps its working set in memory.
+     */
+    public static int coreBasedSize(int cores) {
+        return cores * 2 + 1;
+    }
+
+    // called by a single scheduler thread
+    public void sample() {
+        HikariPoolMXBean pool = poolStats.get();
+        if (pool == null) return; // the pool starts with the first connection
+
+        samples++;
+        if (pool.getThreadsAwaitingConnection() + queuedThreads.getAsInt() > 0) samplesWithWaiters++;
+        peakActive = Math.max(peakActive, pool.getActiveConnections());
+        if (samples < windowSamples) return;
+
+        int size = poolConfig.getMaximumPoolSize();
+        if (samplesWithWaiters * 2 >= samples) {
+            int grownSize = size + Math.max(1, size / 4);
+            resize(clamp(grownSize), "waiters in " + samplesWithWaiters + "/" + samples + " samples");
+        } else if (samplesWithWaiters == 0 && peakActive * 2 < size) {
+            int shrunkSize = Math.max(peakActive * 2, size - Math.max(1, size / 4));
+            resize(clamp(shrunkSize), "peak of " + peakActive + " active");
+        }
+
+        samples = 0;
+        samplesWithWaiters = 0;
+        peakActive = 0;
+    }
+
+    private void resize(int size, String reason) {
+        int currentSize = poolConfig.getMaximumPoolSize();
+        if (size == currentSize) return;
+
+        poolConfig.setMaximumPoolSize(size);
+        LOGGER.info("Resized the connection pool from {} to {} for {}", currentSize, size, reason);
+    }
+
+    private int clamp(int size) {
+        return Math.max(minSize, Math.min(maxSize, size));
+    }
+}
@@ -0,0 +1,189 @@
+package com.naumov.identityservice.datasource;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntSupplier;
+
+/**
+ * Lets at most as many threads hold a connection of a pool as the pool may have connections, the others wait
+ * for a permit in arrival order. The permit count follows the current maximum size of the pool, which may be
+ * changed at runtime, see {@link AdaptivePoolSizer}, so the pool itself never has waiters.
+ * <p>
+ * Meant for the virtual threads mode, where the number of request threads is unbounded: parked virtual threads
+ * queue on the semaphore instead of on the pool, which keeps the pool wait time and its timeouts meaningful.
+ * The time spent waiting for a permit is recorded as {@value #PERMIT_WAIT_METRIC}, the waiting threads as
+ * {@value #PERMIT_WAITING_METRIC}, tagged with the pool, once the data source is bound to a registry.
+ */
+public class ConnectionLimitingDataSource extends DelegatingDataSource {
+    public static final String PERMIT_WAIT_METRIC = "identity-service.datasource.permit.wait";
+    public static final String PERMIT_WAITING_METRIC = "identity-service.datasource.permit.waiting";
+
+    private final String poolName;
+    private final ResizableSemaphore permits;
+    private final IntSupplier permitLimit;
+    private final Duration permitTimeout;
+    private volatile int currentLimit;
+    private volatile Timer acquiredTimer;
+    private volatile Timer timedOutTimer;
+
+    /**
+     * @param permitLimit the maximum size of the pool behind the target data source, read at every checkout
+     *                    and return of a connection; below one, e.g. the -1 of a Hikari pool which is not
+     *                    started yet, one permit is given
+     */
+    public ConnectionLimitingDataSource(DataSource targetDataSource,
+                                        String poolName,
+                                        IntSupplier permitLimit,
+                                        Duration permitTimeout) {
+        super(targetDataSource);
+        int limit = Math.max(1, permitLimit.getAsInt());
+        this.poolName = poolName;
+        this.permits = new ResizableSemaphore(limit);
+        this.permitLimit = permitLimit;
+        this.permitTimeout = permitTimeout;
+        this.currentLimit = limit;
+    }
+
+    public void bindTo(MeterRegistry meterRegistry) {
+        acquiredTimer = permitWaitTimer("acquired", meterRegistry);
+        timedOutTimer = permitWaitTimer("timeout", meterRegistry);
+        Gauge.builder(PERMIT_WAITING_METRIC, permits, Semaphore::getQueueLength)
+                .description("Threads waiting for a connection permit")
+                .baseUnit("threads")
+                .tag("pool", poolName)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        acquirePermit();
+        try {
+            return releasingConnection(super.getConnection());
+        } catch (SQLException | RuntimeException e) {
+            releasePermit();
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        acquirePermit();
+        try {
+            return releasingConnection(super.getConnection(username, password));
+        } catch (SQLException | RuntimeException e) {
+            releasePermit();
+            throw e;
+        }
+    }
+
+    public String getPoolName() {
+        return poolName;
+    }
+
+    // negative right after the pool shrinks below the connections in use
+    public int getAvailablePermits() {
+        followPermitLimit();
+        return permits.availablePermits();
+    }
+
+    public int getQueueLength() {
+        return permits.getQueueLength();
+    }
+
+    private void acquirePermit() throws SQLException {
+        followPermitLimit();
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(permitTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection permit", e);
+        }
+
+        long waitNanos = System.nanoTime() - start;
+        Timer timer = acquired ? acquiredTimer : timedOutTimer;
+        if (timer != null) timer.record(waitNanos, TimeUnit.NANOSECONDS);
+        if (!acquired) {
+            throw new SQLTransientConnectionException("No connection permit available within " + permitTimeout);
+        }
+    }
+
+    /*
+     * The permit is released by the first close() only, Hibernate and the pool may close a connection twice.
+     * */
+    private Connection releasingConnection(Connection connection) {
+        AtomicBoolean released = new AtomicBoolean();
+        Object proxy = Proxy.newProxyInstance(ConnectionLimitingDataSource.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                (self, method, args) -> {
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    } finally {
+                        if (method.getName().equals("close") && released.compareAndSet(false, true)) {
+                            releasePermit();
+                        }
+                    }
+                });
+
+        return (Connection) proxy;
+    }
+
+    private void releasePermit() {
+        permits.release();
+        followPermitLimit();
+    }
+
+    /*
+     * A grown pool adds permits, which go to the waiting threads first. A shrunk pool takes permits away,
+     * possibly below zero: the connections in use are returned before anyone gets a new one.
+     * */
+    private void followPermitLimit() {
+        if (Math.max(1, permitLimit.getAsInt()) == currentLimit) return;
+
+        synchronized (permits) {
+            int limit = Math.max(1, permitLimit.getAsInt());
+            if (limit > currentLimit) {
+                permits.release(limit - currentLimit);
+            } else if (limit < currentLimit) {
+                permits.reducePermits(currentLimit - limit);
+            }
+            currentLimit = limit;
+        }
+    }
+
+    private Timer permitWaitTimer(String outcome, MeterRegistry meterRegistry) {
+        return Timer.builder(PERMIT_WAIT_METRIC)
+                .description("Time spent waiting for a connection permit")
+                .tag("outcome", outcome)
+                .tag("pool", poolName)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static final class ResizableSemaphore extends Semaphore {
+        ResizableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
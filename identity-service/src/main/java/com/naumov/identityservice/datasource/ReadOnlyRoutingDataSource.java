@@ -0,0 +1,61 @@
+package com.naumov.identityservice.datasource;
+
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Routes the connections of read-only transactions to the replica while it is usable, everything else goes to
+ * the primary. Outside transactions, e.g. for unwrap(), the primary is the target. Reads that must see the latest
+ * writes are kept on the primary with {@link #onPrimary(Supplier)}.
+ * <p>
+ * The read-only flag of a transaction is set after the transaction manager has opened its connection, so the
+ * data source is used through a {@link LazyConnectionDataSourceProxy}, see {@link #lazy(DataSource, DataSource,
+ * BooleanSupplier)}, which takes the physical connection at the first statement.
+ */
+public class ReadOnlyRoutingDataSource extends AbstractRoutingDataSource {
+    public enum Target {PRIMARY, REPLICA}
+
+    private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = ThreadLocal.withInitial(() -> false);
+
+    private final BooleanSupplier replicaUsable;
+
+    public ReadOnlyRoutingDataSource(DataSource primary, DataSource replica, BooleanSupplier replicaUsable) {
+        this.replicaUsable = replicaUsable;
+        setTargetDataSources(Map.of(Target.PRIMARY, primary, Target.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    public static DataSource lazy(DataSource primary, DataSource replica, BooleanSupplier replicaUsable) {
+        return new LazyConnectionDataSourceProxy(new ReadOnlyRoutingDataSource(primary, replica, replicaUsable));
+    }
+
+    /**
+     * Runs the action with its read-only transactions on the primary, e.g. a read whose result outlives the
+     * replication lag. Does nothing without the replica routing.
+     */
+    public static <T> T onPrimary(Supplier<T> action) {
+        boolean primaryRequired = PRIMARY_REQUIRED.get();
+        PRIMARY_REQUIRED.set(true);
+        try {
+            return action.get();
+        } finally {
+            PRIMARY_REQUIRED.set(primaryRequired);
+        }
+    }
+
+    @Override
+    protected Target determineCurrentLookupKey() {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly() && !PRIMARY_REQUIRED.get()
+                && replicaUsable.getAsBoolean()
+                ? Target.REPLICA
+                : Target.PRIMARY;
+    }
+}
@@ -0,0 +1,96 @@
+package com.naumov.identityservice.datasource;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+/**
+ * Owns the replica data source and tells whether reads may go to it: the replication lag is measured
+ * periodically with {@link #checkLag()}, the replica is usable while the last check succeeded with a lag
+ * within the max lag. Until the first check, whenever the replica is unreachable, and while the lag query
+ * returns NULL for an unknown lag, reads stay on the primary.
+ * <p>
+ * The lag is exported as {@value #LAG_METRIC} in seconds, the routing state as {@value #USABLE_METRIC}.
+ */
+public class ReplicaLagMonitor implements AutoCloseable {
+    private static final Logger LOGGER = LogManager.getLogger(ReplicaLagMonitor.class);
+    public static final String LAG_METRIC = "identity-service.datasource.replica.lag";
+    public static final String USABLE_METRIC = "identity-service.datasource.replica.usable";
+
+    private final DataSource replica;
+    private final String lagQuery;
+    private final Duration maxLag;
+    private volatile boolean replicaUsable;
+    private volatile double lagSeconds = Double.NaN;
+
+    public ReplicaLagMonitor(DataSource replica, String lagQuery, Duration maxLag) {
+        this.replica = replica;
+        this.lagQuery = lagQuery;
+        this.maxLag = maxLag;
+    }
+
+    public DataSource getReplica() {
+        return replica;
+    }
+
+    public boolean isReplicaUsable() {
+        return replicaUsable;
+    }
+
+    // called by a single scheduler thread
+    public void checkLag() {
+        try (Connection connection = replica.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(lagQuery)) {
+            resultSet.next();
+            lagSeconds = resultSet.getDouble(1);
+            // the lag is unknown, e.g. the replica lost the connection to the primary
+            if (resultSet.wasNull()) {
+                lagSeconds = Double.NaN;
+                setReplicaUsable(false, "replication lag unknown");
+                return;
+            }
+        } catch (SQLException e) {
+            lagSeconds = Double.NaN;
+            setReplicaUsable(false, "replica unavailable: " + e.getMessage());
+            return;
+        }
+
+        boolean withinMaxLag = lagSeconds * 1000 <= maxLag.toMillis();
+        setReplicaUsable(withinMaxLag, "replication lag " + lagSeconds + " s, max lag " + maxLag);
+    }
+
+    public void bindTo(MeterRegistry meterRegistry) {
+        Gauge.builder(LAG_METRIC, this, monitor -> monitor.lagSeconds)
+                .description("Replication lag of the read replica, NaN when unavailable")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder(USABLE_METRIC, this, monitor -> monitor.replicaUsable ? 1 : 0)
+                .description("1 while read-only transactions go to the replica, 0 while they fall back to the primary")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (replica instanceof AutoCloseable closeable) closeable.close();
+    }
+
+    private void setReplicaUsable(boolean usable, String reason) {
+        if (usable == replicaUsable) return;
+
+        replicaUsable = usable;
+        if (usable) {
+            LOGGER.info("Read-only transactions go to the replica, {}", reason);
+        } else {
+            LOGGER.warn("Read-only transactions fall back to the primary, {}", reason);
+        }
+    }
+}
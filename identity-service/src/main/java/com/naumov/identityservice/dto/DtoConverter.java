@@ -4,15 +4,23 @@ import com.naumov.identityservice.dto.rq.AddressCreateUpdateRequest;
 import com.naumov.identityservice.dto.rq.ContactCreateUpdateRequest;
 import com.naumov.identityservice.dto.rq.IdentityDocumentCreateUpdateRequest;
 import com.naumov.identityservice.dto.rq.PersonCreateUpdateRequest;
+import com.naumov.identityservice.dto.rq.PersonFindRequest;
+import com.naumov.identityservice.dto.rq.PersonPatchRequest;
 import com.naumov.identityservice.dto.rs.*;
+import com.naumov.identityservice.exception.BadInputException;
 import com.naumov.identityservice.model.*;
+import com.naumov.identityservice.repository.projection.PersonBulkView;
+import com.naumov.identityservice.service.PersonCreateResult;
+import com.naumov.identityservice.service.PersonFindCriteria;
+import com.naumov.identityservice.service.PersonPatch;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Objects;
+import java.util.Set;
 import java.util.function.Function;
-import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 @Component
@@ -28,16 +36,45 @@ public class DtoConverter {
         // not using builder because some fields need backreference to the person instance
         Person person = new Person();
         person.setId(personRequest.getId());
+        person.setVersion(personRequest.getVersion());
         person.setName(personRequest.getName());
         person.setDateOfBirth(personRequest.getDateOfBirth());
         person.setIsHidden(personRequest.getIsHidden());
-        person.setAddressRecords(mapItems(addressUpdateRequests, e -> fromAddressCreateUpdateRequest(e, person))); // many-to-many mapping, be careful
-        person.setContacts(mapItems(contactUpdateRequests, e -> fromContactCreateUpdateRequest(e, person)));
-        person.setIdentityDocuments(mapItems(identityDocumentUpdateRequests, e -> fromIdentityDocumentCreateUpdateRequest(e, person)));
+        person.setAddressRecords(mapItemsToSet(addressUpdateRequests, e -> fromAddressCreateUpdateRequest(e, person))); // many-to-many mapping, be careful
+        person.setContacts(mapItemsToSet(contactUpdateRequests, e -> fromContactCreateUpdateRequest(e, person)));
+        person.setIdentityDocuments(mapItemsToSet(identityDocumentUpdateRequests, e -> fromIdentityDocumentCreateUpdateRequest(e, person)));
 
         return person;
     }
 
+    // a removed collection is an empty one, a removed person field is an error
+    public PersonPatch fromPersonPatchRequest(PersonPatchRequest patchRequest) {
+        if (patchRequest == null) return null;
+        if (patchRequest.isNamePresent() && patchRequest.getName() == null)
+            throw new BadInputException("Person's name cannot be removed");
+        if (patchRequest.isDateOfBirthPresent() && patchRequest.getDateOfBirth() == null)
+            throw new BadInputException("Person's date_of_birth cannot be removed");
+        if (patchRequest.isHiddenPresent() && patchRequest.getIsHidden() == null)
+            throw new BadInputException("Person's is_hidden cannot be removed");
+
+        return PersonPatch.builder()
+                .version(patchRequest.getVersion())
+                .name(patchRequest.getName())
+                .dateOfBirth(patchRequest.getDateOfBirth())
+                .isHidden(patchRequest.getIsHidden())
+                .addressRecords(patchRequest.isAddressesPresent()
+                        ? mapItemsToSet(patchRequest.getAddresses(), e -> fromAddressCreateUpdateRequest(e, null))
+                        : null)
+                .contacts(patchRequest.isContactsPresent()
+                        ? mapItemsToSet(patchRequest.getContacts(), e -> fromContactCreateUpdateRequest(e, null))
+                        : null)
+                .identityDocuments(patchRequest.isIdentityDocumentsPresent()
+                        ? mapItemsToSet(patchRequest.getIdentityDocuments(),
+                        e -> fromIdentityDocumentCreateUpdateRequest(e, null))
+                        : null)
+                .build();
+    }
+
     private PersonAddress fromAddressCreateUpdateRequest(AddressCreateUpdateRequest addressRequest, Person person) {
         if (addressRequest == null) return null;
 
@@ -56,7 +93,7 @@ public class DtoConverter {
         // be careful - this address might already have
         // more than one person records in DB
         // whether it has an id or not
-        List<PersonAddress> personRecords = new ArrayList<>();
+        Set<PersonAddress> personRecords = new LinkedHashSet<>();
         personRecords.add(personAddress);
         address.setPersonRecords(personRecords);
 
@@ -85,16 +122,22 @@ public class DtoConverter {
                 .build();
     }
 
+    public PersonFindCriteria fromPersonFindRequest(PersonFindRequest findRequest) {
+        if (findRequest == null) return null;
+        return new PersonFindCriteria(findRequest.getName(), findRequest.getDocType(), findRequest.getDocNumber());
+    }
+
     // --------------------------------------------- "To" mappings -----------------------------------------------------
 
     public PersonCreateUpdateResponse toPersonCreateUpdateResponse(Person person) {
         if (person == null) return null;
-        List<PersonAddress> addresses = person.getAddressRecords();
-        List<IdentityDocument> identityDocuments = person.getIdentityDocuments();
-        List<Contact> contacts = person.getContacts();
+        Set<PersonAddress> addresses = person.getAddressRecords();
+        Set<IdentityDocument> identityDocuments = person.getIdentityDocuments();
+        Set<Contact> contacts = person.getContacts();
 
         return PersonCreateUpdateResponse.builder()
                 .id(person.getId())
+                .version(person.getVersion())
                 .isHidden(person.getIsHidden())
                 .addresses(mapItems(addresses, this::toAddressCreateUpdateResponse))
                 .contacts(mapItems(contacts, this::toContactCreateUpdateResponse))
@@ -123,14 +166,34 @@ public class DtoConverter {
                 .build();
     }
 
+    // the collections that were not patched are left out of the response
+    public PersonCreateUpdateResponse toPersonPatchResponse(long personId, PersonPatch appliedPatch) {
+        if (appliedPatch == null) return null;
+        Set<PersonAddress> addresses = appliedPatch.getAddressRecords();
+        Set<IdentityDocument> identityDocuments = appliedPatch.getIdentityDocuments();
+        Set<Contact> contacts = appliedPatch.getContacts();
+
+        return PersonCreateUpdateResponse.builder()
+                .id(personId)
+                .version(appliedPatch.getVersion())
+                .isHidden(appliedPatch.getIsHidden())
+                .addresses(addresses != null ? mapItems(addresses, this::toAddressCreateUpdateResponse) : null)
+                .contacts(contacts != null ? mapItems(contacts, this::toContactCreateUpdateResponse) : null)
+                .identityDocuments(identityDocuments != null
+                        ? mapItems(identityDocuments, this::toIdentityDocumentCreateUpdateResponse)
+                        : null)
+                .build();
+    }
+
     public PersonGetResponse toPersonGetResponse(Person person) {
         if (person == null) return null;
-        List<PersonAddress> addresses = person.getAddressRecords();
-        List<IdentityDocument> identityDocuments = person.getIdentityDocuments();
-        List<Contact> contacts = person.getContacts();
+        Set<PersonAddress> addresses = person.getAddressRecords();
+        Set<IdentityDocument> identityDocuments = person.getIdentityDocuments();
+        Set<Contact> contacts = person.getContacts();
 
         return PersonGetResponse.builder()
                 .id(person.getId())
+                .version(person.getVersion())
                 .name(person.getName())
                 .dateOfBirth(person.getDateOfBirth())
                 .isHidden(person.getIsHidden())
@@ -170,37 +233,65 @@ public class DtoConverter {
                 .build();
     }
 
-    public PersonGetBulkResponse toPersonGetBulkResponse(Person person) {
-        if (person == null) return null;
-        List<PersonAddress> addresses = person.getAddressRecords();
-        List<IdentityDocument> identityDocuments = person.getIdentityDocuments();
-        List<Contact> contacts = person.getContacts();
+    public PersonGetBulkResponse toPersonGetBulkResponse(PersonBulkView view) {
+        if (view == null) return null;
+
+        IdentityDocumentGetResponse mainIdentityDocument = view.getDocumentId() == null ? null
+                : IdentityDocumentGetResponse.builder()
+                .id(view.getDocumentId())
+                .type(view.getDocumentType().name())
+                .fullNumber(view.getDocumentFullNumber())
+                .issueDate(view.getDocumentIssueDate())
+                .isPrimary(true)
+                .build();
+
+        ContactGetResponse contact = view.getContactId() == null ? null
+                : ContactGetResponse.builder()
+                .id(view.getContactId())
+                .phoneNumber(view.getContactPhoneNumber())
+                .build();
+
+        AddressGetResponse registrationAddress = view.getAddressId() == null ? null
+                : AddressGetResponse.builder()
+                .id(view.getAddressId())
+                .region(view.getRegionName())
+                .address(view.getAddress())
+                .isRegistrationAddress(true)
+                .build();
 
         return PersonGetBulkResponse.builder()
-                .id(person.getId())
-                .name(person.getName())
-                .dateOfBirth(person.getDateOfBirth())
-                .contact(findAndMapItem(contacts, e -> true, this::toContactGetResponse))
-                .mainIdentityDocument(findAndMapItem(identityDocuments, IdentityDocument::getIsPrimary, this::toIdentityDocumentGetResponse))
-                .registrationAddress(findAndMapItem(addresses, PersonAddress::getIsRegistration, this::toAddressGetResponse))
+                .id(view.getId())
+                .name(view.getName())
+                .dateOfBirth(view.getDateOfBirth())
+                .contact(contact)
+                .mainIdentityDocument(mainIdentityDocument)
+                .registrationAddress(registrationAddress)
+                .build();
+    }
+
+    public PersonBulkCreateItemResponse toPersonBulkCreateItemResponse(int index, PersonCreateResult result) {
+        if (result == null) return null;
+        return PersonBulkCreateItemResponse.builder()
+                .index(index)
+                .id(result.isCreated() ? result.getPerson().getId() : null)
+                .error(result.getError())
                 .build();
     }
 
     // --------------------------------------------------- Helpers -----------------------------------------------------
 
-    private <S, D> List<D> mapItems(List<S> items, Function<S, D> mapper) {
+    private <S, D> List<D> mapItems(Collection<S> items, Function<S, D> mapper) {
         if (items == null) return new ArrayList<>();
         return items.stream()
                 .map(mapper)
                 .collect(Collectors.toList());
     }
 
-    private <S, D> D findAndMapItem(List<S> items, Predicate<S> filter, Function<S, D> mapper) {
-        if (items == null) return null;
+    // the order of the request items is kept, the entities of the same request are all distinct
+    private <S, D> Set<D> mapItemsToSet(Collection<S> items, Function<S, D> mapper) {
+        if (items == null) return new LinkedHashSet<>();
         return items.stream()
-                .filter(filter)
-                .filter(Objects::nonNull)
                 .map(mapper)
-                .findFirst().orElse(null);
+                .collect(Collectors.toCollection(LinkedHashSet::new));
     }
 }
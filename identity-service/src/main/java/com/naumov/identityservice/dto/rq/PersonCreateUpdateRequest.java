@@ -17,6 +17,8 @@ import java.util.List;
 @Setter
 public class PersonCreateUpdateRequest {
     private Long id;
+    // required for updates, the version of the person the client has read
+    private Long version;
     @NotNull
     @Size(max = 255)
     private String name;
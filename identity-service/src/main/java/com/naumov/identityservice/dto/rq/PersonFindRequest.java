@@ -0,0 +1,20 @@
+package com.naumov.identityservice.dto.rq;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.validation.constraints.NotBlank;
+
+@Getter
+@Setter
+public class PersonFindRequest {
+    @NotBlank
+    private String name;
+    @NotBlank
+    @JsonProperty("doc_type")
+    private String docType;
+    @NotBlank
+    @JsonProperty("doc_number")
+    private String docNumber;
+}
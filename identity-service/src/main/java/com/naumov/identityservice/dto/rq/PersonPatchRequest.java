@@ -0,0 +1,75 @@
+package com.naumov.identityservice.dto.rq;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.naumov.identityservice.dto.validation.annotation.NullableBoolean;
+import lombok.Getter;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * JSON Merge Patch (RFC 7396) of a person. The setters are called by Jackson for the members present
+ * in the document only, so every member remembers whether it was sent. A sent collection replaces
+ * the stored one, null removes all its items. The person fields cannot be removed.
+ */
+@Getter
+public class PersonPatchRequest {
+    @NotNull
+    private Long version;
+    @Size(max = 255)
+    private String name;
+    private boolean namePresent;
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MM-yyyy")
+    private LocalDate dateOfBirth;
+    private boolean dateOfBirthPresent;
+    @NullableBoolean
+    private Boolean isHidden;
+    private boolean isHiddenPresent;
+    private List<@NotNull @Valid AddressCreateUpdateRequest> addresses;
+    private boolean addressesPresent;
+    private List<@NotNull @Valid ContactCreateUpdateRequest> contacts;
+    private boolean contactsPresent;
+    private List<@NotNull @Valid IdentityDocumentCreateUpdateRequest> identityDocuments;
+    private boolean identityDocumentsPresent;
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+        this.namePresent = true;
+    }
+
+    @JsonProperty("date_of_birth")
+    public void setDateOfBirth(LocalDate dateOfBirth) {
+        this.dateOfBirth = dateOfBirth;
+        this.dateOfBirthPresent = true;
+    }
+
+    @JsonProperty("is_hidden")
+    public void setIsHidden(Boolean isHidden) {
+        this.isHidden = isHidden;
+        this.isHiddenPresent = true;
+    }
+
+    public void setAddresses(List<AddressCreateUpdateRequest> addresses) {
+        this.addresses = addresses;
+        this.addressesPresent = true;
+    }
+
+    public void setContacts(List<ContactCreateUpdateRequest> contacts) {
+        this.contacts = contacts;
+        this.contactsPresent = true;
+    }
+
+    @JsonProperty("identity_documents")
+    public void setIdentityDocuments(List<IdentityDocumentCreateUpdateRequest> identityDocuments) {
+        this.identityDocuments = identityDocuments;
+        this.identityDocumentsPresent = true;
+    }
+}
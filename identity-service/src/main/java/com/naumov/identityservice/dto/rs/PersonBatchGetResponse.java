@@ -0,0 +1,22 @@
+package com.naumov.identityservice.dto.rs;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+public class PersonBatchGetResponse {
+    private List<PersonGetResponse> people;
+    @JsonProperty("missing_ids")
+    private List<Long> missingIds;
+
+    @Builder
+    public PersonBatchGetResponse(List<PersonGetResponse> people, List<Long> missingIds) {
+        this.people = people;
+        this.missingIds = missingIds;
+    }
+}
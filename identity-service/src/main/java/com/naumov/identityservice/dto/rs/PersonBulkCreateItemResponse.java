@@ -0,0 +1,22 @@
+package com.naumov.identityservice.dto.rs;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PersonBulkCreateItemResponse {
+    private Integer index;
+    private Long id;
+    private String error;
+
+    @Builder
+    public PersonBulkCreateItemResponse(Integer index, Long id, String error) {
+        this.index = index;
+        this.id = id;
+        this.error = error;
+    }
+}
@@ -0,0 +1,22 @@
+package com.naumov.identityservice.dto.rs;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+public class PersonBulkCreateResponse {
+    private Integer created;
+    private Integer rejected;
+    private List<PersonBulkCreateItemResponse> results;
+
+    @Builder
+    public PersonBulkCreateResponse(Integer created, Integer rejected, List<PersonBulkCreateItemResponse> results) {
+        this.created = created;
+        this.rejected = rejected;
+        this.results = results;
+    }
+}
@@ -1,5 +1,6 @@
 package com.naumov.identityservice.dto.rs;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.naumov.identityservice.dto.IdentifiableEntity;
 import lombok.Builder;
@@ -11,7 +12,9 @@ import java.util.List;
 
 @Getter
 @Setter
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class PersonCreateUpdateResponse extends IdentifiableEntity {
+    private Long version;
     @JsonProperty("is_hidden")
     private Boolean isHidden;
     private List<AddressCreateUpdateResponse> addresses;
@@ -21,11 +24,13 @@ public class PersonCreateUpdateResponse extends IdentifiableEntity {
 
     @Builder
     public PersonCreateUpdateResponse(@NotNull Long id,
+                                      Long version,
                                       Boolean isHidden,
                                       List<AddressCreateUpdateResponse> addresses,
                                       List<ContactCreateUpdateResponse> contacts,
                                       List<IdentityDocumentCreateUpdateResponse> identityDocuments) {
         super(id);
+        this.version = version;
         this.isHidden = isHidden;
         this.addresses = addresses;
         this.contacts = contacts;
@@ -0,0 +1,23 @@
+package com.naumov.identityservice.dto.rs;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+
+@Getter
+@Setter
+public class PersonGetPageResponse {
+    private List<PersonGetBulkResponse> people;
+    // null for the last page
+    @JsonProperty("next_cursor")
+    private String nextCursor;
+
+    @Builder
+    public PersonGetPageResponse(List<PersonGetBulkResponse> people, String nextCursor) {
+        this.people = people;
+        this.nextCursor = nextCursor;
+    }
+}
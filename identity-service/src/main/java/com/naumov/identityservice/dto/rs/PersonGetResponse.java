@@ -14,6 +14,7 @@ import java.util.List;
 @Getter
 @Setter
 public class PersonGetResponse extends IdentifiableEntity {
+    private Long version;
     private String name;
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MM-yyyy")
     @JsonProperty("date_of_birth")
@@ -27,6 +28,7 @@ public class PersonGetResponse extends IdentifiableEntity {
 
     @Builder
     public PersonGetResponse(@NotNull Long id,
+                             Long version,
                              String name,
                              LocalDate dateOfBirth,
                              Boolean isHidden,
@@ -34,6 +36,7 @@ public class PersonGetResponse extends IdentifiableEntity {
                              List<ContactGetResponse> contacts,
                              List<IdentityDocumentGetResponse> identityDocuments) {
         super(id);
+        this.version = version;
         this.name = name;
         this.dateOfBirth = dateOfBirth;
         this.isHidden = isHidden;
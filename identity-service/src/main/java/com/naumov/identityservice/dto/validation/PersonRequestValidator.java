@@ -0,0 +1,48 @@
+package com.naumov.identityservice.dto.validation;
+
+import com.naumov.identityservice.dto.rq.PersonCreateUpdateRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Validates a created person with its addresses, contacts and documents, for the records read one by one
+ * from a stream, where @Valid does not apply: POST /people/bulk and the registry loader.
+ */
+@Component
+public class PersonRequestValidator {
+    private final Validator validator;
+
+    @Autowired
+    public PersonRequestValidator(Validator validator) {
+        this.validator = validator;
+    }
+
+    // null when the request is valid
+    public String describeViolations(PersonCreateUpdateRequest rq) {
+        if (rq == null) return "Person must not be null";
+
+        Stream<Object> items = Stream.<List<?>>of(rq.getAddresses(), rq.getContacts(), rq.getIdentityDocuments())
+                .filter(Objects::nonNull)
+                .flatMap(List::stream)
+                .filter(Objects::nonNull)
+                .map(Object.class::cast);
+        String violations = Stream.concat(Stream.of(rq), items)
+                .flatMap(item -> validator.validate(item).stream())
+                .map(PersonRequestValidator::describeViolation)
+                .collect(Collectors.joining(", "));
+
+        return violations.isEmpty() ? null : violations;
+    }
+
+    private static String describeViolation(ConstraintViolation<?> violation) {
+        return violation.getRootBeanClass().getSimpleName() + "." + violation.getPropertyPath() + ": " +
+                violation.getMessage();
+    }
+}
@@ -0,0 +1,80 @@
+package com.naumov.identityservice.loader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes rows in the CSV format of PostgreSQL COPY: null is an empty unquoted field, a string is quoted only
+ * when it has to be, that is when it is empty, contains a delimiter, a quote or a line break, or is the end
+ * of data marker \. that would end COPY FROM STDIN. Other values are written with toString(), which
+ * PostgreSQL reads for numbers, booleans and ISO dates.
+ */
+class CopyCsvWriter implements Closeable {
+    private static final String END_OF_DATA = "\\.";
+
+    private final Writer out;
+    private boolean rowStarted;
+
+    CopyCsvWriter(Writer out) {
+        this.out = out;
+    }
+
+    CopyCsvWriter field(Object value) throws IOException {
+        if (rowStarted) out.write(',');
+        rowStarted = true;
+
+        if (value == null) return this;
+        if (value instanceof String string) {
+            writeString(string);
+        } else {
+            out.write(value.toString());
+        }
+
+        return this;
+    }
+
+    void endRow() throws IOException {
+        out.write('\n');
+        rowStarted = false;
+    }
+
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeString(String value) throws IOException {
+        if (!needsQuotes(value)) {
+            out.write(value);
+            return;
+        }
+
+        out.write('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) == '"') {
+                out.write(value, start, i + 1 - start);
+                out.write('"');
+                start = i + 1;
+            }
+        }
+        out.write(value, start, value.length() - start);
+        out.write('"');
+    }
+
+    private static boolean needsQuotes(String value) {
+        if (value.isEmpty() || value.equals(END_OF_DATA)) return true;
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') return true;
+        }
+
+        return false;
+    }
+}
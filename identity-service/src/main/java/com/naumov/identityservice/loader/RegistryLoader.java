@@ -0,0 +1,486 @@
+package com.naumov.identityservice.loader;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.naumov.identityservice.dto.DtoConverter;
+import com.naumov.identityservice.dto.rq.PersonCreateUpdateRequest;
+import com.naumov.identityservice.dto.validation.PersonRequestValidator;
+import com.naumov.identityservice.exception.BadInputException;
+import com.naumov.identityservice.model.*;
+import com.naumov.identityservice.repository.RegionRepository;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+import static com.naumov.identityservice.service.PersonMessages.*;
+
+/**
+ * Initial migration of a legacy registry: people in the format of POST /people/bulk, one JSON per line,
+ * are streamed into UNLOGGED staging tables by COPY FROM STDIN and then merged into the registry tables
+ * with set-based SQL in one transaction. PostgreSQL only.
+ * <p>
+ * The rules of PersonServiceImpl are checked in two places. Everything about a single person (request
+ * validation, ids, exactly one primary document, at most one registration address, existing regions,
+ * repeated values) is checked while reading, before the person is staged. Phone numbers and documents
+ * taken in the registry or by an earlier accepted record of the input are checked by the merge, the earlier
+ * record wins as in POST /people/bulk. A rejected record does not affect the rest of the input, the rejects are
+ * written as CSV with the index of the record and the error, the one POST /people/bulk would return.
+ * <p>
+ * Ids are taken from the entity sequences in blocks of the allocation size, one nextval per block, the same
+ * way the pooled-lo optimizer of {@link PooledLoSequenceGenerator} does, so the service can run afterwards.
+ */
+public class RegistryLoader {
+    private static final Logger LOGGER = LogManager.getLogger(RegistryLoader.class);
+    private static final int COPY_BUFFER_SIZE = 1 << 16;
+    private static final long PROGRESS_RECORDS = 1_000_000;
+    // column sizes, longer values pass the request validation but would fail the whole merge
+    private static final int NAME_MAX_LENGTH = 150;
+    private static final int ADDRESS_MAX_LENGTH = 250;
+
+    private static final List<String> CREATE_STAGING_TABLES = List.of(
+            "CREATE UNLOGGED TABLE loader_people (record_index int8 NOT NULL, full_name text NOT NULL, " +
+                    "date_of_birth date NOT NULL, is_hidden boolean NOT NULL, registration_region_id int8)",
+            "CREATE UNLOGGED TABLE loader_addresses (record_index int8 NOT NULL, region_id int8 NOT NULL, " +
+                    "address text NOT NULL, is_registration boolean NOT NULL)",
+            "CREATE UNLOGGED TABLE loader_contacts (record_index int8 NOT NULL, phone_number text NOT NULL)",
+            "CREATE UNLOGGED TABLE loader_documents (record_index int8 NOT NULL, type text NOT NULL, " +
+                    "full_number text NOT NULL, issue_date date NOT NULL, is_primary boolean NOT NULL)",
+            "CREATE UNLOGGED TABLE loader_rejects (record_index int8 PRIMARY KEY, error text NOT NULL)",
+            "CREATE UNLOGGED TABLE loader_repeated_keys (record_index int8 NOT NULL, key text NOT NULL, " +
+                    "error_order int4 NOT NULL, error text NOT NULL)",
+            "CREATE UNLOGGED TABLE loader_accepted (record_index int8 PRIMARY KEY)",
+            "CREATE UNLOGGED TABLE loader_person_ids (id int8 NOT NULL, record_index int8 NOT NULL)");
+    private static final List<String> STAGING_TABLES = List.of("loader_people", "loader_addresses",
+            "loader_contacts", "loader_documents", "loader_rejects", "loader_repeated_keys", "loader_accepted",
+            "loader_person_ids");
+
+    private static final String NOT_REJECTED =
+            "NOT EXISTS (SELECT 1 FROM loader_rejects r WHERE r.record_index = s.record_index)";
+    private static final String UNDECIDED = NOT_REJECTED +
+            " AND NOT EXISTS (SELECT 1 FROM loader_accepted a WHERE a.record_index = s.record_index)";
+
+    private final DataSource dataSource;
+    private final ObjectMapper objectMapper;
+    private final PersonRequestValidator personRequestValidator;
+    private final DtoConverter dtoConverter;
+    private final RegionRepository regionRepository;
+    private final int allocationSize;
+
+    public RegistryLoader(DataSource dataSource,
+                          ObjectMapper objectMapper,
+                          PersonRequestValidator personRequestValidator,
+                          DtoConverter dtoConverter,
+                          RegionRepository regionRepository,
+                          int allocationSize) {
+        this.dataSource = dataSource;
+        this.objectMapper = objectMapper;
+        this.personRequestValidator = personRequestValidator;
+        this.dtoConverter = dtoConverter;
+        this.regionRepository = regionRepository;
+        this.allocationSize = allocationSize;
+    }
+
+    public record Result(long loaded, long rejected) {
+    }
+
+    public Result load(InputStream input, Writer rejectsOutput) throws IOException, SQLException {
+        CopyCsvWriter rejects = new CopyCsvWriter(rejectsOutput);
+        rejects.field("record").field("error").endRow();
+
+        try (Connection connection = dataSource.getConnection()) {
+            execute(connection, dropStagingTables());
+            execute(connection, CREATE_STAGING_TABLES);
+            try {
+                long start = System.nanoTime();
+                Map<String, Long> regionIds = new HashMap<>();
+                regionRepository.findAll().forEach(region -> regionIds.put(region.getName(), region.getId()));
+                long readRejected = stage(input, rejects, regionIds);
+                execute(connection, STAGING_TABLES.stream().map(table -> "ANALYZE " + table).toList());
+                LOGGER.info("Staged the input in {} s", (System.nanoTime() - start) / 1_000_000_000);
+
+                start = System.nanoTime();
+                long loaded = merge(connection);
+                long mergeRejected = copyMergeRejects(connection, rejectsOutput);
+                LOGGER.info("Merged {} people in {} s", loaded, (System.nanoTime() - start) / 1_000_000_000);
+
+                execute(connection, List.of("ANALYZE people", "ANALYZE addresses", "ANALYZE people_addresses",
+                        "ANALYZE contacts", "ANALYZE identity_documents"));
+                return new Result(loaded, readRejected + mergeRejected);
+            } finally {
+                execute(connection, dropStagingTables());
+                rejects.flush();
+            }
+        }
+    }
+
+    /*
+     * Staging scenario:
+     * Every staging table is filled by its own COPY on its own connection, one connection takes one COPY at
+     * a time. The records are read and checked one by one and their rows are written to the four COPY streams,
+     * so neither the input nor the staged rows are held in memory.
+     * */
+    private long stage(InputStream input, CopyCsvWriter rejects, Map<String, Long> regionIds)
+            throws IOException, SQLException {
+        long rejected = 0;
+        try (StagingCopy people = new StagingCopy(dataSource,
+                "loader_people (record_index, full_name, date_of_birth, is_hidden, registration_region_id)");
+             StagingCopy addresses = new StagingCopy(dataSource,
+                     "loader_addresses (record_index, region_id, address, is_registration)");
+             StagingCopy contacts = new StagingCopy(dataSource, "loader_contacts (record_index, phone_number)");
+             StagingCopy documents = new StagingCopy(dataSource,
+                     "loader_documents (record_index, type, full_number, issue_date, is_primary)");
+             MappingIterator<PersonCreateUpdateRequest> records = objectMapper
+                     .readerFor(PersonCreateUpdateRequest.class)
+                     .readValues(input)) {
+            long index = 0;
+            for (; ; index++) {
+                if (index > 0 && index % PROGRESS_RECORDS == 0) LOGGER.info("Read {} records", index);
+
+                try {
+                    if (!records.hasNextValue()) break;
+                } catch (JsonParseException e) {
+                    reject(rejects, index, "Malformed record, reading stopped: " + e.getOriginalMessage());
+                    rejected++;
+                    break;
+                }
+
+                try {
+                    PersonCreateUpdateRequest rq = records.nextValue();
+                    String violations = personRequestValidator.describeViolations(rq);
+                    if (violations != null) throw new BadInputException(violations);
+
+                    Person person = dtoConverter.fromPersonCreateUpdateRequest(rq);
+                    Map<PersonAddress, Long> addressRegionIds = validatePerson(person, regionIds);
+                    Long registrationRegionId = addressRegionIds.entrySet().stream()
+                            .filter(entry -> Boolean.TRUE.equals(entry.getKey().getIsRegistration()))
+                            .map(Map.Entry::getValue)
+                            .findFirst()
+                            .orElse(null);
+
+                    people.rows.field(index).field(person.getName()).field(person.getDateOfBirth())
+                            .field(person.getIsHidden()).field(registrationRegionId).endRow();
+                    for (Map.Entry<PersonAddress, Long> entry : addressRegionIds.entrySet()) {
+                        addresses.rows.field(index).field(entry.getValue())
+                                .field(entry.getKey().getAddress().getAddress())
+                                .field(entry.getKey().getIsRegistration()).endRow();
+                    }
+                    for (Contact contact : person.getContacts()) {
+                        contacts.rows.field(index).field(contact.getPhoneNumber()).endRow();
+                    }
+                    for (IdentityDocument document : person.getIdentityDocuments()) {
+                        documents.rows.field(index).field(document.getType().name()).field(document.getFullNumber())
+                                .field(document.getIssueDate()).field(document.getIsPrimary()).endRow();
+                    }
+                } catch (JsonMappingException e) {
+                    reject(rejects, index, e.getOriginalMessage());
+                    rejected++;
+                } catch (BadInputException | IllegalArgumentException e) {
+                    reject(rejects, index, e.getMessage());
+                    rejected++;
+                }
+            }
+
+            long stagedPeople = people.finish();
+            long stagedAddresses = addresses.finish();
+            long stagedContacts = contacts.finish();
+            long stagedDocuments = documents.finish();
+            LOGGER.info("Read {} records, staged {} people, {} addresses, {} contacts, {} documents", index,
+                    stagedPeople, stagedAddresses, stagedContacts, stagedDocuments);
+        }
+
+        return rejected;
+    }
+
+    // the address records with the ids of their regions, in the order of the request; the checks and their
+    // errors are the ones of PersonServiceImpl.createPeople, in the same order
+    private static Map<PersonAddress, Long> validatePerson(Person person, Map<String, Long> regionIds) {
+        if (person.getId() != null) throw new BadInputException(CREATED_PERSON_ID_ERROR);
+        if (person.getName().length() > NAME_MAX_LENGTH)
+            throw new BadInputException("Person's name is longer than " + NAME_MAX_LENGTH + " characters");
+
+        Set<IdentityDocument> documents = person.getIdentityDocuments();
+        Set<Contact> contacts = person.getContacts();
+        Set<PersonAddress> addressRecords = person.getAddressRecords();
+        if (documents.contains(null)) throw new BadInputException(DOCUMENT_NULL_ERROR);
+        if (contacts.contains(null)) throw new BadInputException(CONTACT_NULL_ERROR);
+        if (addressRecords.stream().anyMatch(ar -> ar == null || ar.getAddress() == null))
+            throw new BadInputException(ADDRESS_NULL_ERROR);
+
+        if (documents.stream().anyMatch(document -> document.getId() != null))
+            throw new BadInputException(DOCUMENT_ID_ERROR);
+        if (documents.stream().filter(IdentityDocument::getIsPrimary).count() != 1)
+            throw new BadInputException(PRIMARY_DOCUMENT_ERROR);
+        Set<String> documentKeys = new HashSet<>();
+        for (IdentityDocument document : documents) {
+            if (!documentKeys.add(document.getType() + "\n" + document.getFullNumber()))
+                throw new BadInputException(DOCUMENT_EXISTS_ERROR.formatted(
+                        document.getType(), document.getFullNumber()));
+        }
+
+        if (contacts.stream().anyMatch(contact -> contact.getId() != null))
+            throw new BadInputException(CONTACT_ID_ERROR);
+        Set<String> phoneNumbers = new HashSet<>();
+        for (Contact contact : contacts) {
+            if (!phoneNumbers.add(contact.getPhoneNumber()))
+                throw new BadInputException(CONTACT_EXISTS_ERROR.formatted(contact.getPhoneNumber()));
+        }
+
+        if (addressRecords.stream().anyMatch(ar -> ar.getId() != null))
+            throw new BadInputException(ADDRESS_RECORD_ID_ERROR);
+        if (addressRecords.stream().anyMatch(ar -> ar.getAddress().getId() != null))
+            throw new BadInputException(ADDRESS_ID_ERROR);
+        if (addressRecords.stream().filter(ar -> Boolean.TRUE.equals(ar.getIsRegistration())).count() > 1)
+            throw new BadInputException(REGISTRATION_ADDRESSES_ERROR);
+
+        Map<PersonAddress, Long> addressRegionIds = new LinkedHashMap<>();
+        Set<String> personAddresses = new HashSet<>();
+        for (PersonAddress addressRecord : addressRecords) {
+            Address address = addressRecord.getAddress();
+            if (address.getAddress().length() > ADDRESS_MAX_LENGTH)
+                throw new BadInputException("Person's address is longer than " + ADDRESS_MAX_LENGTH + " characters");
+
+            String regionName = address.getRegion().getName();
+            Long regionId = regionIds.get(regionName);
+            if (regionId == null) throw new BadInputException(REGION_NOT_FOUND_ERROR.formatted(regionName));
+            if (!personAddresses.add(regionId + "\n" + address.getAddress()))
+                throw new BadInputException(ADDRESS_DUPLICATED_ERROR.formatted(regionName, address.getAddress()));
+
+            addressRegionIds.put(addressRecord, regionId);
+        }
+
+        return addressRegionIds;
+    }
+
+    /*
+     * Merge scenario, one transaction:
+     * 1. Reject the records with documents or phone numbers taken in the registry, documents first as in
+     *    PersonServiceImpl. One error per record, the first found.
+     * 2. Decide the other records in rounds, as POST /people/bulk would one by one: a record is accepted once
+     *    no earlier record that is not rejected shares a document or a phone number with it, and rejected once
+     *    an earlier accepted record does. Only the records with documents or phone numbers repeated in
+     *    the input are decided, the rest is accepted, the repeated values are collected once with the errors
+     *    of their records. Each round decides at least the first undecided record, the usual input takes one
+     *    or two rounds, a chain of records sharing values with the next one takes more.
+     * 3. Give the accepted people ids, then insert them with their new addresses, address records, contacts
+     *    and documents, each table by one INSERT ... SELECT. Addresses are shared by region and address
+     *    with each other and with the existing ones.
+     * 4. The foreign keys of these tables are dropped for the inserts and added back with their current
+     *    definitions: each is validated by one join over its table instead of a lookup per inserted row,
+     *    which took half of the insert time. Meant for the initial migration, the tables stay locked
+     *    until the commit.
+     * */
+    private long merge(Connection connection) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET LOCAL work_mem = '256MB'");
+            List<ForeignKey> foreignKeys = foreignKeys(statement);
+            executeUpdate(connection, """
+                    INSERT INTO loader_rejects (record_index, error)
+                    SELECT s.record_index, format(?, s.type, s.full_number)
+                    FROM loader_documents s
+                    WHERE EXISTS (SELECT 1 FROM identity_documents d
+                                  WHERE d.type = s.type AND d.full_number = s.full_number)
+                    ON CONFLICT DO NOTHING""", DOCUMENT_EXISTS_ERROR);
+            executeUpdate(connection, """
+                    INSERT INTO loader_rejects (record_index, error)
+                    SELECT s.record_index, format(?, s.phone_number)
+                    FROM loader_contacts s
+                    WHERE EXISTS (SELECT 1 FROM contacts c WHERE c.phone_number = s.phone_number)
+                    ON CONFLICT DO NOTHING""", CONTACT_EXISTS_ERROR);
+
+            executeUpdate(connection, """
+                    INSERT INTO loader_repeated_keys (record_index, key, error_order, error)
+                    SELECT k.record_index, k.key, k.error_order, k.error
+                    FROM (SELECT k.*, count(*) OVER (PARTITION BY k.key) AS records
+                          FROM (SELECT s.record_index, 'document ' || s.type || ' ' || s.full_number AS key,
+                                       0 AS error_order, format(?, s.type, s.full_number) AS error
+                                FROM loader_documents s WHERE %1$s
+                                UNION ALL
+                                SELECT s.record_index, 'phone ' || s.phone_number, 1, format(?, s.phone_number)
+                                FROM loader_contacts s WHERE %1$s) k) k
+                    WHERE k.records > 1""".formatted(NOT_REJECTED), DOCUMENT_EXISTS_ERROR, CONTACT_EXISTS_ERROR);
+            int rounds = 0;
+            while (decideRound(connection) > 0) rounds++;
+            LOGGER.info("Decided the records with repeated documents or phone numbers, rounds: {}", rounds);
+
+            for (ForeignKey foreignKey : foreignKeys) statement.execute(foreignKey.drop());
+            statement.executeUpdate(insertWithIds("loader_person_ids", "people_seq", "record_index",
+                    "SELECT s.record_index FROM loader_people s WHERE " + NOT_REJECTED));
+            long loaded = statement.executeUpdate("""
+                    INSERT INTO people (id, full_name, date_of_birth, is_hidden, version, registration_region_id)
+                    SELECT i.id, s.full_name, s.date_of_birth, s.is_hidden, 0, s.registration_region_id
+                    FROM loader_people s JOIN loader_person_ids i ON i.record_index = s.record_index""");
+            statement.executeUpdate(insertWithIds("addresses", "addresses_seq", "region_id, address", """
+                    SELECT DISTINCT s.region_id, s.address
+                    FROM loader_addresses s JOIN loader_person_ids i ON i.record_index = s.record_index
+                    WHERE NOT EXISTS (SELECT 1 FROM addresses a
+                                      WHERE a.region_id = s.region_id AND a.address = s.address)"""));
+            statement.executeUpdate(insertWithIds("people_addresses", "people_addresses_seq",
+                    "person_id, address_id, is_registration", """
+                            SELECT i.id AS person_id, a.id AS address_id, s.is_registration
+                            FROM loader_addresses s
+                            JOIN loader_person_ids i ON i.record_index = s.record_index
+                            JOIN addresses a ON a.region_id = s.region_id AND a.address = s.address"""));
+            statement.executeUpdate(insertWithIds("contacts", "contacts_seq", "owner_id, phone_number", """
+                    SELECT i.id AS owner_id, s.phone_number
+                    FROM loader_contacts s JOIN loader_person_ids i ON i.record_index = s.record_index"""));
+            statement.executeUpdate(insertWithIds("identity_documents", "identity_documents_seq",
+                    "owner_id, type, full_number, issue_date, is_primary", """
+                            SELECT i.id AS owner_id, s.type, s.full_number, s.issue_date, s.is_primary
+                            FROM loader_documents s JOIN loader_person_ids i ON i.record_index = s.record_index"""));
+            for (ForeignKey foreignKey : foreignKeys) statement.execute(foreignKey.add());
+
+            connection.commit();
+            return loaded;
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    // the number of records accepted or rejected by the round
+    private static int decideRound(Connection connection) throws SQLException {
+        execute(connection, List.of("ANALYZE loader_repeated_keys, loader_rejects, loader_accepted"));
+        int accepted = executeUpdate(connection, """
+                WITH first_records AS (
+                    SELECT s.key, min(s.record_index) AS record_index
+                    FROM loader_repeated_keys s WHERE %1$s
+                    GROUP BY s.key
+                )
+                INSERT INTO loader_accepted (record_index)
+                SELECT DISTINCT s.record_index
+                FROM loader_repeated_keys s
+                WHERE %2$s
+                AND NOT EXISTS (SELECT 1 FROM loader_repeated_keys k JOIN first_records f ON f.key = k.key
+                                WHERE k.record_index = s.record_index AND f.record_index < k.record_index)"""
+                .formatted(NOT_REJECTED, UNDECIDED));
+        int rejected = executeUpdate(connection, """
+                WITH first_accepted AS (
+                    SELECT k.key, min(k.record_index) AS record_index
+                    FROM loader_repeated_keys k JOIN loader_accepted a ON a.record_index = k.record_index
+                    GROUP BY k.key
+                )
+                INSERT INTO loader_rejects (record_index, error)
+                SELECT DISTINCT ON (s.record_index) s.record_index, s.error
+                FROM loader_repeated_keys s JOIN first_accepted f ON f.key = s.key AND f.record_index < s.record_index
+                WHERE %s
+                ORDER BY s.record_index, s.error_order, s.key""".formatted(UNDECIDED));
+
+        return accepted + rejected;
+    }
+
+    // the foreign keys of the registry tables as they are defined now
+    private static List<ForeignKey> foreignKeys(Statement statement) throws SQLException {
+        List<ForeignKey> foreignKeys = new ArrayList<>();
+        try (ResultSet resultSet = statement.executeQuery("""
+                SELECT format('ALTER TABLE %1$s DROP CONSTRAINT %2$I', conrelid::regclass, conname),
+                       format('ALTER TABLE %1$s ADD CONSTRAINT %2$I %3$s', conrelid::regclass, conname,
+                              pg_get_constraintdef(oid))
+                FROM pg_constraint
+                WHERE contype = 'f' AND conrelid IN ('people'::regclass, 'addresses'::regclass,
+                      'people_addresses'::regclass, 'contacts'::regclass, 'identity_documents'::regclass)""")) {
+            while (resultSet.next()) foreignKeys.add(new ForeignKey(resultSet.getString(1), resultSet.getString(2)));
+        }
+
+        return foreignKeys;
+    }
+
+    // one nextval per block of allocationSize rows, the row number within the block is added to it
+    private String insertWithIds(String table, String sequence, String columns, String rowsQuery) {
+        return """
+                WITH numbered AS (
+                    SELECT r.*, row_number() OVER () - 1 AS row_index FROM (%1$s) r
+                ), blocks AS (
+                    SELECT g - 1 AS block_number, nextval('%2$s') AS first_id
+                    FROM generate_series(1, ceil((SELECT count(*) FROM numbered) / %3$d::numeric)::int8) g
+                )
+                INSERT INTO %4$s (id, %5$s)
+                SELECT b.first_id + n.row_index %% %3$d, %5$s
+                FROM numbered n JOIN blocks b ON b.block_number = n.row_index / %3$d"""
+                .formatted(rowsQuery, sequence, allocationSize, table, columns);
+    }
+
+    private static long copyMergeRejects(Connection connection, Writer rejectsOutput) throws SQLException, IOException {
+        return connection.unwrap(PGConnection.class).getCopyAPI().copyOut(
+                "COPY (SELECT record_index, error FROM loader_rejects ORDER BY record_index) TO STDOUT (FORMAT csv)",
+                rejectsOutput);
+    }
+
+    private static void reject(CopyCsvWriter rejects, long index, String error) throws IOException {
+        rejects.field(index).field(error).endRow();
+    }
+
+    private static List<String> dropStagingTables() {
+        return STAGING_TABLES.stream().map(table -> "DROP TABLE IF EXISTS " + table).toList();
+    }
+
+    private static int executeUpdate(Connection connection, String sql, String... parameters) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) statement.setString(i + 1, parameters[i]);
+            return statement.executeUpdate();
+        }
+    }
+
+    private static void execute(Connection connection, List<String> sqls) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : sqls) statement.execute(sql);
+        }
+    }
+
+    private record ForeignKey(String drop, String add) {
+    }
+
+    // COPY FROM STDIN of a staging table on a connection of its own, cancelled unless finished
+    private static final class StagingCopy implements AutoCloseable {
+        private final Connection connection;
+        private final PGCopyOutputStream copyOut;
+        private final CopyCsvWriter rows;
+
+        StagingCopy(DataSource dataSource, String tableWithColumns) throws SQLException {
+            connection = dataSource.getConnection();
+            try {
+                copyOut = new PGCopyOutputStream(connection.unwrap(PGConnection.class),
+                        "COPY " + tableWithColumns + " FROM STDIN (FORMAT csv)", COPY_BUFFER_SIZE);
+            } catch (SQLException e) {
+                connection.close();
+                throw e;
+            }
+            rows = new CopyCsvWriter(new BufferedWriter(new OutputStreamWriter(copyOut, StandardCharsets.UTF_8),
+                    COPY_BUFFER_SIZE));
+        }
+
+        long finish() throws IOException, SQLException {
+            rows.flush();
+            return copyOut.endCopy();
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                if (copyOut.isActive()) copyOut.cancelCopy();
+            } finally {
+                connection.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.naumov.identityservice.metrics;
+
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+
+/**
+ * Counts entities loaded by Hibernate into {@link SqlStatistics}.
+ */
+public class EntityLoadCountingInterceptor extends EmptyInterceptor {
+
+    @Override
+    public boolean onLoad(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+        SqlStatistics.entityLoaded();
+        return false;
+    }
+}
@@ -0,0 +1,79 @@
+package com.naumov.identityservice.metrics;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Counts executed statements and fetched rows into {@link SqlStatistics}. Connections, statements and result
+ * sets are wrapped with JDK proxies, unwrap() still reaches the driver objects.
+ */
+public class SqlCountingDataSource extends DelegatingDataSource {
+
+    public SqlCountingDataSource(DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return countingConnection(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return countingConnection(super.getConnection(username, password));
+    }
+
+    private static Connection countingConnection(Connection connection) {
+        return proxy(Connection.class, connection, (method, result) -> {
+            if (result instanceof Statement statement) return countingStatement(statement);
+            return result;
+        });
+    }
+
+    private static Statement countingStatement(Statement statement) {
+        Class<? extends Statement> type = statement instanceof CallableStatement ? CallableStatement.class
+                : statement instanceof PreparedStatement ? PreparedStatement.class
+                : Statement.class;
+
+        return proxy(type, statement, (method, result) -> {
+            if (method.getName().startsWith("execute")) SqlStatistics.statementExecuted();
+            if (result instanceof ResultSet resultSet) return countingResultSet(resultSet);
+            return result;
+        });
+    }
+
+    private static ResultSet countingResultSet(ResultSet resultSet) {
+        return proxy(ResultSet.class, resultSet, (method, result) -> {
+            if (Boolean.TRUE.equals(result) && method.getName().equals("next")) SqlStatistics.rowFetched();
+            return result;
+        });
+    }
+
+    private static <T> T proxy(Class<? extends T> type, T target, ResultHandler resultHandler) {
+        Object proxy = Proxy.newProxyInstance(SqlCountingDataSource.class.getClassLoader(), new Class<?>[]{type},
+                (self, method, args) -> {
+                    try {
+                        return resultHandler.handle(method, method.invoke(target, args));
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                });
+
+        return type.cast(proxy);
+    }
+
+    @FunctionalInterface
+    private interface ResultHandler {
+        Object handle(Method method, Object result);
+    }
+}
@@ -0,0 +1,64 @@
+package com.naumov.identityservice.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Records JDBC statements, fetched rows and loaded entities per request as distribution summaries tagged
+ * with the method and the uri pattern, e.g. identity-service.http.sql.statements{method=GET,uri=/people/{id}}.
+ * An alert on its max or mean catches an endpoint whose query count regressed.
+ */
+@Component
+public class SqlMetricsFilter extends OncePerRequestFilter {
+    public static final String STATEMENTS_METRIC = "identity-service.http.sql.statements";
+    public static final String ROWS_METRIC = "identity-service.http.sql.rows";
+    public static final String ENTITIES_METRIC = "identity-service.http.entities.loaded";
+
+    private final MeterRegistry meterRegistry;
+
+    public SqlMetricsFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /*
+     * Asynchronous requests (GET /people/export) are counted up to the start of streaming only,
+     * the response body is written on another thread.
+     * */
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        SqlStatistics statistics = SqlStatistics.start();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            SqlStatistics.stop();
+            record(request, statistics);
+        }
+    }
+
+    private void record(HttpServletRequest request, SqlStatistics statistics) {
+        Object uriPattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        Tags tags = Tags.of("method", request.getMethod(), "uri", uriPattern != null ? uriPattern.toString() : "UNKNOWN");
+
+        summary(STATEMENTS_METRIC, "statements", tags).record(statistics.getStatements());
+        summary(ROWS_METRIC, "rows", tags).record(statistics.getRows());
+        summary(ENTITIES_METRIC, "entities", tags).record(statistics.getEntities());
+    }
+
+    private DistributionSummary summary(String name, String baseUnit, Tags tags) {
+        return DistributionSummary.builder(name)
+                .baseUnit(baseUnit)
+                .tags(tags)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,45 @@
+package com.naumov.identityservice.metrics;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Adds the request's {@link SqlStatistics} as response headers, enabled with
+ * identity-service.sql-metrics.headers=true. The headers are written before the body, so they
+ * don't include statements executed while streaming it.
+ */
+@ControllerAdvice
+@ConditionalOnProperty(name = "identity-service.sql-metrics.headers", havingValue = "true")
+public class SqlMetricsHeadersAdvice implements ResponseBodyAdvice<Object> {
+    public static final String STATEMENTS_HEADER = "X-Sql-Statements";
+    public static final String ROWS_HEADER = "X-Sql-Rows";
+    public static final String ENTITIES_HEADER = "X-Entities-Loaded";
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body,
+                                  MethodParameter returnType,
+                                  MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request,
+                                  ServerHttpResponse response) {
+        SqlStatistics statistics = SqlStatistics.current();
+        if (statistics != null) {
+            response.getHeaders().set(STATEMENTS_HEADER, String.valueOf(statistics.getStatements()));
+            response.getHeaders().set(ROWS_HEADER, String.valueOf(statistics.getRows()));
+            response.getHeaders().set(ENTITIES_HEADER, String.valueOf(statistics.getEntities()));
+        }
+
+        return body;
+    }
+}
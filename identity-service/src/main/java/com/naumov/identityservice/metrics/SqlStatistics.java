@@ -0,0 +1,57 @@
+package com.naumov.identityservice.metrics;
+
+/**
+ * JDBC statements, fetched rows and loaded entities of the current request. The counters are bound to
+ * the request thread by {@link SqlMetricsFilter}, work done outside a request is not counted.
+ */
+public final class SqlStatistics {
+    private static final ThreadLocal<SqlStatistics> CURRENT = new ThreadLocal<>();
+
+    private long statements;
+    private long rows;
+    private long entities;
+
+    private SqlStatistics() {
+    }
+
+    static SqlStatistics start() {
+        SqlStatistics statistics = new SqlStatistics();
+        CURRENT.set(statistics);
+        return statistics;
+    }
+
+    static void stop() {
+        CURRENT.remove();
+    }
+
+    public static SqlStatistics current() {
+        return CURRENT.get();
+    }
+
+    static void statementExecuted() {
+        SqlStatistics statistics = CURRENT.get();
+        if (statistics != null) statistics.statements++;
+    }
+
+    static void rowFetched() {
+        SqlStatistics statistics = CURRENT.get();
+        if (statistics != null) statistics.rows++;
+    }
+
+    static void entityLoaded() {
+        SqlStatistics statistics = CURRENT.get();
+        if (statistics != null) statistics.entities++;
+    }
+
+    public long getStatements() {
+        return statements;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getEntities() {
+        return entities;
+    }
+}
@@ -3,12 +3,16 @@ package com.naumov.identityservice.model;
 import com.naumov.identityservice.util.AbstractBuilder;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.LinkedHashSet;
 import java.util.Optional;
+import java.util.Set;
 
+import static com.naumov.identityservice.util.JsonUtil.convertLazy;
 import static com.naumov.identityservice.util.JsonUtil.translateEscapes;
 
 @Entity
@@ -20,11 +24,12 @@ public class Address implements IdentifiableEntity {
     @Setter
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "address_gen")
-    @SequenceGenerator(name = "address_gen", sequenceName = "addresses_seq", allocationSize = 10)
+    @GenericGenerator(name = "address_gen", strategy = PooledLoSequenceGenerator.STRATEGY,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "addresses_seq"))
     private Long id;
     @Getter
     @Setter
-    @ManyToOne(optional = false)
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
     @JoinColumn(name = "region_id", nullable = false)
     private Region region;
     @Getter
@@ -32,24 +37,26 @@ public class Address implements IdentifiableEntity {
     @Column(length = 255, nullable = false)
     private String address;
     // REMOVE is used since we persist PersonAddress through Person
-    @OneToMany(mappedBy = "address", cascade = CascadeType.REMOVE, fetch = FetchType.EAGER, orphanRemoval = true)
-    private List<PersonAddress> personRecords = new ArrayList<>();
+    // lazy: an address may be shared by many people, nothing reads their records through it
+    @OneToMany(mappedBy = "address", cascade = CascadeType.REMOVE, orphanRemoval = true)
+    @OrderBy("id")
+    private Set<PersonAddress> personRecords = new LinkedHashSet<>();
 
-    public List<PersonAddress> getPersonRecords() {
+    public Set<PersonAddress> getPersonRecords() {
         return personRecords;
     }
 
-    public void setPersonRecords(List<PersonAddress> personRecords) {
-        this.personRecords = Optional.ofNullable(personRecords).orElseGet(ArrayList::new);
+    public void setPersonRecords(Set<PersonAddress> personRecords) {
+        this.personRecords = Optional.ofNullable(personRecords).orElseGet(LinkedHashSet::new);
     }
 
     @Override
     public String toString() {
         return "{" +
                 "\"id\":" + id +
-                ",\"region\":" + region +
+                ",\"region\":" + convertLazy(region) +
                 ",\"address\":\"" + translateEscapes(address) + "\"" +
-                ",\"personRecords\":" + personRecords +
+                ",\"personRecords\":" + convertLazy(personRecords) +
                 "}";
     }
 
@@ -78,8 +85,8 @@ public class Address implements IdentifiableEntity {
             return this;
         }
 
-        public AddressBuilder personRecords(List<PersonAddress> personRecords) {
-            getInstance().personRecords = Optional.ofNullable(personRecords).orElseGet(ArrayList::new);
+        public AddressBuilder personRecords(Set<PersonAddress> personRecords) {
+            getInstance().personRecords = Optional.ofNullable(personRecords).orElseGet(LinkedHashSet::new);
             return this;
         }
     }
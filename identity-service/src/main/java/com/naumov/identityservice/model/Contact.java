@@ -1,6 +1,9 @@
 package com.naumov.identityservice.model;
 
 import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
 
@@ -17,9 +20,10 @@ import static com.naumov.identityservice.util.JsonUtil.translateEscapes;
 public class Contact implements IdentifiableEntity {
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "contacts_gen")
-    @SequenceGenerator(name = "contacts_gen", sequenceName = "contacts_seq", allocationSize = 10)
+    @GenericGenerator(name = "contacts_gen", strategy = PooledLoSequenceGenerator.STRATEGY,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "contacts_seq"))
     private Long id;
-    @ManyToOne(optional = false)
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
     @JoinColumn(name = "owner_id", nullable = false)
     private Person owner;
     @Column(name = "phone_number", length = 12, nullable = false, unique = true)
@@ -3,6 +3,9 @@ package com.naumov.identityservice.model;
 import com.naumov.identityservice.util.AbstractBuilder;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
 import java.time.LocalDate;
@@ -19,7 +22,8 @@ import static com.naumov.identityservice.util.JsonUtil.*;
 public class IdentityDocument implements IdentifiableEntity {
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "identity_documents_gen")
-    @SequenceGenerator(name = "identity_documents_gen", sequenceName = "identity_documents_seq", allocationSize = 10)
+    @GenericGenerator(name = "identity_documents_gen", strategy = PooledLoSequenceGenerator.STRATEGY,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "identity_documents_seq"))
     private Long id;
     @Enumerated(EnumType.STRING)
     @Column(length = 30, nullable = false)
@@ -28,7 +32,7 @@ public class IdentityDocument implements IdentifiableEntity {
     private String fullNumber;
     @Column(name = "issue_date", nullable = false)
     private LocalDate issueDate;
-    @ManyToOne(optional = false)
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
     @JoinColumn(name = "owner_id", nullable = false)
     private Person owner;
     @Column(name = "is_primary", nullable = false)
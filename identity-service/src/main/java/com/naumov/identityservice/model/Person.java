@@ -3,24 +3,50 @@ package com.naumov.identityservice.model;
 import com.naumov.identityservice.util.AbstractBuilder;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Filter;
+import org.hibernate.annotations.FilterDef;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.LinkedHashSet;
 import java.util.Optional;
+import java.util.Set;
 
-import static com.naumov.identityservice.util.JsonUtil.convertLocalDate;
-import static com.naumov.identityservice.util.JsonUtil.translateEscapes;
+import static com.naumov.identityservice.util.JsonUtil.*;
 
 @Entity
 @Table(name = "people")
+// Everything GET /people/{id} responds with. The collections are sets, so all of them are fetched
+// by a single query, the product of their rows stays small per person.
+@NamedEntityGraph(
+        name = Person.WITH_ALL_ASSOCIATIONS,
+        attributeNodes = {
+                @NamedAttributeNode(value = "addressRecords", subgraph = "addressRecords"),
+                @NamedAttributeNode("contacts"),
+                @NamedAttributeNode("identityDocuments")
+        },
+        subgraphs = {
+                @NamedSubgraph(name = "addressRecords", attributeNodes = @NamedAttributeNode(value = "address", subgraph = "address")),
+                @NamedSubgraph(name = "address", attributeNodes = @NamedAttributeNode("region"))
+        }
+)
+// Excludes hidden people from the queries of the session it is enabled in. The condition is rendered into the SQL
+// as a literal, so PostgreSQL can use the partial index people_visible_id_idx for it.
+@FilterDef(name = Person.VISIBLE_ONLY)
+@Filter(name = Person.VISIBLE_ONLY, condition = "is_hidden = false")
 public class Person implements IdentifiableEntity {
+    public static final String WITH_ALL_ASSOCIATIONS = "Person.withAllAssociations";
+    public static final String VISIBLE_ONLY = "Person.visibleOnly";
+
     @Getter
     @Setter
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "people_gen")
-    @SequenceGenerator(name = "people_gen", sequenceName = "people_seq", allocationSize = 10)
+    @GenericGenerator(name = "people_gen", strategy = PooledLoSequenceGenerator.STRATEGY,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "people_seq"))
     private Long id;
     @Getter
     @Setter
@@ -34,35 +60,52 @@ public class Person implements IdentifiableEntity {
     @Setter
     @Column(name = "is_hidden", nullable = false)
     private Boolean isHidden = false;
-    @OneToMany(mappedBy = "person", cascade = CascadeType.ALL, fetch = FetchType.EAGER, orphanRemoval = true)
-    private List<PersonAddress> addressRecords = new ArrayList<>();
+    // incremented by every update, see PersonRepository.updateIfVersionMatches
+    @Getter
+    @Setter
+    @Version
+    @Column(nullable = false)
+    private Long version;
+    // region of the registration address, denormalized for listing the people of a region by the index
+    // people_registration_region_id_idx. Maintained by PersonService on every change of the address records.
+    @Getter
+    @Setter
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "registration_region_id")
+    private Region registrationRegion;
+    // lazy sets ordered by id: any number of them can be fetched by one query, see WITH_ALL_ASSOCIATIONS
+    @OneToMany(mappedBy = "person", cascade = CascadeType.ALL, orphanRemoval = true)
+    @OrderBy("id")
+    private Set<PersonAddress> addressRecords = new LinkedHashSet<>();
     @OneToMany(mappedBy = "owner", cascade = CascadeType.ALL, orphanRemoval = true)
-    private List<Contact> contacts = new ArrayList<>();
+    @OrderBy("id")
+    private Set<Contact> contacts = new LinkedHashSet<>();
     @OneToMany(mappedBy = "owner", cascade = CascadeType.ALL, orphanRemoval = true)
-    private List<IdentityDocument> identityDocuments = new ArrayList<>();
+    @OrderBy("id")
+    private Set<IdentityDocument> identityDocuments = new LinkedHashSet<>();
 
-    public List<PersonAddress> getAddressRecords() {
+    public Set<PersonAddress> getAddressRecords() {
         return addressRecords;
     }
 
-    public void setAddressRecords(List<PersonAddress> addressRecords) {
-        this.addressRecords = Optional.ofNullable(addressRecords).orElseGet(ArrayList::new);
+    public void setAddressRecords(Set<PersonAddress> addressRecords) {
+        this.addressRecords = Optional.ofNullable(addressRecords).orElseGet(LinkedHashSet::new);
     }
 
-    public List<Contact> getContacts() {
+    public Set<Contact> getContacts() {
         return contacts;
     }
 
-    public void setContacts(List<Contact> contacts) {
-        this.contacts = Optional.ofNullable(contacts).orElseGet(ArrayList::new);
+    public void setContacts(Set<Contact> contacts) {
+        this.contacts = Optional.ofNullable(contacts).orElseGet(LinkedHashSet::new);
     }
 
-    public List<IdentityDocument> getIdentityDocuments() {
+    public Set<IdentityDocument> getIdentityDocuments() {
         return identityDocuments;
     }
 
-    public void setIdentityDocuments(List<IdentityDocument> identityDocuments) {
-        this.identityDocuments = Optional.ofNullable(identityDocuments).orElseGet(ArrayList::new);
+    public void setIdentityDocuments(Set<IdentityDocument> identityDocuments) {
+        this.identityDocuments = Optional.ofNullable(identityDocuments).orElseGet(LinkedHashSet::new);
     }
 
     @Override
@@ -72,9 +115,11 @@ public class Person implements IdentifiableEntity {
                 ",\"name\":\"" + translateEscapes(name) + "\"" +
                 ",\"dateOfBirth\":\"" + convertLocalDate(dateOfBirth) + "\"" +
                 ",\"isHidden\":" + isHidden +
-                ",\"addressRecords\":" + addressRecords +
-                ",\"contacts\":" + contacts +
-                ",\"identityDocuments\":" + identityDocuments +
+                ",\"version\":" + version +
+                ",\"registrationRegionId\":" + extractId(registrationRegion) +
+                ",\"addressRecords\":" + convertLazy(addressRecords) +
+                ",\"contacts\":" + convertLazy(contacts) +
+                ",\"identityDocuments\":" + convertLazy(identityDocuments) +
                 "}";
     }
 
@@ -108,18 +153,23 @@ public class Person implements IdentifiableEntity {
             return this;
         }
 
-        public PersonBuilder addressRecords(List<PersonAddress> addressRecords) {
-            getInstance().addressRecords = Optional.ofNullable(addressRecords).orElseGet(ArrayList::new);
+        public PersonBuilder version(Long version) {
+            getInstance().version = version;
+            return this;
+        }
+
+        public PersonBuilder addressRecords(Set<PersonAddress> addressRecords) {
+            getInstance().addressRecords = Optional.ofNullable(addressRecords).orElseGet(LinkedHashSet::new);
             return this;
         }
 
-        public PersonBuilder contacts(List<Contact> contacts) {
-            getInstance().contacts = Optional.ofNullable(contacts).orElseGet(ArrayList::new);
+        public PersonBuilder contacts(Set<Contact> contacts) {
+            getInstance().contacts = Optional.ofNullable(contacts).orElseGet(LinkedHashSet::new);
             return this;
         }
 
-        public PersonBuilder identityDocuments(List<IdentityDocument> identityDocuments) {
-            getInstance().identityDocuments = Optional.ofNullable(identityDocuments).orElseGet(ArrayList::new);
+        public PersonBuilder identityDocuments(Set<IdentityDocument> identityDocuments) {
+            getInstance().identityDocuments = Optional.ofNullable(identityDocuments).orElseGet(LinkedHashSet::new);
             return this;
         }
     }
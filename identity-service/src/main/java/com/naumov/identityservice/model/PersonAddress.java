@@ -3,6 +3,9 @@ package com.naumov.identityservice.model;
 import com.naumov.identityservice.util.AbstractBuilder;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import javax.persistence.*;
 
@@ -17,12 +20,13 @@ import static com.naumov.identityservice.util.JsonUtil.extractId;
 public class PersonAddress implements IdentifiableEntity {
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "people_addresses_gen")
-    @SequenceGenerator(name = "people_addresses_gen", sequenceName = "people_addresses_seq", allocationSize = 10)
+    @GenericGenerator(name = "people_addresses_gen", strategy = PooledLoSequenceGenerator.STRATEGY,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "people_addresses_seq"))
     private Long id;
-    @ManyToOne(optional = false)
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
     @JoinColumn(name = "person_id", referencedColumnName = "id", nullable = false)
     private Person person;
-    @ManyToOne(optional = false)
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
     @JoinColumn(name = "address_id", referencedColumnName = "id", nullable = false)
     private Address address;
     @Column(name = "is_registration", nullable = false)
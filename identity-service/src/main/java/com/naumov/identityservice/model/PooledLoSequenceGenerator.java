@@ -0,0 +1,34 @@
+package com.naumov.identityservice.model;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.id.enhanced.StandardOptimizerDescriptor;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.util.Properties;
+
+/**
+ * Sequence generator of the entity ids with the pooled-lo optimizer: one sequence call reserves
+ * {@value #ALLOCATION_SIZE_SETTING} ids starting from the returned value. The allocation size is a setting,
+ * not an annotation attribute, because the increment of the sequences is changed with it by the Liquibase
+ * parameter id-allocation-size. Hibernate checks both match at startup. Changing the size on a running cluster
+ * needs a full restart: every instance is stopped before any is started with the new size.
+ */
+public class PooledLoSequenceGenerator extends SequenceStyleGenerator {
+    public static final String STRATEGY = "com.naumov.identityservice.model.PooledLoSequenceGenerator";
+    public static final String ALLOCATION_SIZE_SETTING = "identity-service.id.allocation-size";
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        Integer allocationSize = ConfigurationHelper.getInteger(ALLOCATION_SIZE_SETTING,
+                serviceRegistry.getService(ConfigurationService.class).getSettings());
+        if (allocationSize == null) throw new MappingException(ALLOCATION_SIZE_SETTING + " is not configured");
+
+        params.setProperty(INCREMENT_PARAM, allocationSize.toString());
+        params.setProperty(OPT_PARAM, StandardOptimizerDescriptor.POOLED_LO.getExternalName());
+        super.configure(type, params, serviceRegistry);
+    }
+}
@@ -1,6 +1,8 @@
 package com.naumov.identityservice.repository;
 
 import com.naumov.identityservice.model.Address;
+import com.naumov.identityservice.model.Region;
+import com.naumov.identityservice.repository.projection.AddressKeyView;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -8,6 +10,8 @@ import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 
@@ -20,6 +24,18 @@ public interface AddressRepository extends JpaRepository<Address, Long> {
             "WHERE a.address = :address AND r.name = :regionName")
     Optional<Address> findByRegionNameAndAddress(String regionName, String address);
 
+    // Projection is used to avoid eager loading of personRecords for every found address
+    @Query("SELECT a.id AS id, a.region.id AS regionId, a.address AS address FROM Address a " +
+            "WHERE a.address IN :addresses")
+    List<AddressKeyView> findKeysByAddressIn(Collection<String> addresses);
+
+    @Query("SELECT a.id AS id, a.region.id AS regionId, a.address AS address FROM Address a WHERE a.id IN :ids")
+    List<AddressKeyView> findKeysByIdIn(Collection<Long> ids);
+
+    @Query("UPDATE Address a SET a.region = :region, a.address = :address WHERE a.id = :id")
+    @Modifying
+    void updateRegionAndAddress(long id, Region region, String address);
+
     @Query("DELETE FROM Address a WHERE a.id IN :ids AND a.personRecords IS EMPTY")
     @Modifying
     void deleteAddressesByIdInAndPersonRecordsIsEmpty(Set<Long> ids);
@@ -1,16 +1,33 @@
 package com.naumov.identityservice.repository;
 
 import com.naumov.identityservice.model.Contact;
+import com.naumov.identityservice.repository.projection.ContactStateView;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 @Transactional(propagation = Propagation.MANDATORY)
 public interface ContactRepository extends JpaRepository<Contact, Long> {
-    boolean existsByPhoneNumber(String phoneNumber);
     List<Contact> findAllByPhoneNumberIn(List<String> phoneNumbers);
+
+    @Query("SELECT c.phoneNumber FROM Contact c WHERE c.phoneNumber IN :phoneNumbers")
+    List<String> findPhoneNumbersIn(Collection<String> phoneNumbers);
+
+    @Query("SELECT c.id AS id, c.phoneNumber AS phoneNumber FROM Contact c WHERE c.owner.id = :ownerId")
+    List<ContactStateView> findStatesByOwnerId(long ownerId);
+
+    @Query("UPDATE Contact c SET c.phoneNumber = :phoneNumber WHERE c.id = :id")
+    @Modifying
+    void updatePhoneNumber(long id, String phoneNumber);
+
+    @Query("DELETE FROM Contact c WHERE c.id IN :ids")
+    @Modifying
+    void deleteContactsByIdIn(Collection<Long> ids);
 }
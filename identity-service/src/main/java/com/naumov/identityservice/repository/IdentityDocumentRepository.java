@@ -1,13 +1,49 @@
 package com.naumov.identityservice.repository;
 
 import com.naumov.identityservice.model.IdentityDocument;
+import com.naumov.identityservice.repository.projection.IdentityDocumentKeyView;
+import com.naumov.identityservice.repository.projection.IdentityDocumentOwnerView;
+import com.naumov.identityservice.repository.projection.IdentityDocumentStateView;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 @Transactional(propagation = Propagation.MANDATORY)
 public interface IdentityDocumentRepository extends JpaRepository<IdentityDocument, Long> {
-    boolean existsByTypeAndFullNumber(IdentityDocument.DocumentType type, String fullNumber);
+    @Query("SELECT d.type AS type, d.fullNumber AS fullNumber FROM IdentityDocument d " +
+            "WHERE d.fullNumber IN :fullNumbers")
+    List<IdentityDocumentKeyView> findKeysByFullNumberIn(Collection<String> fullNumbers);
+
+    // Person is the root of the query, so the filter of hidden people applies to it, see Person.VISIBLE_ONLY
+    @Query("SELECT d.type AS type, d.fullNumber AS fullNumber, p.id AS ownerId, p.name AS ownerName " +
+            "FROM Person p " +
+            "JOIN p.identityDocuments d " +
+            "WHERE d.fullNumber IN :fullNumbers")
+    List<IdentityDocumentOwnerView> findOwnersByFullNumberIn(Collection<String> fullNumbers);
+
+    @Query("SELECT d.id AS id, d.type AS type, d.fullNumber AS fullNumber, d.issueDate AS issueDate, " +
+            "d.isPrimary AS isPrimary FROM IdentityDocument d WHERE d.owner.id = :ownerId")
+    List<IdentityDocumentStateView> findStatesByOwnerId(long ownerId);
+
+    @Query("UPDATE IdentityDocument d " +
+            "SET d.type = :type, d.fullNumber = :fullNumber, d.issueDate = :issueDate, d.isPrimary = :isPrimary " +
+            "WHERE d.id = :id")
+    @Modifying
+    void updateIdentityDocument(long id,
+                                IdentityDocument.DocumentType type,
+                                String fullNumber,
+                                LocalDate issueDate,
+                                Boolean isPrimary);
+
+    @Query("DELETE FROM IdentityDocument d WHERE d.id IN :ids")
+    @Modifying
+    void deleteIdentityDocumentsByIdIn(Collection<Long> ids);
 }
@@ -1,15 +1,35 @@
 package com.naumov.identityservice.repository;
 
 import com.naumov.identityservice.model.PersonAddress;
+import com.naumov.identityservice.repository.projection.PersonAddressStateView;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Optional;
+import java.util.Collection;
+import java.util.List;
 
 @Repository
 @Transactional(propagation = Propagation.MANDATORY)
 public interface PersonAddressRepository extends JpaRepository<PersonAddress, Long> {
-    Optional<PersonAddress> findByPersonIdAndAddressId(long personId, long addressId);
+    @Query("SELECT pa.id AS id, a.id AS addressId, a.region.id AS regionId, a.address AS address, " +
+            "pa.isRegistration AS isRegistration " +
+            "FROM PersonAddress pa " +
+            "JOIN pa.address a " +
+            "WHERE pa.person.id = :personId")
+    List<PersonAddressStateView> findStatesByPersonId(long personId);
+
+    @Query("SELECT DISTINCT pa.person.id FROM PersonAddress pa WHERE pa.address.id IN :addressIds")
+    List<Long> findPersonIdsByAddressIdIn(Collection<Long> addressIds);
+
+    @Query("UPDATE PersonAddress pa SET pa.isRegistration = :isRegistration WHERE pa.id = :id")
+    @Modifying
+    void updateIsRegistration(long id, Boolean isRegistration);
+
+    @Query("DELETE FROM PersonAddress pa WHERE pa.id IN :ids")
+    @Modifying
+    void deletePersonAddressesByIdIn(Collection<Long> ids);
 }
@@ -2,69 +2,165 @@ package com.naumov.identityservice.repository;
 
 import com.naumov.identityservice.model.IdentityDocument;
 import com.naumov.identityservice.model.Person;
+import com.naumov.identityservice.model.Region;
+import com.naumov.identityservice.repository.projection.PersonBulkView;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 @Repository
 @Transactional(propagation = Propagation.MANDATORY)
-public interface PersonRepository extends JpaRepository<Person, Long> {
+public interface PersonRepository extends JpaRepository<Person, Long>, PersonRepositoryCustom {
 
-    // Two queries to sequentially load a Person object avoiding MultipleBagFetchException
-    @Query("FROM Person p " +
-            "LEFT OUTER JOIN FETCH p.contacts " +
-            "WHERE p.id = :id")
-    Optional<Person> findByIdFetchContacts(Long id);
+    // Conditional write of the optimistic lock: 0 when the person does not exist or has another version.
+    // Clears the persistence context, so a person loaded before is not used with its old state.
+    @Query("UPDATE Person p " +
+            "SET p.name = :name, p.dateOfBirth = :dateOfBirth, p.isHidden = :isHidden, p.version = p.version + 1 " +
+            "WHERE p.id = :id AND p.version = :version")
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    int updateIfVersionMatches(long id, long version, String name, LocalDate dateOfBirth, Boolean isHidden);
 
-    @Query("FROM Person p " +
-            "LEFT OUTER JOIN FETCH p.identityDocuments " +
-            "WHERE p.id = :id")
-    Optional<Person> findByIdFetchIdentityDocuments(Long id);
+    // The denormalized registration region follows the registration address of the person
+    @Query("UPDATE Person p SET p.registrationRegion = :region WHERE p.id = :id")
+    @Modifying
+    void updateRegistrationRegion(long id, Region region);
 
-    // Pagination in memory (HHH000104) and cross join (MultipleBagFetchException) solution -
-    // two stage select: findAllIdsByRegistrationRegion (findAllIds) and findAllByIdsFetch* methods
-    @Query("SELECT p.id FROM Person p " +
-            "JOIN p.addressRecords ar " +
-            "JOIN ar.address a " +
-            "JOIN a.region r " +
-            "WHERE ar.isRegistration = true AND r.name = :regionName " +
+    // The people registered at the address follow the change of its region
+    @Query("UPDATE Person p SET p.registrationRegion = :region " +
+            "WHERE p.id IN (" +
+            "SELECT pa.person.id FROM PersonAddress pa WHERE pa.address.id = :addressId AND pa.isRegistration = true)")
+    @Modifying
+    void updateRegistrationRegionByAddressId(long addressId, Region region);
+
+    // GET /people/{id} response assembled by PostgreSQL in one statement (PostgreSQL only). Every collection
+    // is aggregated by its own correlated subquery, so the joins do not multiply the rows. The JSON is
+    // cast to text and read as one String, which is written to the client without parsing or mapping.
+    @Query(value = "SELECT CAST(json_build_object(" +
+            "'id', p.id, " +
+            "'version', p.version, " +
+            "'name', p.full_name, " +
+            "'date_of_birth', to_char(p.date_of_birth, 'DD-MM-YYYY'), " +
+            "'is_hidden', p.is_hidden, " +
+            "'addresses', COALESCE((" +
+            "SELECT json_agg(json_build_object(" +
+            "'id', a.id, 'region', r.name, 'address', a.address, 'registration_address', pa.is_registration" +
+            ") ORDER BY pa.id) " +
+            "FROM people_addresses pa " +
+            "JOIN addresses a ON a.id = pa.address_id " +
+            "JOIN regions r ON r.id = a.region_id " +
+            "WHERE pa.person_id = p.id), CAST('[]' AS json)), " +
+            "'contacts', COALESCE((" +
+            "SELECT json_agg(json_build_object('id', c.id, 'phone_number', c.phone_number) ORDER BY c.id) " +
+            "FROM contacts c " +
+            "WHERE c.owner_id = p.id), CAST('[]' AS json)), " +
+            "'identity_documents', COALESCE((" +
+            "SELECT json_agg(json_build_object(" +
+            "'id', d.id, 'type', d.type, 'full_number', d.full_number, " +
+            "'issue_date', to_char(d.issue_date, 'DD-MM-YYYY'), 'is_primary', d.is_primary" +
+            ") ORDER BY d.id) " +
+            "FROM identity_documents d " +
+            "WHERE d.owner_id = p.id), CAST('[]' AS json))" +
+            ") AS text) " +
+            "FROM people p " +
+            "WHERE p.id = :id",
+            nativeQuery = true)
+    Optional<String> findPersonJsonById(long id);
+
+    // A person with everything GET /people/{id} responds with, by one query. DISTINCT removes the duplicates
+    // the collection joins produce in memory only, it is not passed to the SQL.
+    @EntityGraph(Person.WITH_ALL_ASSOCIATIONS)
+    @Query("SELECT DISTINCT p FROM Person p WHERE p.id = :id")
+    @QueryHints(@QueryHint(name = HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    Optional<Person> findByIdWithAllAssociations(long id);
+
+    @EntityGraph(Person.WITH_ALL_ASSOCIATIONS)
+    @Query("SELECT DISTINCT p FROM Person p WHERE p.id IN :ids")
+    @QueryHints(@QueryHint(name = HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    List<Person> findAllByIdsWithAllAssociations(Collection<Long> ids);
+
+    // Bulk list and export read path: one row per person with the data of PersonGetBulkResponse only,
+    // selected as scalars, so the rows do not pass through the persistence context.
+    // The first contact is the one with the smallest id. The people of a region are selected by the denormalized
+    // registration region of the person, so they are seeked by the index before the joins.
+    String BULK_VIEW_QUERY = "SELECT p.id AS id, p.name AS name, p.dateOfBirth AS dateOfBirth, " +
+            "d.id AS documentId, d.type AS documentType, d.fullNumber AS documentFullNumber, " +
+            "d.issueDate AS documentIssueDate, " +
+            "c.id AS contactId, c.phoneNumber AS contactPhoneNumber, " +
+            "a.id AS addressId, r.name AS regionName, a.address AS address " +
+            "FROM Person p " +
+            "LEFT JOIN p.identityDocuments d WITH d.isPrimary = true " +
+            "LEFT JOIN p.contacts c " +
+            "LEFT JOIN p.addressRecords ar WITH ar.isRegistration = true " +
+            "LEFT JOIN ar.address a " +
+            "LEFT JOIN a.region r " +
+            "WHERE (c.id IS NULL OR c.id = (SELECT MIN(c2.id) FROM Contact c2 WHERE c2.owner = p)) ";
+    String EXPORT_FETCH_SIZE = "1000";
+
+    @Query(BULK_VIEW_QUERY +
             "ORDER BY p.id")
-    List<Long> findAllIdsByRegistrationRegion(String regionName, Pageable pageable);
+    List<PersonBulkView> findAllBulkViews(Pageable pageable);
 
-    @Query("SELECT p.id FROM Person p " +
+    @Query(BULK_VIEW_QUERY +
+            "AND p.registrationRegion = :registrationRegion " +
+            "ORDER BY p.id")
+    List<PersonBulkView> findAllBulkViewsByRegistrationRegion(Region registrationRegion, Pageable pageable);
+
+    // Keyset pagination: seeks by the last id of the previous page instead of skipping OFFSET rows,
+    // a pageable must always point to the first page and is used only to limit the result
+    @Query(BULK_VIEW_QUERY +
+            "AND p.id > :lastId " +
             "ORDER BY p.id")
-    List<Long> findAllIds(Pageable withPage);
+    List<PersonBulkView> findAllBulkViewsAfter(long lastId, Pageable limit);
 
-    @Query("FROM Person p " +
-            "LEFT JOIN FETCH p.addressRecords ar " +
-            "JOIN FETCH ar.address a " +
-            "JOIN FETCH a.region " +
-            "WHERE p.id IN :ids " +
+    @Query(BULK_VIEW_QUERY +
+            "AND p.registrationRegion = :registrationRegion AND p.id > :lastId " +
             "ORDER BY p.id")
-    List<Person> findAllByIdsFetchAddressRecords(List<Long> ids);
+    List<PersonBulkView> findAllBulkViewsByRegistrationRegionAfter(Region registrationRegion,
+                                                                   long lastId,
+                                                                   Pageable limit);
 
-    @Query("FROM Person p " +
-            "LEFT JOIN FETCH p.contacts " +
-            "WHERE p.id IN :ids " +
+    // Export streamed from a server-side cursor
+    @Query(BULK_VIEW_QUERY +
+            "AND p.id BETWEEN :fromId AND :toId " +
             "ORDER BY p.id")
-    List<Person> findAllByIdsFetchContacts(List<Long> ids);
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    Stream<PersonBulkView> streamAllForExport(long fromId, long toId);
 
-    @Query("FROM Person p " +
-            "LEFT JOIN FETCH p.identityDocuments " +
-            "WHERE p.id IN :ids " +
+    @Query(BULK_VIEW_QUERY +
+            "AND p.registrationRegion = :registrationRegion AND p.id BETWEEN :fromId AND :toId " +
             "ORDER BY p.id")
-    List<Person> findAllByIdsFetchIdentityDocuments(List<Long> ids);
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    Stream<PersonBulkView> streamAllForExportByRegistrationRegion(Region registrationRegion, long fromId, long toId);
 
+    // Resolved through the unique (type, full_number) document first, the person is then checked by primary key.
+    // Person is the root of the query, since Hibernate applies the filter of hidden people to the root only.
     @Query("SELECT p.id FROM Person p " +
-            "JOIN p.identityDocuments id " +
-            "WHERE p.name = :fullName " +
-            "AND id.type = :docType " +
-            "AND id.fullNumber = :docNumber")
+            "JOIN p.identityDocuments d " +
+            "WHERE d.type = :docType " +
+            "AND d.fullNumber = :docNumber " +
+            "AND p.name = :fullName")
     Optional<Long> findByNameAndDocument(String fullName, IdentityDocument.DocumentType docType, String docNumber);
 }
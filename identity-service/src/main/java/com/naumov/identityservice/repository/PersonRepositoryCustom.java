@@ -0,0 +1,17 @@
+package com.naumov.identityservice.repository;
+
+import java.time.LocalDate;
+
+public interface PersonRepositoryCustom {
+
+    // Conditional write of the optimistic lock for partial updates: only the non-null fields are set,
+    // all of them are not-null columns. 0 when the person does not exist or has another version.
+    // Clears the persistence context, like updateIfVersionMatches.
+    int patchIfVersionMatches(long id, long version, String name, LocalDate dateOfBirth, Boolean isHidden);
+
+    // Hidden people are excluded from the JPQL queries of people in the current session until the filter
+    // is disabled, see Person.VISIBLE_ONLY. Lookups by id are not filtered.
+    void enableVisibleOnlyFilter();
+
+    void disableVisibleOnlyFilter();
+}
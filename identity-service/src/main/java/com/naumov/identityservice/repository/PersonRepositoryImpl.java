@@ -0,0 +1,54 @@
+package com.naumov.identityservice.repository;
+
+import com.naumov.identityservice.model.Person;
+import org.hibernate.Session;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import java.time.LocalDate;
+
+/**
+ * Implementation of {@link PersonRepositoryCustom}, picked up by Spring Data as a fragment
+ * of {@link PersonRepository}. The UPDATE statement is built from the patched fields only,
+ * so the fields that are not patched do not need to be read first.
+ * The filter of hidden people is switched on the Hibernate session of the current transaction.
+ */
+@Transactional(propagation = Propagation.MANDATORY)
+public class PersonRepositoryImpl implements PersonRepositoryCustom {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public int patchIfVersionMatches(long id, long version, String name, LocalDate dateOfBirth, Boolean isHidden) {
+        StringBuilder jpql = new StringBuilder("UPDATE Person p SET p.version = p.version + 1");
+        if (name != null) jpql.append(", p.name = :name");
+        if (dateOfBirth != null) jpql.append(", p.dateOfBirth = :dateOfBirth");
+        if (isHidden != null) jpql.append(", p.isHidden = :isHidden");
+        jpql.append(" WHERE p.id = :id AND p.version = :version");
+
+        entityManager.flush();
+        Query query = entityManager.createQuery(jpql.toString())
+                .setParameter("id", id)
+                .setParameter("version", version);
+        if (name != null) query.setParameter("name", name);
+        if (dateOfBirth != null) query.setParameter("dateOfBirth", dateOfBirth);
+        if (isHidden != null) query.setParameter("isHidden", isHidden);
+
+        int updatedRows = query.executeUpdate();
+        entityManager.clear();
+        return updatedRows;
+    }
+
+    @Override
+    public void enableVisibleOnlyFilter() {
+        entityManager.unwrap(Session.class).enableFilter(Person.VISIBLE_ONLY);
+    }
+
+    @Override
+    public void disableVisibleOnlyFilter() {
+        entityManager.unwrap(Session.class).disableFilter(Person.VISIBLE_ONLY);
+    }
+}
@@ -0,0 +1,9 @@
+package com.naumov.identityservice.repository.projection;
+
+public interface AddressKeyView {
+    Long getId();
+
+    Long getRegionId();
+
+    String getAddress();
+}
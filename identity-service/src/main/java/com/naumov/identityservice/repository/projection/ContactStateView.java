@@ -0,0 +1,7 @@
+package com.naumov.identityservice.repository.projection;
+
+public interface ContactStateView {
+    Long getId();
+
+    String getPhoneNumber();
+}
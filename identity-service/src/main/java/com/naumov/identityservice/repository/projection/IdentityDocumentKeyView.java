@@ -0,0 +1,9 @@
+package com.naumov.identityservice.repository.projection;
+
+import com.naumov.identityservice.model.IdentityDocument;
+
+public interface IdentityDocumentKeyView {
+    IdentityDocument.DocumentType getType();
+
+    String getFullNumber();
+}
@@ -0,0 +1,13 @@
+package com.naumov.identityservice.repository.projection;
+
+import com.naumov.identityservice.model.IdentityDocument;
+
+public interface IdentityDocumentOwnerView {
+    IdentityDocument.DocumentType getType();
+
+    String getFullNumber();
+
+    Long getOwnerId();
+
+    String getOwnerName();
+}
@@ -0,0 +1,17 @@
+package com.naumov.identityservice.repository.projection;
+
+import com.naumov.identityservice.model.IdentityDocument;
+
+import java.time.LocalDate;
+
+public interface IdentityDocumentStateView {
+    Long getId();
+
+    IdentityDocument.DocumentType getType();
+
+    String getFullNumber();
+
+    LocalDate getIssueDate();
+
+    Boolean getIsPrimary();
+}
@@ -0,0 +1,13 @@
+package com.naumov.identityservice.repository.projection;
+
+public interface PersonAddressStateView {
+    Long getId();
+
+    Long getAddressId();
+
+    Long getRegionId();
+
+    String getAddress();
+
+    Boolean getIsRegistration();
+}
@@ -0,0 +1,35 @@
+package com.naumov.identityservice.repository.projection;
+
+import com.naumov.identityservice.model.IdentityDocument;
+
+import java.time.LocalDate;
+
+/**
+ * Flat row with the data of PersonGetBulkResponse: the person, its primary identity document,
+ * its first contact and its registration address. Association fields are null if there is no such item.
+ */
+public interface PersonBulkView {
+    Long getId();
+
+    String getName();
+
+    LocalDate getDateOfBirth();
+
+    Long getDocumentId();
+
+    IdentityDocument.DocumentType getDocumentType();
+
+    String getDocumentFullNumber();
+
+    LocalDate getDocumentIssueDate();
+
+    Long getContactId();
+
+    String getContactPhoneNumber();
+
+    Long getAddressId();
+
+    String getRegionName();
+
+    String getAddress();
+}
@@ -0,0 +1,68 @@
+package com.naumov.identityservice.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.naumov.identityservice.config.CacheConfiguration.PEOPLE_CACHE;
+
+/**
+ * Evicts the cached responses of changed people and counts the evictions, so a fill can tell it raced with one:
+ * a read that started before a commit may put the old state after the eviction of that commit. The filler takes
+ * {@link #evictionCount(long)} before the read and evicts its own entry if the count changed by the put.
+ * <p>
+ * The counts are kept per stripe of person ids, a shared stripe only costs another miss.
+ */
+@Component
+public class PersonCacheEvictions {
+    private static final int STRIPES = 1024;
+
+    private final CacheManager cacheManager;
+    private final AtomicLongArray evictions = new AtomicLongArray(STRIPES);
+
+    @Autowired
+    public PersonCacheEvictions(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    public long evictionCount(long personId) {
+        return evictions.get(stripe(personId));
+    }
+
+    /*
+     * Evicted at once for the later reads of the same transaction, and again after the commit for the reads
+     * that cached the old state meanwhile. Nothing is cached from a rolled back transaction.
+     * */
+    public void evict(Collection<Long> peopleIds) {
+        Cache cache = cacheManager.getCache(PEOPLE_CACHE);
+        if (cache == null || peopleIds.isEmpty()) return;
+
+        evict(cache, peopleIds);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                evict(cache, peopleIds);
+            }
+        });
+    }
+
+    // counted before the eviction: a fill that does not see the count has been put before it and is evicted
+    private void evict(Cache cache, Collection<Long> peopleIds) {
+        peopleIds.forEach(personId -> {
+            evictions.incrementAndGet(stripe(personId));
+            cache.evict(personId);
+        });
+    }
+
+    private static int stripe(long personId) {
+        return (int) Math.floorMod(personId, (long) STRIPES);
+    }
+}
@@ -0,0 +1,30 @@
+package com.naumov.identityservice.service;
+
+import com.naumov.identityservice.model.Person;
+import lombok.Getter;
+
+/**
+ * Outcome of a single person creation within a bulk request: either the created person or the rejection reason.
+ */
+@Getter
+public class PersonCreateResult {
+    private final Person person;
+    private final String error;
+
+    private PersonCreateResult(Person person, String error) {
+        this.person = person;
+        this.error = error;
+    }
+
+    public static PersonCreateResult created(Person person) {
+        return new PersonCreateResult(person, null);
+    }
+
+    public static PersonCreateResult rejected(String error) {
+        return new PersonCreateResult(null, error);
+    }
+
+    public boolean isCreated() {
+        return person != null;
+    }
+}
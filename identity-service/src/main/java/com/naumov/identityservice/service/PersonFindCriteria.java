@@ -0,0 +1,19 @@
+package com.naumov.identityservice.service;
+
+import lombok.Getter;
+
+/**
+ * Criteria of a single person lookup within a batch: the same as the parameters of the single lookup.
+ */
+@Getter
+public class PersonFindCriteria {
+    private final String fullName;
+    private final String docType;
+    private final String docNumber;
+
+    public PersonFindCriteria(String fullName, String docType, String docNumber) {
+        this.fullName = fullName;
+        this.docType = docType;
+        this.docNumber = docNumber;
+    }
+}
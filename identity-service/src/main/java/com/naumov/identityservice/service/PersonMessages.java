@@ -0,0 +1,29 @@
+package com.naumov.identityservice.service;
+
+/**
+ * Errors of a created person returned by PersonService. The registry loader checks the same rules outside
+ * of the service and writes the same texts to its rejects. The texts are part of the API, the clients
+ * may match them, so they are kept as they were first returned.
+ */
+public final class PersonMessages {
+    public static final String CREATED_PERSON_ID_ERROR = "Created person cannot have an ID";
+    public static final String DOCUMENT_NULL_ERROR = "Person's identity document must not be null";
+    public static final String DOCUMENT_ID_ERROR =
+            "None of person's identityDocuments should nave an ID during person creation";
+    // reported by the check of exactly one primary identity document
+    public static final String PRIMARY_DOCUMENT_ERROR = "Person must have exactly one registration address";
+    public static final String DOCUMENT_EXISTS_ERROR =
+            "Person's identity document with type=%s and fullNumber=%s was requested for creation but already exists";
+    public static final String CONTACT_NULL_ERROR = "Person's contact must not be null";
+    public static final String CONTACT_ID_ERROR = "None of person's contacts should nave an ID during person creation";
+    public static final String CONTACT_EXISTS_ERROR =
+            "Person's contact with phoneNumber=%s was requested for creation but already exists";
+    public static final String ADDRESS_NULL_ERROR = "Person address must not be null";
+    public static final String ADDRESS_RECORD_ID_ERROR =
+            "None of person's addressRecords should nave an ID during person creation";
+    public static final String ADDRESS_ID_ERROR = "None of person's addresses should nave an ID during person creation";
+    public static final String REGISTRATION_ADDRESSES_ERROR = "Person cannot have multiple registration addresses";
+    public static final String ADDRESS_DUPLICATED_ERROR =
+            "Person's address with region=%s and address=%s is duplicated";
+    public static final String REGION_NOT_FOUND_ERROR = "Person's address contains non-existing region with name=%s";
+}
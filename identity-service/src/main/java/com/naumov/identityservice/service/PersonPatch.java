@@ -0,0 +1,43 @@
+package com.naumov.identityservice.service;
+
+import com.naumov.identityservice.model.Contact;
+import com.naumov.identityservice.model.IdentityDocument;
+import com.naumov.identityservice.model.PersonAddress;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+/**
+ * Partial update of a person: null fields and collections are left as they are, a non-null collection
+ * replaces the stored one entirely. The version is the one the client has read. The applied patch
+ * is returned with the new version and the stored items of the patched collections.
+ */
+@Getter
+public class PersonPatch {
+    private final Long version;
+    private final String name;
+    private final LocalDate dateOfBirth;
+    private final Boolean isHidden;
+    private final Set<PersonAddress> addressRecords;
+    private final Set<Contact> contacts;
+    private final Set<IdentityDocument> identityDocuments;
+
+    @Builder
+    public PersonPatch(Long version,
+                       String name,
+                       LocalDate dateOfBirth,
+                       Boolean isHidden,
+                       Set<PersonAddress> addressRecords,
+                       Set<Contact> contacts,
+                       Set<IdentityDocument> identityDocuments) {
+        this.version = version;
+        this.name = name;
+        this.dateOfBirth = dateOfBirth;
+        this.isHidden = isHidden;
+        this.addressRecords = addressRecords;
+        this.contacts = contacts;
+        this.identityDocuments = identityDocuments;
+    }
+}
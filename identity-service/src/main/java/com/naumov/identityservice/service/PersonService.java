@@ -1,20 +1,40 @@
 package com.naumov.identityservice.service;
 
 import com.naumov.identityservice.model.Person;
+import com.naumov.identityservice.repository.projection.PersonBulkView;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface PersonService {
     Person createPerson(Person person);
 
+    List<PersonCreateResult> createPeople(List<Person> people);
+
     Person getPerson(long personId);
 
-    List<Person> getPeople(String region, int pageNumber, int pageSize);
+    Person getLatestPerson(long personId);
+
+    String getPersonJson(long personId);
+
+    List<Person> getPeople(List<Long> peopleIds);
+
+    List<PersonBulkView> getPeople(String region, int pageNumber, int pageSize, boolean includeHidden);
+
+    List<PersonBulkView> getPeople(int pageNumber, int pageSize, boolean includeHidden);
 
-    List<Person> getPeople(int pageNumber, int pageSize);
+    List<PersonBulkView> getPeopleAfter(String region, long lastId, int pageSize, boolean includeHidden);
+
+    List<PersonBulkView> getPeopleAfter(long lastId, int pageSize, boolean includeHidden);
+
+    void exportPeople(String region, long fromId, long toId, boolean includeHidden, Consumer<PersonBulkView> consumer);
 
     Person updatePerson(Person person);
 
-    Optional<Long> findByNameAndDocument(String fullName, String docType, String docNumber);
+    PersonPatch patchPerson(long personId, PersonPatch patch);
+
+    Optional<Long> findByNameAndDocument(String fullName, String docType, String docNumber, boolean includeHidden);
+
+    List<Long> findByNameAndDocuments(List<PersonFindCriteria> criteria, boolean includeHidden);
 }
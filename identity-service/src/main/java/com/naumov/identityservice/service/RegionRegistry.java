@@ -0,0 +1,21 @@
+package com.naumov.identityservice.service;
+
+import com.naumov.identityservice.model.Region;
+
+import java.util.Optional;
+
+/**
+ * In-memory dictionary of regions. The regions table is static, so it is loaded once at startup
+ * and re-loaded only on {@link #refresh()}.
+ */
+public interface RegionRegistry {
+    /**
+     * Returns a reference to the region attached to the current persistence context without querying the DB.
+     * Only the id of the returned region can be accessed without initializing it.
+     */
+    Optional<Region> findByName(String name);
+
+    int size();
+
+    void refresh();
+}
@@ -0,0 +1,78 @@
+package com.naumov.identityservice.service.impl;
+
+import com.naumov.identityservice.model.*;
+import com.naumov.identityservice.repository.projection.AddressKeyView;
+import com.naumov.identityservice.repository.projection.IdentityDocumentKeyView;
+import com.naumov.identityservice.repository.projection.IdentityDocumentOwnerView;
+import com.naumov.identityservice.repository.projection.IdentityDocumentStateView;
+import com.naumov.identityservice.service.RegionRegistry;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * DB state that validation of a group of new people depends on: taken phone numbers and identity documents,
+ * existing addresses. Regions are taken from {@link RegionRegistry}. It is loaded at once with
+ * a constant number of IN-list queries (see {@link PersonServiceImpl}) and can be extended with the people
+ * accepted so far, so that duplicates within the same group are detected as well.
+ */
+final class ExistingRecords {
+    private final Set<String> phoneNumbers;
+    private final Set<DocumentKey> identityDocuments;
+    private final Map<AddressKey, Long> addressIdsByKey;
+
+    ExistingRecords(Set<String> phoneNumbers,
+                    Set<DocumentKey> identityDocuments,
+                    Map<AddressKey, Long> addressIdsByKey) {
+        this.phoneNumbers = phoneNumbers;
+        this.identityDocuments = identityDocuments;
+        this.addressIdsByKey = addressIdsByKey;
+    }
+
+    boolean isPhoneNumberTaken(String phoneNumber) {
+        return phoneNumbers.contains(phoneNumber);
+    }
+
+    boolean isIdentityDocumentTaken(IdentityDocument identityDocument) {
+        return identityDocuments.contains(DocumentKey.of(identityDocument));
+    }
+
+    Optional<Long> findAddressId(Region region, String address) {
+        return Optional.ofNullable(addressIdsByKey.get(new AddressKey(region.getId(), address)));
+    }
+
+    void addAddress(Address savedAddress) {
+        addressIdsByKey.put(new AddressKey(savedAddress.getRegion().getId(), savedAddress.getAddress()),
+                savedAddress.getId());
+    }
+
+    void addPerson(Person acceptedPerson) {
+        acceptedPerson.getContacts().forEach(contact -> phoneNumbers.add(contact.getPhoneNumber()));
+        acceptedPerson.getIdentityDocuments().forEach(doc -> identityDocuments.add(DocumentKey.of(doc)));
+    }
+
+    record DocumentKey(IdentityDocument.DocumentType type, String fullNumber) {
+        static DocumentKey of(IdentityDocument identityDocument) {
+            return new DocumentKey(identityDocument.getType(), identityDocument.getFullNumber());
+        }
+
+        static DocumentKey of(IdentityDocumentKeyView view) {
+            return new DocumentKey(view.getType(), view.getFullNumber());
+        }
+
+        static DocumentKey of(IdentityDocumentOwnerView view) {
+            return new DocumentKey(view.getType(), view.getFullNumber());
+        }
+
+        static DocumentKey of(IdentityDocumentStateView view) {
+            return new DocumentKey(view.getType(), view.getFullNumber());
+        }
+    }
+
+    record AddressKey(Long regionId, String address) {
+        static AddressKey of(AddressKeyView view) {
+            return new AddressKey(view.getRegionId(), view.getAddress());
+        }
+    }
+}
@@ -2,39 +2,61 @@ package com.naumov.identityservice.service.impl;
 
 import com.naumov.identityservice.exception.BadInputException;
 import com.naumov.identityservice.exception.ResourceNotFoundException;
+import com.naumov.identityservice.exception.VersionConflictException;
 import com.naumov.identityservice.model.*;
 import com.naumov.identityservice.repository.*;
+import com.naumov.identityservice.repository.projection.*;
+import com.naumov.identityservice.datasource.ReadOnlyRoutingDataSource;
+import com.naumov.identityservice.service.PersonCacheEvictions;
+import com.naumov.identityservice.service.PersonCreateResult;
+import com.naumov.identityservice.service.PersonFindCriteria;
+import com.naumov.identityservice.service.PersonPatch;
 import com.naumov.identityservice.service.PersonService;
+import com.naumov.identityservice.service.RegionRegistry;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.naumov.identityservice.service.PersonMessages.*;
 
 @Service
+@Timed("identity-service.person-service")
 public class PersonServiceImpl implements PersonService {
+    // keeps the IN-lists within a few query plans and far below the bind parameters limit
+    private static final int FIND_BATCH_CHUNK_SIZE = 1000;
+
     private final PersonRepository personRepository;
     private final AddressRepository addressRepository;
-    private final PersonAddressRepository personAddressRepository;
     private final ContactRepository contactRepository;
     private final IdentityDocumentRepository identityDocumentRepository;
-    private final RegionRepository regionRepository;
+    private final PersonAddressRepository personAddressRepository;
+    private final RegionRegistry regionRegistry;
+    private final PersonCacheEvictions personCacheEvictions;
 
     @Autowired
     public PersonServiceImpl(PersonRepository personRepository,
                              AddressRepository addressRepository,
-                             PersonAddressRepository personAddressRepository,
                              ContactRepository contactRepository,
                              IdentityDocumentRepository identityDocumentRepository,
-                             RegionRepository regionRepository) {
+                             PersonAddressRepository personAddressRepository,
+                             RegionRegistry regionRegistry,
+                             PersonCacheEvictions personCacheEvictions) {
         this.personRepository = personRepository;
         this.addressRepository = addressRepository;
-        this.personAddressRepository = personAddressRepository;
         this.contactRepository = contactRepository;
         this.identityDocumentRepository = identityDocumentRepository;
-        this.regionRepository = regionRepository;
+        this.personAddressRepository = personAddressRepository;
+        this.regionRegistry = regionRegistry;
+        this.personCacheEvictions = personCacheEvictions;
     }
 
     /*
@@ -42,52 +64,160 @@ public class PersonServiceImpl implements PersonService {
      * We cannot save everything cascadely since some addresses may already exist, and the request will end
      * up with unique constraint violation exception. Hence, we need to process addresses separately.
      *
-     * 1. Extract all addresses from transient person entity
-     *    -> list of transient Address entities
-     * 2. Validate the person has exactly one registration address
-     * 3. Load all existing Address entities, save all new address entities. While saving the Address,
+     * 1. Load everything the validation depends on (taken phone numbers and documents, existing addresses)
+     *    with a constant number of IN-list queries, regions are taken from RegionRegistry without queries
+     *    -> ExistingRecords
+     * 2. Validate the person has exactly one primary identity document and at most one registration address,
+     *    and none of its contacts and identity documents are taken
+     * 3. Attach all existing Address entities by reference, save all new address entities. While saving the Address,
      *    associated PersonAddress entities will not be updated, since we haven't saved the Person yet.
      *    -> list of saved Address entities
-     * 3. Re-create a list of PersonAddress entities from saved Address records, add them to Person ->
+     * 4. Re-create a list of PersonAddress entities from saved Address records, add them to Person ->
      *    -> transient Person ready to be saved
-     * 4. Save the Person entity. PersonAddress,Contact and IdentityDocument entities will be saved cascadely.
+     * 5. Save the Person entity. PersonAddress,Contact and IdentityDocument entities will be saved cascadely.
      *    Unique constraint violation exceptions (phone # and ID) may occur - the transaction will be rolled back.
      * */
     @Override
     @Transactional
     public Person createPerson(Person newPerson) {
         if (newPerson == null) throw new BadInputException("Created person cannot be null");
-        if (newPerson.getId() != null) throw new BadInputException("Created person cannot have an ID");
+        if (newPerson.getId() != null) throw new BadInputException(CREATED_PERSON_ID_ERROR);
 
-        validateIdentityDocuments(newPerson.getIdentityDocuments(), false);
-        validateContacts(newPerson.getContacts(), false);
-        validateAddressRecords(newPerson.getAddressRecords(), false);
-        saveOrLoadAddresses(newPerson, false);
+        ExistingRecords existingRecords = loadExistingRecords(List.of(newPerson));
+        validateIdentityDocuments(newPerson.getIdentityDocuments(), existingRecords);
+        validateContacts(newPerson.getContacts(), existingRecords);
+        validateNewAddressRecords(newPerson.getAddressRecords());
+        saveOrLoadAddresses(newPerson, existingRecords);
 
         // All associations except Address entities are saved here using cascade.
         return personRepository.save(newPerson);
     }
 
     /*
-     * Person update scenario:
-     * We cannot save everything cascadely since some addresses may already exist, and the request will end
-     * up with unique constraint violation exception. Hence, we need to process addresses separately.
+     * Bulk person creation scenario (one chunk of people per transaction):
+     * The same as the person creation scenario, but ExistingRecords are loaded once for the whole chunk.
      *
-     * 1. Find and load the person by ID, if not exists - respond with 404.
-     * 2. Extract all addresses from updatedPerson addressRecords
-     *    -> list of transient Address entities
-     * 3. Validate the updatedPerson has exactly one registration address
-     * 4. Find ids of Addresses that need to be deleted, remember them. Deletion cannot be done right away
-     *    since we still have references to them via FK from PeopleAddresses table.
-     * 5. Load all existing Address entities from updatedPerson, save all new address entities.
-     *    -> list of saved Address entities
-     * 6. Re-create a list of PersonAddress entities from saved Address records, add them to Person ->
-     *    -> updatedPerson is ready to be saved
-     * 6. Save the updatedPerson Person entity. PersonAddress,Contact and IdentityDocument
-     *    entities will be saved cascadely. Unique constraint violation exceptions (phone # and ID) may occur -
-     *    the transaction will be rolled back.
-     * 7. Since PersonAddress records with the addresses that had to be deleted has been deleted -
-     *    delete all Address records the were to be deleted.
+     * 1. Load ExistingRecords referenced by the whole chunk.
+     * 2. Validate people one by one against the loaded state and against the people accepted earlier
+     *    in the same chunk. An invalid person is rejected with the reason, the rest of the chunk proceeds.
+     * 3. Resolve addresses of all accepted people at once: existing addresses are attached by reference,
+     *    new addresses are saved with a single saveAll (one Address entity per distinct region and address).
+     * 4. Save all accepted people and flush, so that the INSERTs are grouped into JDBC batches.
+     *    Unique constraint violation exceptions (concurrent creation) roll back the whole chunk.
+     * */
+    @Override
+    @Transactional
+    public List<PersonCreateResult> createPeople(List<Person> newPeople) {
+        if (newPeople == null) throw new BadInputException("Created people cannot be null");
+
+        ExistingRecords existingRecords = loadExistingRecords(newPeople);
+
+        List<PersonCreateResult> results = new ArrayList<>(newPeople.size());
+        List<Person> acceptedPeople = new ArrayList<>();
+        for (Person newPerson : newPeople) {
+            try {
+                validateNewPersonInChunk(newPerson, existingRecords);
+            } catch (BadInputException e) {
+                results.add(PersonCreateResult.rejected(e.getMessage()));
+                continue;
+            }
+
+            existingRecords.addPerson(newPerson);
+            acceptedPeople.add(newPerson);
+            results.add(PersonCreateResult.created(newPerson));
+        }
+
+        if (acceptedPeople.isEmpty()) return results;
+
+        resolveAddresses(acceptedPeople, existingRecords);
+        personRepository.saveAll(acceptedPeople);
+        personRepository.flush();
+
+        return results;
+    }
+
+    private void validateNewPersonInChunk(Person newPerson, ExistingRecords existingRecords) {
+        if (newPerson == null) throw new BadInputException("Created person cannot be null");
+        if (newPerson.getId() != null) throw new BadInputException(CREATED_PERSON_ID_ERROR);
+
+        if (newPerson.getIdentityDocuments() != null && newPerson.getIdentityDocuments().contains(null))
+            throw new BadInputException(DOCUMENT_NULL_ERROR);
+        if (newPerson.getContacts() != null && newPerson.getContacts().contains(null))
+            throw new BadInputException(CONTACT_NULL_ERROR);
+        Set<PersonAddress> addressRecords = newPerson.getAddressRecords();
+        if (addressRecords != null && addressRecords.stream().anyMatch(ar -> ar == null || ar.getAddress() == null))
+            throw new BadInputException(ADDRESS_NULL_ERROR);
+
+        validateIdentityDocuments(newPerson.getIdentityDocuments(), existingRecords);
+        validateContacts(newPerson.getContacts(), existingRecords);
+        validateNewAddressRecords(addressRecords);
+
+        // addresses are resolved for the whole chunk later, so everything that can fail is checked here
+        Set<String> personAddresses = new HashSet<>();
+        for (PersonAddress addressRecord : addressRecords) {
+            Address address = addressRecord.getAddress();
+            if (address.getAddress() == null)
+                throw new BadInputException("Person address must contain address");
+
+            Region region = findRegion(address);
+            if (!personAddresses.add(region.getId() + "\n" + address.getAddress()))
+                throw new BadInputException(ADDRESS_DUPLICATED_ERROR.formatted(
+                        address.getRegion().getName(), address.getAddress()));
+        }
+    }
+
+    private void resolveAddresses(List<Person> people, ExistingRecords existingRecords) {
+        // one new Address entity per distinct region and address, shared by all the people of the chunk
+        Map<ExistingRecords.AddressKey, Address> newAddresses = new HashMap<>();
+        for (Person person : people) {
+            Set<PersonAddress> newAddressRecords = new LinkedHashSet<>();
+            Region registrationRegion = null;
+            for (PersonAddress addressRecord : person.getAddressRecords()) {
+                Address transientAddress = addressRecord.getAddress();
+                Region region = findRegion(transientAddress);
+                if (Boolean.TRUE.equals(addressRecord.getIsRegistration())) registrationRegion = region;
+                Address address = existingRecords.findAddressId(region, transientAddress.getAddress())
+                        .map(addressRepository::getReferenceById)
+                        .orElseGet(() -> newAddresses.computeIfAbsent(
+                                new ExistingRecords.AddressKey(region.getId(), transientAddress.getAddress()),
+                                key -> Address.builder()
+                                        .region(region)
+                                        .address(transientAddress.getAddress())
+                                        .build()));
+
+                newAddressRecords.add(PersonAddress.builder()
+                        .person(person)
+                        .address(address)
+                        .isRegistration(addressRecord.getIsRegistration())
+                        .build());
+            }
+
+            person.setAddressRecords(newAddressRecords);
+            person.setRegistrationRegion(registrationRegion);
+        }
+
+        addressRepository.saveAll(newAddresses.values());
+    }
+
+    /*
+     * Person update scenario (optimistic locking):
+     * The client sends the version it has read. The person aggregate is never loaded, the requested children
+     * are diffed against their stored state and only the differences are written.
+     *
+     * 1. Update the person row if the version matches, incrementing it. 0 updated rows mean the person
+     *    does not exist (404) or was updated since the client read it (409). The updated row stays locked
+     *    until the commit, so concurrent updates of the same person are serialized from here on.
+     * 2. For every collection, load its stored state with one projection query and, in one pass over
+     *    the requested items: children with an id must be stored for this person (404 otherwise) and are
+     *    updated only if changed, children without an id are new, stored children that are not requested
+     *    are deleted. Taken phone numbers and identity documents are checked only for the values the person
+     *    does not have yet.
+     * 3. Write deletes first, then updates, then inserts, so values can move between the children.
+     *    Addresses left without people are deleted.
+     * 4. The denormalized registration region of the person and of the other people registered at an address
+     *    whose region is changed is updated, only if it changes.
+     * 5. The cached responses of the person and of the other people at a changed address are evicted,
+     *    see PersonCacheEvictions.
      * */
     @Override
     @Transactional
@@ -95,268 +225,679 @@ public class PersonServiceImpl implements PersonService {
         if (updatedPerson == null) throw new BadInputException("Updated person cannot be null");
         Long personId = updatedPerson.getId();
         if (personId == null) throw new BadInputException("Updated person must have an id");
+        Long version = updatedPerson.getVersion();
+        if (version == null) throw new BadInputException("Updated person must have a version");
 
-        // loads the old addresses eagerly as well
-        Person originalPerson = personRepository.findById(personId).orElseThrow(() ->
-                new ResourceNotFoundException("Person with id=" + personId + " does not exist"));
+        int updatedRows = personRepository.updateIfVersionMatches(personId, version, updatedPerson.getName(),
+                updatedPerson.getDateOfBirth(), updatedPerson.getIsHidden());
+        checkVersionedUpdate(updatedRows, personId, version);
+        personCacheEvictions.evict(List.of(personId));
 
-        Set<Long> detachedAddressesIds = findDetachedAddressesIds(updatedPerson, originalPerson);
+        Person person = personRepository.getReferenceById(personId);
+        updateContacts(person, updatedPerson.getContacts());
+        updateIdentityDocuments(person, updatedPerson.getIdentityDocuments());
+        updatedPerson.setAddressRecords(updateAddressRecords(person, updatedPerson.getAddressRecords()));
+        updatedPerson.setVersion(version + 1);
 
-        validateIdentityDocuments(updatedPerson.getIdentityDocuments(), true);
-        validateContacts(updatedPerson.getContacts(), true);
-        validateAddressRecords(updatedPerson.getAddressRecords(), true);
-        saveOrLoadAddresses(updatedPerson, true);
+        return updatedPerson;
+    }
 
-        // All associations except Address entities are saved here using cascade.
-        Person person = personRepository.save(updatedPerson);
+    /*
+     * Person patch scenario:
+     * The same as the update, but only the patched fields of the person row are set and only the patched
+     * collections are loaded, validated and diffed. The untouched collections are not read at all,
+     * so a single-field patch costs the conditional update alone.
+     * */
+    @Override
+    @Transactional
+    public PersonPatch patchPerson(long personId, PersonPatch patch) {
+        if (patch == null) throw new BadInputException("Person patch cannot be null");
+        Long version = patch.getVersion();
+        if (version == null) throw new BadInputException("Patched person must have a version");
+
+        int updatedRows = personRepository.patchIfVersionMatches(personId, version, patch.getName(),
+                patch.getDateOfBirth(), patch.getIsHidden());
+        checkVersionedUpdate(updatedRows, personId, version);
+        personCacheEvictions.evict(List.of(personId));
+
+        Person person = personRepository.getReferenceById(personId);
+        if (patch.getContacts() != null) updateContacts(person, patch.getContacts());
+        if (patch.getIdentityDocuments() != null) updateIdentityDocuments(person, patch.getIdentityDocuments());
+        Set<PersonAddress> addressRecords = patch.getAddressRecords() != null
+                ? updateAddressRecords(person, patch.getAddressRecords())
+                : null;
+
+        return PersonPatch.builder()
+                .version(version + 1)
+                .name(patch.getName())
+                .dateOfBirth(patch.getDateOfBirth())
+                .isHidden(patch.getIsHidden())
+                .addressRecords(addressRecords)
+                .contacts(patch.getContacts())
+                .identityDocuments(patch.getIdentityDocuments())
+                .build();
+    }
+
+    private void checkVersionedUpdate(int updatedRows, long personId, long version) {
+        if (updatedRows != 0) return;
+
+        if (!personRepository.existsById(personId))
+            throw new ResourceNotFoundException("Person with id=" + personId + " does not exist");
+
+        throw new VersionConflictException("Person with id=" + personId + " was updated concurrently, " +
+                "version=" + version + " is outdated");
+    }
+
+    private void updateContacts(Person person, Collection<Contact> contacts) {
+        if (contacts == null) throw new BadInputException("Person's contacts cannot be null");
+        if (contacts.stream().anyMatch(Objects::isNull)) throw new BadInputException(CONTACT_NULL_ERROR);
+
+        Map<Long, ContactStateView> storedContacts = contactRepository.findStatesByOwnerId(person.getId()).stream()
+                .collect(Collectors.toMap(ContactStateView::getId, Function.identity()));
+
+        Set<String> requestedPhoneNumbers = new HashSet<>();
+        for (Contact contact : contacts) {
+            if (!requestedPhoneNumbers.add(contact.getPhoneNumber()))
+                throw new BadInputException(CONTACT_EXISTS_ERROR.formatted(contact.getPhoneNumber()));
+        }
+
+        storedContacts.values().forEach(contact -> requestedPhoneNumbers.remove(contact.getPhoneNumber()));
+        Set<String> takenPhoneNumbers = new HashSet<>(findAllIn(requestedPhoneNumbers,
+                contactRepository::findPhoneNumbersIn));
+
+        Map<Long, ContactStateView> removedContacts = new HashMap<>(storedContacts);
+        List<Contact> changedContacts = new ArrayList<>();
+        List<Contact> newContacts = new ArrayList<>();
+        for (Contact contact : contacts) {
+            if (takenPhoneNumbers.contains(contact.getPhoneNumber()))
+                throw new BadInputException(CONTACT_EXISTS_ERROR.formatted(contact.getPhoneNumber()));
+
+            contact.setOwner(person);
+            Long contactId = contact.getId();
+            if (contactId == null) {
+                newContacts.add(contact);
+                continue;
+            }
+
+            ContactStateView storedContact = removedContacts.remove(contactId);
+            if (storedContact == null)
+                throw new ResourceNotFoundException("Person's contact with id=" + contactId +
+                        " was requested for update but does not exist");
+
+            if (!Objects.equals(storedContact.getPhoneNumber(), contact.getPhoneNumber())) changedContacts.add(contact);
+        }
+
+        if (!removedContacts.keySet().isEmpty())
+            contactRepository.deleteContactsByIdIn(removedContacts.keySet());
+        changedContacts.forEach(contact ->
+                contactRepository.updatePhoneNumber(contact.getId(), contact.getPhoneNumber()));
+        contactRepository.saveAll(newContacts);
+    }
+
+    private void updateIdentityDocuments(Person person, Collection<IdentityDocument> identityDocuments) {
+        if (identityDocuments == null) throw new BadInputException("Person's identityDocuments cannot be null");
+        if (identityDocuments.stream().anyMatch(Objects::isNull))
+            throw new BadInputException(DOCUMENT_NULL_ERROR);
+
+        Map<Long, IdentityDocumentStateView> storedDocuments = identityDocumentRepository
+                .findStatesByOwnerId(person.getId()).stream()
+                .collect(Collectors.toMap(IdentityDocumentStateView::getId, Function.identity()));
+
+        validateExactlyOnePrimaryIdentityDocument(identityDocuments);
+
+        Set<ExistingRecords.DocumentKey> requestedDocuments = new HashSet<>();
+        for (IdentityDocument document : identityDocuments) {
+            if (!requestedDocuments.add(ExistingRecords.DocumentKey.of(document)))
+                throw new BadInputException(DOCUMENT_EXISTS_ERROR.formatted(
+                        document.getType(), document.getFullNumber()));
+        }
+
+        storedDocuments.values().forEach(document ->
+                requestedDocuments.remove(ExistingRecords.DocumentKey.of(document)));
+        Set<String> fullNumbers = requestedDocuments.stream()
+                .map(ExistingRecords.DocumentKey::fullNumber)
+                .collect(Collectors.toSet());
+        Set<ExistingRecords.DocumentKey> takenDocuments = findAllIn(fullNumbers,
+                identityDocumentRepository::findKeysByFullNumberIn).stream()
+                .map(ExistingRecords.DocumentKey::of)
+                .collect(Collectors.toSet());
+
+        Map<Long, IdentityDocumentStateView> removedDocuments = new HashMap<>(storedDocuments);
+        List<IdentityDocument> changedDocuments = new ArrayList<>();
+        List<IdentityDocument> newDocuments = new ArrayList<>();
+        for (IdentityDocument document : identityDocuments) {
+            if (requestedDocuments.contains(ExistingRecords.DocumentKey.of(document))
+                    && takenDocuments.contains(ExistingRecords.DocumentKey.of(document)))
+                throw new BadInputException(DOCUMENT_EXISTS_ERROR.formatted(
+                        document.getType(), document.getFullNumber()));
+
+            document.setOwner(person);
+            Long documentId = document.getId();
+            if (documentId == null) {
+                newDocuments.add(document);
+                continue;
+            }
+
+            IdentityDocumentStateView storedDocument = removedDocuments.remove(documentId);
+            if (storedDocument == null)
+                throw new ResourceNotFoundException("Person's identity document with id=" + documentId
+                        + " was requested for update but does not exist");
+
+            if (isChanged(storedDocument, document)) changedDocuments.add(document);
+        }
 
-        deleteAddressesByIdsIfUnused(detachedAddressesIds);
-        return person;
+        if (!removedDocuments.keySet().isEmpty())
+            identityDocumentRepository.deleteIdentityDocumentsByIdIn(removedDocuments.keySet());
+        changedDocuments.forEach(document -> identityDocumentRepository.updateIdentityDocument(document.getId(),
+                document.getType(), document.getFullNumber(), document.getIssueDate(), document.getIsPrimary()));
+        identityDocumentRepository.saveAll(newDocuments);
     }
 
-    private Set<Long> findDetachedAddressesIds(Person updatedPerson, Person originalPerson) {
-        Set<Long> newIds = extractAddressesIds(updatedPerson);
-        Set<Long> oldIds = extractAddressesIds(originalPerson);
-        oldIds.removeAll(newIds);
-        return oldIds;
+    // the state of the address is known, a reference would load it together with all its person records
+    private static Address detachedAddress(Long addressId, Region region, String address) {
+        return Address.builder()
+                .id(addressId)
+                .region(region)
+                .address(address)
+                .build();
     }
 
-    private Set<Long> extractAddressesIds(Person person) {
-        if (person == null || person.getAddressRecords() == null) return Collections.emptySet();
+    private static boolean isChanged(IdentityDocumentStateView storedDocument, IdentityDocument document) {
+        return storedDocument.getType() != document.getType()
+                || !Objects.equals(storedDocument.getFullNumber(), document.getFullNumber())
+                || !Objects.equals(storedDocument.getIssueDate(), document.getIssueDate())
+                || !Objects.equals(storedDocument.getIsPrimary(), document.getIsPrimary());
+    }
 
-        return person.getAddressRecords().stream()
+    /*
+     * Address records are matched by the address id. A requested address without an id is resolved
+     * by its region and address to an existing one, or created. A requested address with an id may belong
+     * to other people as well, its region and address are updated for all of them, as before.
+     */
+    private Set<PersonAddress> updateAddressRecords(Person person, Collection<PersonAddress> addressRecords) {
+        validateAddressRecords(addressRecords);
+        if (addressRecords.stream().anyMatch(ar -> ar == null || ar.getAddress() == null))
+            throw new BadInputException(ADDRESS_NULL_ERROR);
+
+        Map<Long, PersonAddressStateView> storedRecords = personAddressRepository
+                .findStatesByPersonId(person.getId()).stream()
+                .collect(Collectors.toMap(PersonAddressStateView::getAddressId, Function.identity()));
+        Set<Long> otherAddressIds = addressRecords.stream()
+                .map(ar -> ar.getAddress().getId())
+                .filter(id -> id != null && !storedRecords.containsKey(id))
+                .collect(Collectors.toSet());
+        Map<Long, ExistingRecords.AddressKey> otherAddresses = findAllIn(otherAddressIds,
+                addressRepository::findKeysByIdIn).stream()
+                .collect(Collectors.toMap(AddressKeyView::getId, ExistingRecords.AddressKey::of));
+        Set<String> newAddressLines = addressRecords.stream()
                 .map(PersonAddress::getAddress)
-                .filter(Objects::nonNull)
-                .map(Address::getId)
-                .filter(Objects::nonNull)
+                .filter(address -> address.getId() == null && address.getAddress() != null)
+                .map(Address::getAddress)
+                .collect(Collectors.toSet());
+        Map<ExistingRecords.AddressKey, Long> addressIdsByKey = findAllIn(newAddressLines,
+                addressRepository::findKeysByAddressIn).stream()
+                .collect(Collectors.toMap(ExistingRecords.AddressKey::of, AddressKeyView::getId));
+
+        Map<Long, PersonAddressStateView> removedRecords = new HashMap<>(storedRecords);
+        Map<ExistingRecords.AddressKey, Address> newAddresses = new HashMap<>();
+        List<Address> changedAddresses = new ArrayList<>();
+        List<PersonAddress> changedRecords = new ArrayList<>();
+        List<PersonAddress> newRecords = new ArrayList<>();
+        Set<PersonAddress> resultRecords = new LinkedHashSet<>();
+        Set<ExistingRecords.AddressKey> requestedKeys = new HashSet<>();
+        for (PersonAddress addressRecord : addressRecords) {
+            Address requestedAddress = addressRecord.getAddress();
+            if (requestedAddress.getAddress() == null)
+                throw new BadInputException("Person address must contain address");
+
+            Region region = findRegion(requestedAddress);
+            ExistingRecords.AddressKey requestedKey = new ExistingRecords.AddressKey(region.getId(),
+                    requestedAddress.getAddress());
+            if (!requestedKeys.add(requestedKey))
+                throw new BadInputException(ADDRESS_DUPLICATED_ERROR.formatted(
+                        region.getName(), requestedAddress.getAddress()));
+
+            Long addressId = requestedAddress.getId();
+            Address address;
+            if (addressId != null) {
+                PersonAddressStateView storedRecord = storedRecords.get(addressId);
+                ExistingRecords.AddressKey storedKey = storedRecord != null
+                        ? new ExistingRecords.AddressKey(storedRecord.getRegionId(), storedRecord.getAddress())
+                        : otherAddresses.get(addressId);
+                if (storedKey == null)
+                    throw new ResourceNotFoundException("Person's address with id=" + addressId
+                            + " was requested for association but does not exist");
+
+                address = detachedAddress(addressId, region, requestedAddress.getAddress());
+                if (!storedKey.equals(requestedKey)) changedAddresses.add(address);
+            } else {
+                addressId = addressIdsByKey.get(requestedKey);
+                address = addressId != null
+                        ? detachedAddress(addressId, region, requestedAddress.getAddress())
+                        : newAddresses.computeIfAbsent(requestedKey, key -> Address.builder()
+                        .region(region)
+                        .address(requestedAddress.getAddress())
+                        .build());
+            }
+
+            PersonAddressStateView storedRecord = addressId != null ? removedRecords.remove(addressId) : null;
+            PersonAddress resultRecord = PersonAddress.builder()
+                    .id(storedRecord != null ? storedRecord.getId() : null)
+                    .person(person)
+                    .address(address)
+                    .isRegistration(addressRecord.getIsRegistration())
+                    .build();
+            if (storedRecord == null) {
+                newRecords.add(resultRecord);
+            } else if (!Objects.equals(storedRecord.getIsRegistration(), resultRecord.getIsRegistration())) {
+                changedRecords.add(resultRecord);
+            }
+            resultRecords.add(resultRecord);
+        }
+
+        Set<Long> removedRecordIds = removedRecords.values().stream()
+                .map(PersonAddressStateView::getId)
                 .collect(Collectors.toSet());
+        if (!removedRecordIds.isEmpty()) personAddressRepository.deletePersonAddressesByIdIn(removedRecordIds);
+        deleteAddressesByIdsIfUnused(removedRecords.keySet());
+        changedAddresses.forEach(address -> addressRepository.updateRegionAndAddress(address.getId(),
+                address.getRegion(), address.getAddress()));
+        // a changed address is shown in the cached responses of all its people, not only the updated one
+        if (!changedAddresses.isEmpty()) personCacheEvictions.evict(personAddressRepository
+                .findPersonIdsByAddressIdIn(changedAddresses.stream().map(Address::getId).collect(Collectors.toSet())));
+        changedRecords.forEach(ar -> personAddressRepository.updateIsRegistration(ar.getId(), ar.getIsRegistration()));
+        addressRepository.saveAll(newAddresses.values());
+        personAddressRepository.saveAll(newRecords);
+        updateRegistrationRegions(person, storedRecords.values(), resultRecords, changedAddresses);
+
+        return resultRecords;
     }
 
-    private void validateIdentityDocuments(List<IdentityDocument> identityDocuments, boolean allowUpdate) {
+    /*
+     * Keeps Person.registrationRegion in sync with the registration addresses. A changed address region moves
+     * all the people registered at the address, then the person is moved if its registration region is not
+     * the stored one. Nothing is written when the registration region stays the same.
+     */
+    private void updateRegistrationRegions(Person person,
+                                           Collection<PersonAddressStateView> storedRecords,
+                                           Collection<PersonAddress> resultRecords,
+                                           Collection<Address> changedAddresses) {
+        changedAddresses.forEach(address -> personRepository.updateRegistrationRegionByAddressId(address.getId(),
+                address.getRegion()));
+
+        Long storedRegionId = storedRecords.stream()
+                .filter(record -> Boolean.TRUE.equals(record.getIsRegistration()))
+                .map(PersonAddressStateView::getRegionId)
+                .findFirst()
+                .orElse(null);
+        Region registrationRegion = resultRecords.stream()
+                .filter(record -> Boolean.TRUE.equals(record.getIsRegistration()))
+                .map(record -> record.getAddress().getRegion())
+                .findFirst()
+                .orElse(null);
+        Long registrationRegionId = registrationRegion != null ? registrationRegion.getId() : null;
+        if (!Objects.equals(storedRegionId, registrationRegionId))
+            personRepository.updateRegistrationRegion(person.getId(), registrationRegion);
+    }
+
+    /*
+     * Loads the state for validation of the given people with at most three queries,
+     * each query is skipped if there is nothing to look for.
+     */
+    private ExistingRecords loadExistingRecords(List<Person> people) {
+        Set<String> addressLines = collectValues(people, Person::getAddressRecords, ar ->
+                ar.getAddress() != null ? ar.getAddress().getAddress() : null);
+        Set<String> phoneNumbers = collectValues(people, Person::getContacts, Contact::getPhoneNumber);
+        Set<String> documentNumbers = collectValues(people, Person::getIdentityDocuments, IdentityDocument::getFullNumber);
+
+        return new ExistingRecords(
+                new HashSet<>(findAllIn(phoneNumbers, contactRepository::findPhoneNumbersIn)),
+                findAllIn(documentNumbers, identityDocumentRepository::findKeysByFullNumberIn).stream()
+                        .map(ExistingRecords.DocumentKey::of)
+                        .collect(Collectors.toCollection(HashSet::new)),
+                findAllIn(addressLines, addressRepository::findKeysByAddressIn).stream()
+                        .collect(Collectors.toMap(ExistingRecords.AddressKey::of, AddressKeyView::getId))
+        );
+    }
+
+    private void validateIdentityDocuments(Collection<IdentityDocument> identityDocuments, ExistingRecords existingRecords) {
         if (identityDocuments == null) throw new BadInputException("Person's identityDocuments cannot be null");
 
-        if (!allowUpdate) {
-            boolean anyIdExists = identityDocuments.stream().anyMatch(doc -> doc.getId() != null);
-            if (anyIdExists)
-                throw new BadInputException("None of person's identityDocuments should nave an ID " +
-                        "during person creation");
-        }
+        boolean anyIdExists = identityDocuments.stream().anyMatch(doc -> doc.getId() != null);
+        if (anyIdExists)
+            throw new BadInputException(DOCUMENT_ID_ERROR);
 
         validateExactlyOnePrimaryIdentityDocument(identityDocuments);
 
+        // a document repeated within the person is reported the same way as an already existing one
+        Set<ExistingRecords.DocumentKey> newDocuments = new HashSet<>();
         for (IdentityDocument id : identityDocuments) {
-            Long identityDocumentId = id.getId();
-            if (identityDocumentId != null) {
-                if (!allowUpdate) throw new BadInputException("Person's identity document with type=" +
-                        id.getType() + " and fullNumber=" + id.getFullNumber() +
-                        " was requested for creation but contains non-null id (id=" + identityDocumentId + ")");
-
-                if (!identityDocumentRepository.existsById(identityDocumentId)) {
-                    throw new ResourceNotFoundException("Person's identity document with id=" + identityDocumentId
-                            + " was requested for update but does not exist");
-                }
-            } else if (identityDocumentRepository.existsByTypeAndFullNumber(id.getType(), id.getFullNumber())) {
-                throw new BadInputException("Person's identity document with type=" + id.getType()
-                        + " and fullNumber=" + id.getFullNumber() + " was requested for creation but already exists");
+            if (existingRecords.isIdentityDocumentTaken(id) || !newDocuments.add(ExistingRecords.DocumentKey.of(id))) {
+                throw new BadInputException(DOCUMENT_EXISTS_ERROR.formatted(id.getType(), id.getFullNumber()));
             }
         }
     }
 
-    private void validateExactlyOnePrimaryIdentityDocument(List<IdentityDocument> identityDocuments) {
+    private void validateExactlyOnePrimaryIdentityDocument(Collection<IdentityDocument> identityDocuments) {
         long count = identityDocuments.stream()
                 .filter(IdentityDocument::getIsPrimary)
                 .count();
 
         if (count != 1) {
-            throw new BadInputException("Person must have exactly one registration address");
+            throw new BadInputException(PRIMARY_DOCUMENT_ERROR);
         }
     }
 
-    private void validateContacts(List<Contact> contacts, boolean allowUpdate) {
+    private void validateContacts(Collection<Contact> contacts, ExistingRecords existingRecords) {
         if (contacts == null) throw new BadInputException("Person's contacts cannot be null");
 
-        if (!allowUpdate) {
-            boolean anyIdExists = contacts.stream().anyMatch(contact -> contact.getId() != null);
-            if (anyIdExists) throw new BadInputException("None of person's contacts should nave an ID " +
-                    "during person creation");
-        }
+        boolean anyIdExists = contacts.stream().anyMatch(contact -> contact.getId() != null);
+        if (anyIdExists) throw new BadInputException(CONTACT_ID_ERROR);
 
+        // a phone number repeated within the person is reported the same way as an already existing one
+        Set<String> newPhoneNumbers = new HashSet<>();
         for (Contact contact : contacts) {
-            Long contactId = contact.getId();
             String phoneNumber = contact.getPhoneNumber();
-            if (contactId != null) {
-                if (!allowUpdate) throw new BadInputException("Person's contact with phoneNumber=" +
-                        phoneNumber + " was requested for creation but contains non-null id (id=" + contact + ")");
-
-                if (!contactRepository.existsById(contactId)) {
-                    throw new ResourceNotFoundException("Person's contact with id=" + contactId +
-                            " was requested for update but does not exists");
-                }
-            } else if (contactRepository.existsByPhoneNumber(phoneNumber)) {
-                throw new BadInputException("Person's contact with phoneNumber=" + phoneNumber
-                        + " was requested for creation but already exists");
+            if (existingRecords.isPhoneNumberTaken(phoneNumber) || !newPhoneNumbers.add(phoneNumber)) {
+                throw new BadInputException(CONTACT_EXISTS_ERROR.formatted(phoneNumber));
             }
         }
     }
 
-    private void validateAddressRecords(List<PersonAddress> addressRecords, boolean allowUpdate) {
+    private void validateAddressRecords(Collection<PersonAddress> addressRecords) {
         if (addressRecords == null) throw new BadInputException("Person's addressRecords cannot be null");
 
-        if (!allowUpdate) {
-            boolean anyAddressRecordIdExists = addressRecords.stream().anyMatch(contact -> contact.getId() != null);
-            if (anyAddressRecordIdExists) throw new BadInputException("None of person's addressRecords " +
-                    "should nave an ID during person creation");
-
-            boolean anyAddressIdExists = addressRecords.stream()
-                    .map(PersonAddress::getAddress)
-                    .anyMatch(contact -> contact.getId() != null);
-            if (anyAddressIdExists) throw new BadInputException("None of person's addresses " +
-                    "should nave an ID during person creation");
-        }
-
         long count = addressRecords.stream()
-                .filter(PersonAddress::getIsRegistration)
+                .filter(ar -> ar != null && Boolean.TRUE.equals(ar.getIsRegistration()))
                 .count();
 
         if (count > 1) {
-            throw new BadInputException("Person cannot have multiple registration addresses");
+            throw new BadInputException(REGISTRATION_ADDRESSES_ERROR);
         }
     }
 
-    private void saveOrLoadAddresses(Person person, boolean allowUpdate) {
-        List<PersonAddress> addressRecords = person.getAddressRecords();
+    private void validateNewAddressRecords(Collection<PersonAddress> addressRecords) {
+        if (addressRecords == null) throw new BadInputException("Person's addressRecords cannot be null");
+
+        boolean anyAddressRecordIdExists = addressRecords.stream().anyMatch(ar -> ar != null && ar.getId() != null);
+        if (anyAddressRecordIdExists) throw new BadInputException(ADDRESS_RECORD_ID_ERROR);
+
+        boolean anyAddressIdExists = addressRecords.stream()
+                .filter(Objects::nonNull)
+                .map(PersonAddress::getAddress)
+                .anyMatch(address -> address != null && address.getId() != null);
+        if (anyAddressIdExists) throw new BadInputException(ADDRESS_ID_ERROR);
+
+        validateAddressRecords(addressRecords);
+    }
+
+    private void saveOrLoadAddresses(Person person, ExistingRecords existingRecords) {
+        Set<PersonAddress> addressRecords = person.getAddressRecords();
         if (addressRecords == null) return;
 
-        List<PersonAddress> newAddressRecords = new ArrayList<>();
+        Set<PersonAddress> newAddressRecords = new LinkedHashSet<>();
+        Region registrationRegion = null;
         for (PersonAddress addressRecord : addressRecords) {
-            Address savedAddress = saveOrLoadAddress(addressRecord.getAddress(), allowUpdate);
-            PersonAddress newAddressRecord = PersonAddress.builder()
-                    .id(addressRecord.getId())
+            Address savedAddress = saveOrLoadAddress(addressRecord.getAddress(), existingRecords);
+            newAddressRecords.add(PersonAddress.builder()
                     .person(person)
                     .address(savedAddress)
                     .isRegistration(addressRecord.getIsRegistration())
-                    .build();
-
-            if (allowUpdate) {
-                Optional<PersonAddress> savedAddressRecord = findRelatedSavedAddressRecord(person.getId(), savedAddress.getId());
-                if (savedAddressRecord.isPresent()) newAddressRecord = savedAddressRecord.get();
-            }
-
-            newAddressRecords.add(newAddressRecord);
+                    .build());
+            // the region of the requested address is resolved by saveOrLoadAddress, a loaded address is a reference
+            if (Boolean.TRUE.equals(addressRecord.getIsRegistration()))
+                registrationRegion = addressRecord.getAddress().getRegion();
         }
 
         person.setAddressRecords(newAddressRecords);
+        person.setRegistrationRegion(registrationRegion);
     }
 
-    private Address saveOrLoadAddress(Address transientAddress, boolean allowUpdate) {
+    private Address saveOrLoadAddress(Address transientAddress, ExistingRecords existingRecords) {
         if (transientAddress == null)
-            throw new BadInputException("Person address must not be null");
+            throw new BadInputException(ADDRESS_NULL_ERROR);
         if (transientAddress.getAddress() == null)
             throw new BadInputException("Person address must contain address");
 
-        loadAndSetRegion(transientAddress);
-
-        Long addressId = transientAddress.getId();
-        if (addressId != null) {
-            if (!allowUpdate) throw new BadInputException("Person's address was requested for creation " +
-                    "but contains non-null id (id=" + addressId + ")");
+        transientAddress.setRegion(findRegion(transientAddress));
 
-            Optional<Address> foundAddress = addressRepository.findById(addressId);
-            if (foundAddress.isEmpty()) {
-                throw new ResourceNotFoundException("Person's address with id=" + addressId
-                        + " was requested for association but does not exist");
-            } else {
-                return addressRepository.save(transientAddress);
-            }
-        }
+        // existing addresses are attached as references, so their person records are never loaded
+        Optional<Long> existingAddressId = existingRecords.findAddressId(transientAddress.getRegion(),
+                transientAddress.getAddress());
+        if (existingAddressId.isPresent()) return addressRepository.getReferenceById(existingAddressId.get());
 
-        return addressRepository.findByRegionNameAndAddress(
-                transientAddress.getRegion().getName(),
-                transientAddress.getAddress()
-        ).orElseGet(() -> addressRepository.save(transientAddress));
+        Address savedAddress = addressRepository.save(transientAddress);
+        existingRecords.addAddress(savedAddress);
+        return savedAddress;
     }
 
-    private void loadAndSetRegion(Address transientAddress) {
+    private Region findRegion(Address transientAddress) {
         if (transientAddress.getRegion() == null || transientAddress.getRegion().getName() == null)
             throw new BadInputException("Person address must contain region with name");
 
         String regionName = transientAddress.getRegion().getName();
-        Region region = regionRepository.findByName(regionName).orElseThrow(() ->
-                new BadInputException("Person's address contains non-existing region with name=" + regionName));
-        transientAddress.setRegion(region);
-    }
-
-    private Optional<PersonAddress> findRelatedSavedAddressRecord(Long personId, Long addressId) {
-        Objects.requireNonNull(personId, "Person id must not be null for PersonAddress search");
-        Objects.requireNonNull(addressId, "Address id must not be null for PersonAddress search");
-
-        return personAddressRepository.findByPersonIdAndAddressId(personId, addressId);
+        return regionRegistry.findByName(regionName).orElseThrow(() ->
+                new BadInputException(REGION_NOT_FOUND_ERROR.formatted(regionName)));
     }
 
     private void deleteAddressesByIdsIfUnused(Set<Long> addressesIds) {
+        if (addressesIds.isEmpty()) return; // "IN ()" is a syntax error in PostgreSQL
+
         addressRepository.deleteAddressesByIdInAndPersonRecordsIsEmpty(addressesIds);
     }
 
     /*
-     * Method getPerson fetches the person with all associations in three steps
-     * in order to avoid MultipleBagFetchException. All entity fields merges
-     * happen under the hood in the persistence context.
+     * Method getPerson fetches the person with all associations by one query,
+     * see Person.WITH_ALL_ASSOCIATIONS.
      */
     @Override
     @Transactional(readOnly = true)
     public Person getPerson(final long personId) {
-        Optional<Person> foundPerson = personRepository.findById(personId)
-                .flatMap(op -> personRepository.findByIdFetchContacts(personId))
-                .flatMap(op -> personRepository.findByIdFetchIdentityDocuments(personId));
+        return personRepository.findByIdWithAllAssociations(personId).orElseThrow(() ->
+                new ResourceNotFoundException("Person with id=" + personId + " does not exist"));
+    }
 
-        return foundPerson.orElseThrow(() ->
+    /*
+     * Method getLatestPerson is getPerson that sees the committed writes: its read-only transaction is kept
+     * on the primary, a replica may not have replayed them yet.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Person getLatestPerson(final long personId) {
+        return ReadOnlyRoutingDataSource.onPrimary(() -> getPerson(personId));
+    }
+
+    /*
+     * Method getPersonJson returns the GET /people/{id} response built by the database in one statement,
+     * no entity is loaded. PostgreSQL only.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public String getPersonJson(final long personId) {
+        return personRepository.findPersonJsonById(personId).orElseThrow(() ->
                 new ResourceNotFoundException("Person with id=" + personId + " does not exist"));
     }
 
     /*
-     * Methods getPeople(String, int, int) and getPeople(int, int) fetch the people with
-     * all associations in four steps in order to avoid pagination in memory and cross joins.
-     * All entities fields merges happen under the hood in the persistence context.
+     * Method getPeople(List) fetches the people with all associations by one query regardless of
+     * the number of ids. The people are returned in the order of the first occurrence of their ids,
+     * the ids of non-existing people are skipped.
      */
     @Override
     @Transactional(readOnly = true)
-    public List<Person> getPeople(String regionName, int pageNumber, int pageSize) {
-        List<Long> pagePeopleIds = personRepository.findAllIdsByRegistrationRegion(regionName,
-                Pageable.ofSize(pageSize).withPage(pageNumber));
+    public List<Person> getPeople(List<Long> peopleIds) {
+        if (peopleIds == null) throw new BadInputException("People ids cannot be null");
+        Set<Long> distinctIds = new LinkedHashSet<>(peopleIds);
+        distinctIds.remove(null);
+        if (distinctIds.isEmpty()) return Collections.emptyList();
+
+        Map<Long, Person> foundPeople = personRepository.findAllByIdsWithAllAssociations(distinctIds).stream()
+                .collect(Collectors.toMap(Person::getId, Function.identity()));
 
-        return fetchPeopleByIds(pagePeopleIds);
+        return distinctIds.stream()
+                .map(foundPeople::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    /*
+     * Methods getPeople(String, int, int, boolean) and getPeople(int, int, boolean) fetch a page of people
+     * as flat rows with one query. Only the columns of the bulk response are selected, no entities are loaded.
+     * Hidden people are excluded by the query itself unless includeHidden is set, so the pages stay full.
+     * The region is resolved by RegionRegistry, no people are registered in an unknown region.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<PersonBulkView> getPeople(String regionName, int pageNumber, int pageSize, boolean includeHidden) {
+        return regionRegistry.findByName(regionName)
+                .map(region -> queryPeople(includeHidden, () -> personRepository.findAllBulkViewsByRegistrationRegion(
+                        region, Pageable.ofSize(pageSize).withPage(pageNumber))))
+                .orElseGet(Collections::emptyList);
     }
 
     @Override
     @Transactional(readOnly = true)
-    public List<Person> getPeople(int pageNumber, int pageSize) {
-        List<Long> pagePeopleIds = personRepository.findAllIds(
-                Pageable.ofSize(pageSize).withPage(pageNumber));
+    public List<PersonBulkView> getPeople(int pageNumber, int pageSize, boolean includeHidden) {
+        return queryPeople(includeHidden, () ->
+                personRepository.findAllBulkViews(Pageable.ofSize(pageSize).withPage(pageNumber)));
+    }
 
-        return fetchPeopleByIds(pagePeopleIds);
+    /*
+     * Methods getPeopleAfter(String, long, int, boolean) and getPeopleAfter(long, int, boolean) do the same
+     * as getPeople, but seek the page by the last id of the previous page, so the page cost does not depend
+     * on its depth.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<PersonBulkView> getPeopleAfter(String regionName, long lastId, int pageSize, boolean includeHidden) {
+        return regionRegistry.findByName(regionName)
+                .map(region -> queryPeople(includeHidden, () -> personRepository
+                        .findAllBulkViewsByRegistrationRegionAfter(region, lastId, Pageable.ofSize(pageSize))))
+                .orElseGet(Collections::emptyList);
     }
 
-    private List<Person> fetchPeopleByIds(List<Long> peopleIds) {
-        if (peopleIds.isEmpty()) return Collections.emptyList();
+    @Override
+    @Transactional(readOnly = true)
+    public List<PersonBulkView> getPeopleAfter(long lastId, int pageSize, boolean includeHidden) {
+        return queryPeople(includeHidden, () ->
+                personRepository.findAllBulkViewsAfter(lastId, Pageable.ofSize(pageSize)));
+    }
 
-        // all associations are merged in persistence context with three queries
-        List<Person> peoplePage = personRepository.findAllByIdsFetchAddressRecords(peopleIds);
-        personRepository.findAllByIdsFetchContacts(peopleIds);
-        personRepository.findAllByIdsFetchIdentityDocuments(peopleIds);
+    /*
+     * Streams the people with ids in [fromId, toId] ordered by id to the consumer as the rows arrive from
+     * the DB cursor, the transaction is kept open until the last row is consumed.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void exportPeople(String regionName,
+                             long fromId,
+                             long toId,
+                             boolean includeHidden,
+                             Consumer<PersonBulkView> consumer) {
+        if (fromId > toId) throw new BadInputException("Export id range start must not be greater than its end");
+
+        Region region = null;
+        if (regionName != null) {
+            Optional<Region> optionalRegion = regionRegistry.findByName(regionName);
+            if (optionalRegion.isEmpty()) return;
+            region = optionalRegion.get();
+        }
 
-        return peoplePage;
+        Region registrationRegion = region;
+        try (Stream<PersonBulkView> people = queryPeople(includeHidden, () -> registrationRegion != null
+                ? personRepository.streamAllForExportByRegistrationRegion(registrationRegion, fromId, toId)
+                : personRepository.streamAllForExport(fromId, toId))) {
+            people.forEach(consumer);
+        }
     }
 
     @Override
     @Transactional(readOnly = true)
-    public Optional<Long> findByNameAndDocument(String fullName, String docType, String docNumber) {
-        IdentityDocument.DocumentType documentType;
+    public Optional<Long> findByNameAndDocument(String fullName,
+                                                String docType,
+                                                String docNumber,
+                                                boolean includeHidden) {
+        IdentityDocument.DocumentType documentType = parseDocumentType(docType);
+
+        return queryPeople(includeHidden, () ->
+                personRepository.findByNameAndDocument(fullName, documentType, docNumber));
+    }
+
+    /*
+     * Documents are unique by type and full number, so all the owners are loaded by document numbers
+     * with one IN-list query per FIND_BATCH_CHUNK_SIZE criteria and matched with the criteria in memory.
+     * The result contains the found person id or null for every criteria in the same order.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<Long> findByNameAndDocuments(List<PersonFindCriteria> criteria, boolean includeHidden) {
+        if (criteria == null) throw new BadInputException("Find criteria cannot be null");
+
+        List<ExistingRecords.DocumentKey> documentKeys = criteria.stream()
+                .map(c -> new ExistingRecords.DocumentKey(parseDocumentType(c.getDocType()), c.getDocNumber()))
+                .collect(Collectors.toList());
+
+        List<String> fullNumbers = documentKeys.stream()
+                .map(ExistingRecords.DocumentKey::fullNumber)
+                .distinct()
+                .collect(Collectors.toList());
+
+        Map<ExistingRecords.DocumentKey, IdentityDocumentOwnerView> owners = new HashMap<>();
+        for (int i = 0; i < fullNumbers.size(); i += FIND_BATCH_CHUNK_SIZE) {
+            List<String> chunk = fullNumbers.subList(i, Math.min(i + FIND_BATCH_CHUNK_SIZE, fullNumbers.size()));
+            queryPeople(includeHidden, () -> identityDocumentRepository.findOwnersByFullNumberIn(chunk))
+                    .forEach(owner -> owners.put(ExistingRecords.DocumentKey.of(owner), owner));
+        }
+
+        List<Long> peopleIds = new ArrayList<>(criteria.size());
+        for (int i = 0; i < criteria.size(); i++) {
+            IdentityDocumentOwnerView owner = owners.get(documentKeys.get(i));
+            boolean found = owner != null && owner.getOwnerName().equals(criteria.get(i).getFullName());
+            peopleIds.add(found ? owner.getOwnerId() : null);
+        }
+
+        return peopleIds;
+    }
+
+    /*
+     * Runs the query with hidden people excluded unless includeHidden is set. The filter only changes
+     * the SQL of the queries created while it is enabled, so a returned stream may be read after it is disabled.
+     * It is disabled right away since the session may be shared with the calling transaction.
+     */
+    private <T> T queryPeople(boolean includeHidden, Supplier<T> query) {
+        if (includeHidden) return query.get();
+
+        personRepository.enableVisibleOnlyFilter();
         try {
-            documentType = IdentityDocument.DocumentType.valueOf(docType);
+            return query.get();
+        } finally {
+            personRepository.disableVisibleOnlyFilter();
+        }
+    }
+
+    private IdentityDocument.DocumentType parseDocumentType(String docType) {
+        try {
+            return IdentityDocument.DocumentType.valueOf(docType);
         } catch (Exception e) {
             throw new BadInputException("Document type \"" + docType + "\" does not exist");
         }
+    }
+
+    private static <T, V> Set<V> collectValues(List<Person> people,
+                                               Function<Person, ? extends Collection<T>> itemsExtractor,
+                                               Function<T, V> valueExtractor) {
+        return people.stream()
+                .filter(Objects::nonNull)
+                .map(itemsExtractor)
+                .filter(Objects::nonNull)
+                .flatMap(Collection::stream)
+                .filter(Objects::nonNull)
+                .map(valueExtractor)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+    }
 
-        return personRepository.findByNameAndDocument(fullName, documentType, docNumber);
+    private static <V, R> List<R> findAllIn(Set<V> values, Function<Set<V>, List<R>> query) {
+        return values.isEmpty() ? Collections.emptyList() : query.apply(values);
     }
 }
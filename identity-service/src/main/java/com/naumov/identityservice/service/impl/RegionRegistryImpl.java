@@ -0,0 +1,77 @@
+package com.naumov.identityservice.service.impl;
+
+import com.naumov.identityservice.model.Region;
+import com.naumov.identityservice.repository.RegionRepository;
+import com.naumov.identityservice.service.RegionRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+public class RegionRegistryImpl implements RegionRegistry {
+    private static final Logger LOGGER = LogManager.getLogger(RegionRegistryImpl.class);
+    private static final String LOOKUPS_METER = "identity-service.region-registry.lookups";
+
+    private final RegionRepository regionRepository;
+    private final Counter hits;
+    private final Counter misses;
+    // detached regions, replaced as a whole on refresh
+    private volatile Map<String, Region> regionsByName = Map.of();
+
+    @Autowired
+    public RegionRegistryImpl(RegionRepository regionRepository, MeterRegistry meterRegistry) {
+        this.regionRepository = regionRepository;
+        this.hits = Counter.builder(LOOKUPS_METER)
+                .tag("result", "hit")
+                .description("Region lookups by name that found a region")
+                .register(meterRegistry);
+        this.misses = Counter.builder(LOOKUPS_METER)
+                .tag("result", "miss")
+                .description("Region lookups by name that found no region")
+                .register(meterRegistry);
+        Gauge.builder("identity-service.region-registry.size", this, RegionRegistry::size)
+                .description("Number of regions loaded into the registry")
+                .register(meterRegistry);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Optional<Region> findByName(String name) {
+        Region region = regionsByName.get(name);
+        if (region == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+
+        hits.increment();
+        return Optional.of(regionRepository.getReferenceById(region.getId()));
+    }
+
+    @Override
+    public int size() {
+        return regionsByName.size();
+    }
+
+    @Override
+    @EventListener(ContextRefreshedEvent.class)
+    @Transactional(readOnly = true)
+    public void refresh() {
+        regionsByName = regionRepository.findAll().stream()
+                .collect(Collectors.toUnmodifiableMap(Region::getName, Function.identity()));
+
+        LOGGER.info("Loaded {} regions into the registry", regionsByName.size());
+    }
+}
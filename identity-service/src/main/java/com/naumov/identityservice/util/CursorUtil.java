@@ -0,0 +1,32 @@
+package com.naumov.identityservice.util;
+
+import com.naumov.identityservice.exception.BadInputException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque page cursors for keyset pagination. A cursor is the id of the last returned entity,
+ * encoded so that clients do not rely on its format.
+ */
+public final class CursorUtil {
+    private static final String PREFIX = "id:";
+
+    public static String encodeCursor(long lastId) {
+        byte[] bytes = (PREFIX + lastId).getBytes(StandardCharsets.UTF_8);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    public static long decodeCursor(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!decoded.startsWith(PREFIX)) throw new IllegalArgumentException("Unknown cursor format");
+
+            long lastId = Long.parseLong(decoded.substring(PREFIX.length()));
+            if (lastId < 0) throw new IllegalArgumentException("Negative cursor id");
+            return lastId;
+        } catch (IllegalArgumentException e) {
+            throw new BadInputException("Cursor \"" + cursor + "\" is invalid");
+        }
+    }
+}
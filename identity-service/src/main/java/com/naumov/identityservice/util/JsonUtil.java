@@ -1,6 +1,8 @@
 package com.naumov.identityservice.util;
 
 import com.naumov.identityservice.model.IdentifiableEntity;
+import org.hibernate.Hibernate;
+import org.hibernate.proxy.HibernateProxy;
 
 import java.time.LocalDate;
 
@@ -17,9 +19,21 @@ public final class JsonUtil {
                 : null;
     }
 
+    // the id of a lazy reference is taken from its proxy without loading it
     public static Long extractId(IdentifiableEntity entity) {
+        if (entity instanceof HibernateProxy proxy) {
+            return (Long) proxy.getHibernateLazyInitializer().getIdentifier();
+        }
+
         return entity != null
                 ? entity.getId()
                 : null;
     }
+
+    // a lazy association that is not loaded is not loaded by toString, it may be detached already
+    public static String convertLazy(Object association) {
+        return Hibernate.isInitialized(association)
+                ? String.valueOf(association)
+                : "\"<not loaded>\"";
+    }
 }
@@ -5,10 +5,10 @@ import org.springframework.stereotype.Component;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
+import java.util.LinkedHashSet;
 import java.util.Objects;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -23,13 +23,14 @@ public final class EntityTestUtil {
     public static final class SimplePersonBuilder {
         private final Region addressRegion;
         private Long id = null;
+        private Long version = null;
         private Long contactId = null;
         private Long identityDocumentId = null;
         private Long addressRecordId = null;
         private Long addressId = null;
         private String name = "Name";
         private LocalDate dateOfBirth = LocalDate.EPOCH;
-        private Boolean isHidden = true;
+        private Boolean isHidden = false;
         private String phoneNumber = "+71234567890";
         private IdentityDocument.DocumentType documentType = IdentityDocument.DocumentType.INNER_PASSPORT;
         private String documentFullNumber = "12345";
@@ -47,6 +48,11 @@ public final class EntityTestUtil {
             return this;
         }
 
+        public SimplePersonBuilder version(Long version) {
+            this.version = version;
+            return this;
+        }
+
         public SimplePersonBuilder contactId(Long contactId) {
             this.contactId = contactId;
             return this;
@@ -120,6 +126,7 @@ public final class EntityTestUtil {
         public Person build() {
             Person person = Person.builder()
                     .id(id)
+                    .version(version)
                     .name(name)
                     .dateOfBirth(dateOfBirth)
                     .isHidden(isHidden)
@@ -156,9 +163,9 @@ public final class EntityTestUtil {
                 .owner(person)
                 .build();
 
-        List<Contact> contacts = person.getContacts() != null
+        Set<Contact> contacts = person.getContacts() != null
                 ? person.getContacts()
-                : new ArrayList<>();
+                : new LinkedHashSet<>();
 
         contacts.add(contact);
         person.setContacts(contacts);
@@ -187,13 +194,13 @@ public final class EntityTestUtil {
                 .isRegistration(isRegistration)
                 .build();
 
-        List<PersonAddress> personRecords = new ArrayList<>();
+        Set<PersonAddress> personRecords = new LinkedHashSet<>();
         personRecords.add(personAddress);
         address.setPersonRecords(personRecords);
 
-        List<PersonAddress> personAddresses = person.getAddressRecords() != null
+        Set<PersonAddress> personAddresses = person.getAddressRecords() != null
                 ? person.getAddressRecords()
-                : new ArrayList<>();
+                : new LinkedHashSet<>();
 
         personAddresses.add(personAddress);
         person.setAddressRecords(personAddresses);
@@ -218,9 +225,9 @@ public final class EntityTestUtil {
                 .isPrimary(isPrimary)
                 .build();
 
-        List<IdentityDocument> identityDocuments = person.getIdentityDocuments() != null
+        Set<IdentityDocument> identityDocuments = person.getIdentityDocuments() != null
                 ? person.getIdentityDocuments()
-                : new ArrayList<>();
+                : new LinkedHashSet<>();
 
         identityDocuments.add(identityDocument);
         person.setIdentityDocuments(identityDocuments);
@@ -234,6 +241,13 @@ public final class EntityTestUtil {
         addIdentityDocument(null, person, type, fullNumber, issueDate, isPrimary);
     }
 
+    public static <T> T element(Collection<T> items, int index) {
+        return items.stream()
+                .skip(index)
+                .findFirst()
+                .orElseThrow(() -> new IndexOutOfBoundsException("No element at index " + index));
+    }
+
     public static void assertThatCollectionsAreNullOrEqualSize(Collection<?> actual, Collection<?> expected) {
         if (expected == null) {
             assertThat(actual).isNull();
@@ -0,0 +1,98 @@
+package com.naumov.identityservice.controller;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.naumov.identityservice.metrics.SqlMetricsHeadersAdvice.STATEMENTS_HEADER;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/*
+ * Own database, so the sequences start with this test: the statement counts include the sequence calls.
+ * */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:insert-batching;DB_CLOSE_DELAY=-1",
+        "spring.jpa.properties.hibernate.jdbc.batch_size=50",
+        "spring.jpa.properties.hibernate.order_inserts=true",
+        "identity-service.id.allocation-size=100",
+        "identity-service.sql-metrics.headers=true"
+})
+@AutoConfigureMockMvc
+class InsertBatchingTest {
+    private static final int PEOPLE = 20;
+
+    @Autowired
+    MockMvc mvc;
+
+    /*
+     * 20 people with 2 contacts, 2 documents and an address each: the inserts are ordered by table and sent as
+     * one JDBC batch per table, 5 batches whatever the number of rows. The first chunk also calls each of the 5
+     * sequences once, the 100 reserved ids cover the second chunk, which gets the following ids.
+     * */
+    @Test
+    void bulkCreateSendsOneInsertBatchPerTable() throws Exception {
+        MvcResult first = postBulk(0);
+        MvcResult second = postBulk(PEOPLE);
+
+        assertThat(first.getResponse().getHeader(STATEMENTS_HEADER)).isEqualTo("13");
+        assertThat(second.getResponse().getHeader(STATEMENTS_HEADER)).isEqualTo("8");
+
+        List<Long> firstIds = createdIds(first);
+        List<Long> secondIds = createdIds(second);
+        assertThat(secondIds).isEqualTo(firstIds.stream().map(id -> id + PEOPLE).toList());
+    }
+
+    private MvcResult postBulk(int firstPerson) throws Exception {
+        String body = IntStream.range(firstPerson, firstPerson + PEOPLE)
+                .mapToObj(InsertBatchingTest::personJson)
+                .collect(Collectors.joining(",", "[", "]"));
+
+        return mvc.perform(post("/people/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .content(body))
+                .andExpect(status().isOk())
+                .andReturn();
+    }
+
+    private static List<Long> createdIds(MvcResult result) throws Exception {
+        String response = result.getResponse().getContentAsString(StandardCharsets.UTF_8);
+        assertThat(JsonPath.parse(response).read("$.created", Integer.class)).isEqualTo(PEOPLE);
+        return JsonPath.parse(response).<List<Number>>read("$.results[*].id").stream()
+                .map(Number::longValue)
+                .toList();
+    }
+
+    private static String personJson(int i) {
+        return """
+                {
+                  "name": "Person %1$d",
+                  "date_of_birth": "12-12-1996",
+                  "is_hidden": "false",
+                  "addresses": [
+                    {"region": "Иркутская область", "address": "Address line %1$d", "registration_address": true}
+                  ],
+                  "contacts": [
+                    {"phone_number": "+7000%1$07d"},
+                    {"phone_number": "+7111%1$07d"}
+                  ],
+                  "identity_documents": [
+                    {"type": "INNER_PASSPORT", "full_number": "1%1$09d", "issue_date": "12-12-2007", "is_primary": true},
+                    {"type": "INTERNATIONAL_PASSPORT", "full_number": "2%1$09d", "issue_date": "12-12-2007", "is_primary": false}
+                  ]
+                }
+                """.formatted(i);
+    }
+}
@@ -10,6 +10,7 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -114,6 +115,50 @@ public class PersonControllerTest {
                 .andExpect(status().isBadRequest());
     }
 
+    @Test
+    public void createPeopleBulkJsonArray() throws Exception {
+        DocumentContext person0 = defaultPersonCreateUpdateRequestJson();
+        DocumentContext person1 = defaultPersonCreateUpdateRequestJson();
+        person1.set("$.contacts[0].phone_number", "+70987654321");
+        person1.set("$.identity_documents[0].full_number", "987654321");
+        DocumentContext duplicate = defaultPersonCreateUpdateRequestJson();
+
+        String body = "[" + person0.jsonString() + "," + person1.jsonString() + "," + duplicate.jsonString() + "]";
+
+        mvc.perform(post(peopleUrl + "/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.created", is(2)))
+                .andExpect(jsonPath("$.rejected", is(1)))
+                .andExpect(jsonPath("$.results", hasSize(3)))
+                .andExpect(jsonPath("$.results[0].id", notNullValue()))
+                .andExpect(jsonPath("$.results[1].id", notNullValue()))
+                .andExpect(jsonPath("$.results[2].index", is(2)))
+                .andExpect(jsonPath("$.results[2].error", notNullValue()));
+    }
+
+    @Test
+    public void createPeopleBulkNdjson() throws Exception {
+        DocumentContext person0 = defaultPersonCreateUpdateRequestJson();
+        DocumentContext withoutName = defaultPersonCreateUpdateRequestJson();
+        withoutName.delete("$.name");
+        DocumentContext wrongDocumentType = defaultPersonCreateUpdateRequestJson();
+        wrongDocumentType.set("$.identity_documents[0].type", "WRONG_DOC_TYPE");
+
+        String body = person0.jsonString() + "\n" + withoutName.jsonString() + "\n" + wrongDocumentType.jsonString();
+
+        mvc.perform(post(peopleUrl + "/bulk")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.created", is(1)))
+                .andExpect(jsonPath("$.rejected", is(2)))
+                .andExpect(jsonPath("$.results[0].id", notNullValue()))
+                .andExpect(jsonPath("$.results[1].error", containsString("name")))
+                .andExpect(jsonPath("$.results[2].error", notNullValue()));
+    }
+
     @Test
     public void getPerson() throws Exception {
         DocumentContext json = defaultPersonCreateUpdateRequestJson();
@@ -221,6 +266,117 @@ public class PersonControllerTest {
                 .andExpect(jsonPath("$.addresses", hasSize(0)));
     }
 
+    @Test
+    public void updatePersonWithStaleVersion() throws Exception {
+        DocumentContext json = defaultPersonCreateUpdateRequestJson();
+
+        String createResponse = mvc.perform(postPersonCreateUpdateRequest(json))
+                .andExpect(status().isCreated())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        Long personId = JsonPath.parse(createResponse).read("$.id", Long.class);
+
+        String getResponse = mvc.perform(get(peopleUrl + "/" + personId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version", is(0)))
+                .andReturn()
+                .getResponse()
+                .getContentAsString(StandardCharsets.UTF_8);
+
+        DocumentContext createdPerson = JsonPath.parse(getResponse);
+
+        mvc.perform(putPersonCreateUpdateRequest(createdPerson))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version", is(1)));
+
+        createdPerson.set("$.name", "Lost update");
+        mvc.perform(putPersonCreateUpdateRequest(createdPerson))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    public void patchPersonPhoneNumber() throws Exception {
+        DocumentContext json = defaultPersonCreateUpdateRequestJson();
+
+        String createResponse = mvc.perform(postPersonCreateUpdateRequest(json))
+                .andExpect(status().isCreated())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        DocumentContext createdPerson = JsonPath.parse(createResponse);
+        Long personId = createdPerson.read("$.id", Long.class);
+        Long contactId = createdPerson.read("$.contacts[0].id", Long.class);
+
+        String patch = """
+                {
+                  "version": 0,
+                  "contacts": [
+                    {
+                      "id": %d,
+                      "phone_number": "+70987654321"
+                    }
+                  ]
+                }
+                """.formatted(contactId);
+
+        mvc.perform(patchPersonRequest(personId, patch))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.version", is(1)))
+                .andExpect(jsonPath("$.contacts", hasSize(1)))
+                .andExpect(jsonPath("$.contacts[0].id", is(contactId.intValue())))
+                .andExpect(jsonPath("$.addresses").doesNotExist())
+                .andExpect(jsonPath("$.identity_documents").doesNotExist());
+
+        mvc.perform(get(peopleUrl + "/" + personId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name", is("Person name")))
+                .andExpect(jsonPath("$.contacts[0].phone_number", is("+70987654321")))
+                .andExpect(jsonPath("$.addresses", hasSize(1)))
+                .andExpect(jsonPath("$.identity_documents", hasSize(1)));
+    }
+
+    @Test
+    public void patchPersonRemoveContacts() throws Exception {
+        String createResponse = mvc.perform(postPersonCreateUpdateRequest(defaultPersonCreateUpdateRequestJson()))
+                .andExpect(status().isCreated())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        Long personId = JsonPath.parse(createResponse).read("$.id", Long.class);
+
+        mvc.perform(patchPersonRequest(personId, "{\"version\": 0, \"contacts\": null}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.contacts", hasSize(0)));
+    }
+
+    @Test
+    public void patchPersonWithInvalidInput() throws Exception {
+        String createResponse = mvc.perform(postPersonCreateUpdateRequest(defaultPersonCreateUpdateRequestJson()))
+                .andExpect(status().isCreated())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        Long personId = JsonPath.parse(createResponse).read("$.id", Long.class);
+
+        mvc.perform(patchPersonRequest(personId, "{\"name\": \"No version\"}"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(patchPersonRequest(personId, "{\"version\": 0, \"name\": null}"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(patchPersonRequest(personId, "{\"version\": 0, \"contacts\": " +
+                        "[{\"phone_number\": \"+70987654321\"}, {\"phone_number\": \"+70987654321\"}]}"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(patchPersonRequest(personId, "{\"version\": 100, \"name\": \"Stale version\"}"))
+                .andExpect(status().isConflict());
+        mvc.perform(patchPersonRequest(-1L, "{\"version\": 0, \"name\": \"Unknown person\"}"))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     public void getPeople() throws Exception {
         DocumentContext json = defaultPersonCreateUpdateRequestJson();
@@ -272,6 +428,166 @@ public class PersonControllerTest {
                 .andExpect(status().isBadRequest());
     }
 
+    @Test
+    public void getPeopleWithCursor() throws Exception {
+        DocumentContext person0 = defaultPersonCreateUpdateRequestJson();
+        DocumentContext person1 = defaultPersonCreateUpdateRequestJson();
+        person1.set("$.contacts[0].phone_number", "+70987654321");
+        person1.set("$.identity_documents[0].full_number", "987654321");
+
+        mvc.perform(postPersonCreateUpdateRequest(person0))
+                .andExpect(status().isCreated());
+        mvc.perform(postPersonCreateUpdateRequest(person1))
+                .andExpect(status().isCreated());
+
+        String firstPage = mvc.perform(get(peopleUrl)
+                        .param("after_id", "0")
+                        .param("page_size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.people", hasSize(1)))
+                .andExpect(jsonPath("$.next_cursor", notNullValue()))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        String cursor = JsonPath.parse(firstPage).read("$.next_cursor", String.class);
+        Long firstId = JsonPath.parse(firstPage).read("$.people[0].id", Long.class);
+
+        String secondPage = mvc.perform(get(peopleUrl)
+                        .param("cursor", cursor)
+                        .param("page_size", "1")
+                        .param("region", "Иркутская область"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.people", hasSize(1)))
+                .andExpect(jsonPath("$.people[0].id", greaterThan(firstId.intValue())))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        cursor = JsonPath.parse(secondPage).read("$.next_cursor", String.class);
+        mvc.perform(get(peopleUrl)
+                        .param("cursor", cursor)
+                        .param("page_size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.people", hasSize(0)))
+                .andExpect(jsonPath("$.next_cursor", nullValue()));
+
+        mvc.perform(get(peopleUrl)
+                        .param("cursor", "not a cursor")
+                        .param("page_size", "1"))
+                .andExpect(status().isBadRequest());
+
+        mvc.perform(get(peopleUrl)
+                        .param("page_number", "0")
+                        .param("after_id", "0")
+                        .param("page_size", "1"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void getHiddenPeopleWithIncludeHidden() throws Exception {
+        DocumentContext json = defaultPersonCreateUpdateRequestJson();
+        json.set("$.is_hidden", "true");
+
+        mvc.perform(postPersonCreateUpdateRequest(json))
+                .andExpect(status().isCreated());
+
+        mvc.perform(get(peopleUrl)
+                        .param("page_number", "0")
+                        .param("page_size", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(0)));
+
+        mvc.perform(get(peopleUrl)
+                        .param("page_number", "0")
+                        .param("page_size", "2")
+                        .param("include_hidden", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)));
+
+        mvc.perform(get(peopleUrl + "/find")
+                        .param("name", "Person name")
+                        .param("doc_type", "INNER_PASSPORT")
+                        .param("doc_number", "123456789"))
+                .andExpect(status().isNotFound());
+
+        mvc.perform(get(peopleUrl + "/find")
+                        .param("name", "Person name")
+                        .param("doc_type", "INNER_PASSPORT")
+                        .param("doc_number", "123456789")
+                        .param("include_hidden", "true"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void exportPeople() throws Exception {
+        MvcResult result = mvc.perform(get(peopleUrl + "/export")
+                        .param("from_id", "0")
+                        .param("region", "Иркутская область"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON));
+
+        mvc.perform(get(peopleUrl + "/export")
+                        .param("from_id", "2")
+                        .param("to_id", "1"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void findPeopleBatch() throws Exception {
+        DocumentContext json = defaultPersonCreateUpdateRequestJson();
+
+        String createResponse = mvc.perform(postPersonCreateUpdateRequest(json))
+                .andExpect(status().isCreated())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        Long personId = JsonPath.parse(createResponse).read("$.id", Long.class);
+
+        String body = "[" +
+                "{\"name\":\"Wrong name\",\"doc_type\":\"INNER_PASSPORT\",\"doc_number\":\"123456789\"}," +
+                "{\"name\":\"Person name\",\"doc_type\":\"INNER_PASSPORT\",\"doc_number\":\"123456789\"}" +
+                "]";
+
+        mvc.perform(post(peopleUrl + "/find/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0]", nullValue()))
+                .andExpect(jsonPath("$[1]", equalTo(personId.intValue())));
+
+        mvc.perform(post(peopleUrl + "/find/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"name\":\"Person name\",\"doc_type\":\"INNER_PASSPORT\"}]"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void getPeopleByIds() throws Exception {
+        String createResponse = mvc.perform(postPersonCreateUpdateRequest(defaultPersonCreateUpdateRequestJson()))
+                .andExpect(status().isCreated())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        Long personId = JsonPath.parse(createResponse).read("$.id", Long.class);
+
+        mvc.perform(post(peopleUrl + "/batch-get")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[-1," + personId + "]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.people", hasSize(1)))
+                .andExpect(jsonPath("$.people[0].id", equalTo(personId.intValue())))
+                .andExpect(jsonPath("$.people[0].contacts", hasSize(1)))
+                .andExpect(jsonPath("$.missing_ids", contains(-1)));
+    }
+
     @Test
     public void findPerson() throws Exception {
         DocumentContext json = defaultPersonCreateUpdateRequestJson();
@@ -341,4 +657,10 @@ public class PersonControllerTest {
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(personCreateRequestJson.jsonString());
     }
+
+    private MockHttpServletRequestBuilder patchPersonRequest(Long personId, String mergePatch) {
+        return patch(peopleUrl + "/" + personId)
+                .contentType("application/merge-patch+json")
+                .content(mergePatch);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,54 @@
+package com.naumov.identityservice.controller;
+
+import com.naumov.identityservice.exception.ResourceNotFoundException;
+import com.naumov.identityservice.service.PersonService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/*
+ * The JSON is built by PostgreSQL, see PersonRepositoryJsonTest, here the service is mocked.
+ * */
+@SpringBootTest(properties = "identity-service.read.json-aggregation=true")
+@AutoConfigureMockMvc
+class PersonJsonAggregationTest {
+    @Autowired
+    MockMvc mvc;
+    @MockBean
+    PersonService personService;
+
+    @Test
+    void writesDatabaseJsonAsItIs() throws Exception {
+        String json = "{\"id\" : 7, \"version\" : 0, \"name\" : \"Иван\", \"addresses\" : []}";
+        when(personService.getPersonJson(7L)).thenReturn(json);
+
+        mvc.perform(get("/people/7"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(content().bytes(json.getBytes(StandardCharsets.UTF_8)));
+        verify(personService, never()).getPerson(anyLong());
+    }
+
+    @Test
+    void missingPersonIsNotFound() throws Exception {
+        when(personService.getPersonJson(8L))
+                .thenThrow(new ResourceNotFoundException("Person with id=8 does not exist"));
+
+        mvc.perform(get("/people/8"))
+                .andExpect(status().isNotFound());
+    }
+}
@@ -0,0 +1,84 @@
+package com.naumov.identityservice.controller;
+
+import com.naumov.identityservice.datasource.ReplicaLagMonitor;
+import com.naumov.identityservice.dto.rs.PersonGetResponse;
+import com.naumov.identityservice.model.Person;
+import com.naumov.identityservice.repository.RegionRepository;
+import com.naumov.identityservice.service.PersonPatch;
+import com.naumov.identityservice.service.PersonService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static com.naumov.identityservice.EntityTestUtil.simplePersonBuilder;
+import static com.naumov.identityservice.config.CacheConfiguration.PEOPLE_CACHE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+ * Own databases: the replica is a copy of the primary taken before the write, a replica that has not replayed
+ * the write yet. The lag query fails on the empty replica, so the reads stay on the primary until the copy.
+ * */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:replica-cache-primary;DB_CLOSE_DELAY=-1",
+        "spring.cache.type=caffeine",
+        "spring.cache.cache-names=" + PEOPLE_CACHE,
+        "identity-service.replica.enabled=true",
+        "identity-service.replica.max-lag=5s",
+        "identity-service.replica.lag-check-interval=1h",
+        "identity-service.replica.lag-query=SELECT COUNT(*) * 0 FROM people",
+        "identity-service.replica.hikari.jdbc-url=jdbc:h2:mem:replica-cache-replica;DB_CLOSE_DELAY=-1",
+        "identity-service.replica.hikari.username=sa",
+        "identity-service.replica.hikari.password=",
+        "identity-service.replica.hikari.pool-name=replica"
+})
+class PersonResponseCacheReplicaTest {
+    @Autowired
+    PersonResponseCache personResponseCache;
+    @Autowired
+    PersonService personService;
+    @Autowired
+    RegionRepository regionRepository;
+    @Autowired
+    ReplicaLagMonitor replicaLagMonitor;
+    @Autowired
+    DataSource dataSource;
+
+    @Test
+    void responseAfterWriteHasNewVersion() throws SQLException {
+        Person person = personService.createPerson(simplePersonBuilder(regionRepository.findAll().get(0))
+                .phoneNumber("+70000002301")
+                .documentFullNumber("2301")
+                .build());
+        Long id = person.getId();
+        copyPrimaryToReplica();
+        replicaLagMonitor.checkLag();
+        assertThat(replicaLagMonitor.isReplicaUsable()).isTrue();
+        assertThat(personResponseCache.getPerson(id).getVersion()).isEqualTo(person.getVersion());
+
+        personService.patchPerson(id, PersonPatch.builder()
+                .version(person.getVersion())
+                .name("Patched name")
+                .build());
+
+        assertThat(personService.getPerson(id).getName()).isEqualTo(person.getName()); // the stale replica
+        PersonGetResponse response = personResponseCache.getPerson(id);
+        assertThat(response.getVersion()).isEqualTo(person.getVersion() + 1);
+        assertThat(response.getName()).isEqualTo("Patched name");
+    }
+
+    private void copyPrimaryToReplica() throws SQLException {
+        try (Connection primary = dataSource.getConnection();
+             Connection replica = replicaLagMonitor.getReplica().getConnection();
+             Statement script = primary.createStatement();
+             ResultSet statements = script.executeQuery("SCRIPT");
+             Statement replay = replica.createStatement()) {
+            while (statements.next()) replay.execute(statements.getString(1));
+        }
+    }
+}
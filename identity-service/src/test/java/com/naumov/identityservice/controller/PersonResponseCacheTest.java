@@ -0,0 +1,155 @@
+package com.naumov.identityservice.controller;
+
+import com.naumov.identityservice.dto.DtoConverter;
+import com.naumov.identityservice.dto.rs.PersonGetResponse;
+import com.naumov.identityservice.model.Address;
+import com.naumov.identityservice.model.Person;
+import com.naumov.identityservice.model.PersonAddress;
+import com.naumov.identityservice.model.Region;
+import com.naumov.identityservice.repository.RegionRepository;
+import com.naumov.identityservice.service.PersonPatch;
+import com.naumov.identityservice.service.PersonService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Set;
+
+import static com.naumov.identityservice.EntityTestUtil.element;
+import static com.naumov.identityservice.EntityTestUtil.simplePersonBuilder;
+import static com.naumov.identityservice.config.CacheConfiguration.PEOPLE_CACHE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+/*
+ * Own database, the eviction of the other people at an address happens after a commit.
+ * */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:response-cache;DB_CLOSE_DELAY=-1",
+        "spring.cache.type=caffeine",
+        "spring.cache.cache-names=" + PEOPLE_CACHE
+})
+@Transactional
+class PersonResponseCacheTest {
+    @Autowired
+    PersonResponseCache personResponseCache;
+    @Autowired
+    PersonService personService;
+    @Autowired
+    RegionRepository regionRepository;
+    @Autowired
+    CacheManager cacheManager;
+    @SpyBean
+    DtoConverter dtoConverter;
+
+    @Test
+    void repeatedReadsAreCachedAndUpdateEvicts() {
+        Person savedPerson = personService.createPerson(simplePersonBuilder(regionRepository.findAll().get(0))
+                .build());
+        Long id = savedPerson.getId();
+        Cache cache = cacheManager.getCache(PEOPLE_CACHE);
+        assertThat(cache).isNotNull();
+
+        PersonGetResponse firstResponse = personResponseCache.getPerson(id);
+        PersonGetResponse secondResponse = personResponseCache.getPerson(id);
+
+        assertThat(secondResponse).isSameAs(firstResponse);
+        assertThat(cache.get(id)).isNotNull();
+
+        Person updatedPerson = simplePersonBuilder(regionRepository.findAll().get(0))
+                .id(id)
+                .version(savedPerson.getVersion())
+                .contactId(element(savedPerson.getContacts(), 0).getId())
+                .identityDocumentId(element(savedPerson.getIdentityDocuments(), 0).getId())
+                .addressRecordId(element(savedPerson.getAddressRecords(), 0).getId())
+                .addressId(element(savedPerson.getAddressRecords(), 0).getAddress().getId())
+                .name("Updated name")
+                .build();
+        personService.updatePerson(updatedPerson);
+
+        assertThat(cache.get(id)).isNull();
+        assertThat(personResponseCache.getPerson(id).getName()).isEqualTo("Updated name");
+    }
+
+    /*
+     * Both people reference the same address, the update of its text by the first one changes the response
+     * of the second one as well.
+     * */
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void sharedAddressUpdateEvictsItsOtherPeople() {
+        Region region = regionRepository.findAll().get(0);
+        Person firstPerson = personService.createPerson(simplePersonBuilder(region)
+                .phoneNumber("+70000000701")
+                .documentFullNumber("0701")
+                .addressString("Shared address")
+                .build());
+        Person secondPerson = personService.createPerson(simplePersonBuilder(region)
+                .phoneNumber("+70000000702")
+                .documentFullNumber("0702")
+                .addressString("Shared address")
+                .build());
+        Cache cache = cacheManager.getCache(PEOPLE_CACHE);
+        assertThat(cache).isNotNull();
+        assertThat(personResponseCache.getPerson(secondPerson.getId()).getAddresses().get(0).getAddress())
+                .isEqualTo("Shared address");
+
+        Long addressId = element(firstPerson.getAddressRecords(), 0).getAddress().getId();
+        assertThat(element(secondPerson.getAddressRecords(), 0).getAddress().getId()).isEqualTo(addressId);
+        personService.patchPerson(firstPerson.getId(), PersonPatch.builder()
+                .version(firstPerson.getVersion())
+                .addressRecords(Set.of(PersonAddress.builder()
+                        .address(Address.builder().id(addressId).region(region).address("Renamed address").build())
+                        .isRegistration(true)
+                        .build()))
+                .build());
+
+        assertThat(cache.get(secondPerson.getId())).isNull();
+        assertThat(personResponseCache.getPerson(secondPerson.getId()).getAddresses().get(0).getAddress())
+                .isEqualTo("Renamed address");
+    }
+
+    /*
+     * The fill reads the person before the update commits and puts the response after the update evicted it:
+     * the old response is not left in the cache.
+     * */
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void fillRacingWithUpdateIsNotCached() {
+        Person savedPerson = personService.createPerson(simplePersonBuilder(regionRepository.findAll().get(0))
+                .phoneNumber("+70000000703")
+                .documentFullNumber("0703")
+                .build());
+        Long id = savedPerson.getId();
+        Cache cache = cacheManager.getCache(PEOPLE_CACHE);
+        assertThat(cache).isNotNull();
+
+        Person updatedPerson = simplePersonBuilder(regionRepository.findAll().get(0))
+                .id(id)
+                .version(savedPerson.getVersion())
+                .phoneNumber("+70000000703")
+                .documentFullNumber("0703")
+                .contactId(element(savedPerson.getContacts(), 0).getId())
+                .identityDocumentId(element(savedPerson.getIdentityDocuments(), 0).getId())
+                .addressRecordId(element(savedPerson.getAddressRecords(), 0).getId())
+                .addressId(element(savedPerson.getAddressRecords(), 0).getAddress().getId())
+                .name("Updated name")
+                .build();
+        doAnswer(invocation -> {
+            Object oldResponse = invocation.callRealMethod();
+            personService.updatePerson(updatedPerson);
+            return oldResponse;
+        }).doCallRealMethod().when(dtoConverter).toPersonGetResponse(any(Person.class));
+
+        assertThat(personResponseCache.getPerson(id).getName()).isNotEqualTo("Updated name");
+
+        assertThat(cache.get(id)).isNull();
+        assertThat(personResponseCache.getPerson(id).getName()).isEqualTo("Updated name");
+    }
+}
@@ -0,0 +1,70 @@
+package com.naumov.identityservice.controller;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/*
+ * Own database, the replica pool connects to it as well, a replica without lag. The primary pool has one
+ * connection, which the test takes.
+ * */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:routing-unavailable;DB_CLOSE_DELAY=-1",
+        "spring.datasource.hikari.maximum-pool-size=1",
+        "spring.datasource.hikari.connection-timeout=250",
+        "identity-service.replica.enabled=true",
+        "identity-service.replica.max-lag=5s",
+        "identity-service.replica.lag-check-interval=1s",
+        "identity-service.replica.lag-query=SELECT 0",
+        "identity-service.replica.hikari.pool-name=replica",
+        "identity-service.replica.hikari.jdbc-url=jdbc:h2:mem:routing-unavailable;DB_CLOSE_DELAY=-1",
+        "identity-service.replica.hikari.username=sa",
+        "identity-service.replica.hikari.password="
+})
+@AutoConfigureMockMvc
+class ReplicaRoutingUnavailableTest {
+    @Autowired
+    MockMvc mvc;
+    @Autowired
+    DataSource dataSource;
+
+    /*
+     * The routing takes the connection at the first statement of the transaction, so the pool timeout comes
+     * from the repository call instead of the transaction begin. It is still a 503 the client may retry.
+     * */
+    @Test
+    void exhaustedPoolIsServiceUnavailable() throws Exception {
+        try (Connection taken = dataSource.unwrap(HikariDataSource.class).getConnection()) {
+            mvc.perform(post("/people")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .characterEncoding(StandardCharsets.UTF_8)
+                            .content("""
+                                    {
+                                      "name": "Unavailable",
+                                      "date_of_birth": "12-12-1996",
+                                      "is_hidden": "false",
+                                      "addresses": [],
+                                      "contacts": [{"phone_number": "+70000002302"}],
+                                      "identity_documents": [
+                                        {"type": "INNER_PASSPORT", "full_number": "2302", "issue_date": "12-12-2007", "is_primary": true}
+                                      ]
+                                    }
+                                    """))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+        }
+    }
+}
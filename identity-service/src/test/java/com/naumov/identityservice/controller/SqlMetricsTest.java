@@ -0,0 +1,131 @@
+package com.naumov.identityservice.controller;
+
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+import com.naumov.identityservice.model.Person;
+import com.naumov.identityservice.repository.RegionRepository;
+import com.naumov.identityservice.service.PersonService;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static com.naumov.identityservice.EntityTestUtil.simplePersonBuilder;
+import static com.naumov.identityservice.metrics.SqlMetricsFilter.STATEMENTS_METRIC;
+import static com.naumov.identityservice.metrics.SqlMetricsHeadersAdvice.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "identity-service.sql-metrics.headers=true")
+@AutoConfigureMockMvc
+@Transactional
+class SqlMetricsTest {
+    @Autowired
+    MockMvc mvc;
+    @Autowired
+    PersonService personService;
+    @Autowired
+    RegionRepository regionRepository;
+    @Autowired
+    EntityManager entityManager;
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    /*
+     * GET /people/{id} loads the person with its addresses, their regions, contacts and documents by one entity
+     * graph query. A change of the numbers here means the query count of the endpoint changed.
+     * */
+    @Test
+    void getPersonReportsStatementsRowsAndEntities() throws Exception {
+        Person person = personService.createPerson(simplePersonBuilder(regionRepository.findAll().get(0)).build());
+        entityManager.flush();
+        entityManager.clear();
+        long recordedRequests = statementsSummary().map(DistributionSummary::count).orElse(0L);
+        long timedCalls = getPersonTimer().map(Timer::count).orElse(0L);
+
+        MvcResult result = mvc.perform(get("/people/" + person.getId()))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        assertThat(result.getResponse().getHeader(STATEMENTS_HEADER)).isEqualTo("1");
+        assertThat(result.getResponse().getHeader(ROWS_HEADER)).isEqualTo("1");
+        assertThat(result.getResponse().getHeader(ENTITIES_HEADER)).isEqualTo("6");
+        assertThat(statementsSummary()).hasValueSatisfying(summary ->
+                assertThat(summary.count()).isEqualTo(recordedRequests + 1));
+        assertThat(getPersonTimer()).hasValueSatisfying(timer ->
+                assertThat(timer.count()).isEqualTo(timedCalls + 1));
+    }
+
+    /*
+     * PUT /people changing only the person's fields: the conditional update of the person row and one
+     * projection query per child collection, the unchanged children are not written.
+     * */
+    @Test
+    void updatePersonFieldsWritesOnlyThePersonRow() throws Exception {
+        Person person = personService.createPerson(simplePersonBuilder(regionRepository.findAll().get(0)).build());
+        entityManager.flush();
+        entityManager.clear();
+
+        String getResponse = mvc.perform(get("/people/" + person.getId()))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString(StandardCharsets.UTF_8);
+        DocumentContext json = JsonPath.parse(getResponse);
+        json.set("$.name", "Updated name");
+
+        MvcResult result = mvc.perform(put("/people")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .content(json.jsonString()))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        assertThat(result.getResponse().getHeader(STATEMENTS_HEADER)).isEqualTo("4");
+        assertThat(result.getResponse().getHeader(ENTITIES_HEADER)).isEqualTo("0");
+    }
+
+    /*
+     * PATCH /people/{id} of a person field: the conditional update alone, no collection is read.
+     * */
+    @Test
+    void patchPersonFieldRunsOneStatement() throws Exception {
+        Person person = personService.createPerson(simplePersonBuilder(regionRepository.findAll().get(0)).build());
+        entityManager.flush();
+        entityManager.clear();
+
+        MvcResult result = mvc.perform(patch("/people/" + person.getId())
+                        .contentType("application/merge-patch+json")
+                        .content("{\"version\": 0, \"name\": \"Patched name\"}"))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        assertThat(result.getResponse().getHeader(STATEMENTS_HEADER)).isEqualTo("1");
+    }
+
+    private Optional<Timer> getPersonTimer() {
+        return Optional.ofNullable(meterRegistry.find("identity-service.person-service")
+                .tag("method", "getLatestPerson")
+                .timer());
+    }
+
+    private Optional<DistributionSummary> statementsSummary() {
+        return Optional.ofNullable(meterRegistry.find(STATEMENTS_METRIC)
+                .tags("method", "GET", "uri", "/people/{id}")
+                .summary());
+    }
+}
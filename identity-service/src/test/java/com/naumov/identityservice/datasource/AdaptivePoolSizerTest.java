@@ -0,0 +1,117 @@
+package com.naumov.identityservice.datasource;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptivePoolSizerTest {
+    private static final int WINDOW_SAMPLES = 4;
+
+    private final HikariConfig poolConfig = new HikariConfig();
+    private final FakePool pool = new FakePool();
+
+    @Test
+    void startsFromCoreBasedSize() {
+        new AdaptivePoolSizer(poolConfig, () -> pool, () -> 0, 1, 1000, WINDOW_SAMPLES);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        assertThat(poolConfig.getMaximumPoolSize()).isEqualTo(AdaptivePoolSizer.coreBasedSize(cores));
+    }
+
+    /*
+     * Waiters in every sample of a window: the pool grows by a quarter once the window is complete,
+     * but not above the max size.
+     * */
+    @Test
+    void growsWhileThreadsWaitForConnections() {
+        AdaptivePoolSizer sizer = new AdaptivePoolSizer(poolConfig, () -> pool, () -> 0, 4, 25, WINDOW_SAMPLES);
+        poolConfig.setMaximumPoolSize(16);
+        pool.active = 16;
+        pool.waiting = 5;
+
+        sample(sizer, WINDOW_SAMPLES - 1);
+        assertThat(poolConfig.getMaximumPoolSize()).isEqualTo(16);
+
+        sample(sizer, 1);
+        assertThat(poolConfig.getMaximumPoolSize()).isEqualTo(20);
+
+        sample(sizer, WINDOW_SAMPLES * 2);
+        assertThat(poolConfig.getMaximumPoolSize()).isEqualTo(25);
+    }
+
+    /*
+     * No waiters and at most 3 active connections: the pool shrinks by a quarter per window down to twice
+     * the peak, occasional waiters stop the shrinking without growing the pool.
+     * */
+    @Test
+    void shrinksWhileMostlyIdle() {
+        AdaptivePoolSizer sizer = new AdaptivePoolSizer(poolConfig, () -> pool, () -> 0, 2, 40, WINDOW_SAMPLES);
+        poolConfig.setMaximumPoolSize(20);
+        pool.active = 3;
+
+        sample(sizer, WINDOW_SAMPLES);
+        assertThat(poolConfig.getMaximumPoolSize()).isEqualTo(15);
+
+        sample(sizer, WINDOW_SAMPLES * 10);
+        assertThat(poolConfig.getMaximumPoolSize()).isEqualTo(6);
+
+        poolConfig.setMaximumPoolSize(20);
+        pool.waiting = 1;
+        sample(sizer, 1);
+        pool.waiting = 0;
+        sample(sizer, WINDOW_SAMPLES - 1);
+        assertThat(poolConfig.getMaximumPoolSize()).isEqualTo(20);
+    }
+
+    @Test
+    void skipsSamplesBeforeThePoolStarts() {
+        AdaptivePoolSizer sizer = new AdaptivePoolSizer(poolConfig, () -> null, () -> 0, 2, 40, WINDOW_SAMPLES);
+        poolConfig.setMaximumPoolSize(20);
+
+        sample(sizer, WINDOW_SAMPLES * 2);
+        assertThat(poolConfig.getMaximumPoolSize()).isEqualTo(20);
+    }
+
+    private static void sample(AdaptivePoolSizer sizer, int times) {
+        for (int i = 0; i < times; i++) sizer.sample();
+    }
+
+    private static final class FakePool implements HikariPoolMXBean {
+        int active;
+        int waiting;
+
+        @Override
+        public int getIdleConnections() {
+            return 0;
+        }
+
+        @Override
+        public int getActiveConnections() {
+            return active;
+        }
+
+        @Override
+        public int getTotalConnections() {
+            return active;
+        }
+
+        @Override
+        public int getThreadsAwaitingConnection() {
+            return waiting;
+        }
+
+        @Override
+        public void softEvictConnections() {
+        }
+
+        @Override
+        public void suspendPool() {
+        }
+
+        @Override
+        public void resumePool() {
+        }
+    }
+}
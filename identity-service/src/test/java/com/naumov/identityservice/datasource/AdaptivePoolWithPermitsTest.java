@@ -0,0 +1,110 @@
+package com.naumov.identityservice.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+ * The virtual threads mode with the adaptive-pool profile: a pool on an in-memory H2 database behind
+ * the connection permits, sized by the sizer. The pool times out faster than the permits, so a thread let
+ * through to a full pool would fail with the pool timeout.
+ * */
+class AdaptivePoolWithPermitsTest {
+    private static final int WINDOW_SAMPLES = 2;
+
+    private final HikariDataSource pool = h2Pool();
+    private final ConnectionLimitingDataSource dataSource = new ConnectionLimitingDataSource(pool, "adaptive",
+            pool::getMaximumPoolSize, Duration.ofSeconds(1));
+    private final AdaptivePoolSizer sizer = new AdaptivePoolSizer(pool, pool::getHikariPoolMXBean,
+            dataSource::getQueueLength, 2, 4, WINDOW_SAMPLES);
+
+    @AfterEach
+    void closePool() {
+        pool.close();
+    }
+
+    /*
+     * The threads queue on the permits, not in the pool, and still make the pool grow. The permits follow,
+     * so both queued threads get a connection once one is returned.
+     * */
+    @Test
+    void growsForThreadsQueuedOnPermits() throws Exception {
+        pool.setMaximumPoolSize(2);
+        Connection connection0 = dataSource.getConnection();
+        Connection connection1 = dataSource.getConnection();
+
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        List<Thread> queuedThreads = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            queuedThreads.add(Thread.ofVirtual().start(() -> {
+                try (Connection connection = dataSource.getConnection()) {
+                    connection.isValid(1);
+                } catch (SQLException e) {
+                    failures.add(e);
+                }
+            }));
+        }
+        awaitQueueLength(2);
+        assertThat(pool.getHikariPoolMXBean().getThreadsAwaitingConnection()).isZero();
+
+        sample(WINDOW_SAMPLES);
+        assertThat(pool.getMaximumPoolSize()).isEqualTo(3);
+
+        connection0.close();
+        for (Thread thread : queuedThreads) thread.join(5000);
+        connection1.close();
+
+        assertThat(queuedThreads).noneMatch(Thread::isAlive);
+        assertThat(failures).isEmpty();
+    }
+
+    /*
+     * A mostly idle pool shrinks, a connection beyond the new size waits for a permit instead of the pool.
+     * */
+    @Test
+    void shrunkPoolKeepsThreadsOnPermits() throws Exception {
+        pool.setMaximumPoolSize(4);
+        try (Connection connection = dataSource.getConnection()) {
+            connection.isValid(1);
+            sample(WINDOW_SAMPLES);
+        }
+        assertThat(pool.getMaximumPoolSize()).isEqualTo(3);
+
+        try (Connection connection0 = dataSource.getConnection();
+             Connection connection1 = dataSource.getConnection();
+             Connection connection2 = dataSource.getConnection()) {
+            assertThat(dataSource.getAvailablePermits()).isZero();
+            assertThatThrownBy(dataSource::getConnection)
+                    .isInstanceOf(SQLTransientConnectionException.class)
+                    .hasMessageStartingWith("No connection permit");
+        }
+    }
+
+    private void sample(int times) {
+        for (int i = 0; i < times; i++) sizer.sample();
+    }
+
+    private void awaitQueueLength(int queueLength) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (dataSource.getQueueLength() < queueLength && System.nanoTime() < deadline) Thread.sleep(10);
+        assertThat(dataSource.getQueueLength()).isEqualTo(queueLength);
+    }
+
+    private static HikariDataSource h2Pool() {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setJdbcUrl("jdbc:h2:mem:adaptive-pool;DB_CLOSE_DELAY=-1");
+        pool.setConnectionTimeout(250);
+        return pool;
+    }
+}
@@ -0,0 +1,97 @@
+package com.naumov.identityservice.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+
+import static com.naumov.identityservice.datasource.ConnectionLimitingDataSource.PERMIT_WAIT_METRIC;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "identity-service.virtual-threads.enabled=true",
+        "spring.datasource.hikari.maximum-pool-size=2",
+        "identity-service.virtual-threads.permit-timeout=100ms"
+})
+class ConnectionLimitingDataSourceTest {
+    @Autowired
+    DataSource dataSource;
+    @Autowired
+    TestRestTemplate restTemplate;
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    /*
+     * Two permits: the third connection request times out while both are held, and a permit closed twice
+     * is returned once.
+     * */
+    @Test
+    void connectionsAreLimitedByPermits() throws Exception {
+        ConnectionLimitingDataSource limitingDataSource = dataSource.unwrap(ConnectionLimitingDataSource.class);
+        long timeouts = permitWaitCount("timeout");
+
+        try (Connection connection0 = dataSource.getConnection()) {
+            Connection connection1 = dataSource.getConnection();
+            assertThat(limitingDataSource.getAvailablePermits()).isZero();
+
+            assertThatThrownBy(dataSource::getConnection).isInstanceOf(SQLTransientConnectionException.class);
+            assertThat(permitWaitCount("timeout")).isEqualTo(timeouts + 1);
+
+            connection1.close();
+            connection1.close();
+            assertThat(limitingDataSource.getAvailablePermits()).isEqualTo(1);
+        }
+
+        assertThat(limitingDataSource.getAvailablePermits()).isEqualTo(2);
+    }
+
+    /*
+     * The permits follow the maximum pool size: a grown pool lets more threads in, a pool shrunk below
+     * the connections in use lets nobody in until enough of them are returned.
+     * */
+    @Test
+    void permitsFollowPoolSize() throws Exception {
+        ConnectionLimitingDataSource limitingDataSource = dataSource.unwrap(ConnectionLimitingDataSource.class);
+        HikariDataSource pool = dataSource.unwrap(HikariDataSource.class);
+
+        try (Connection connection0 = dataSource.getConnection(); Connection connection1 = dataSource.getConnection()) {
+            pool.setMaximumPoolSize(3);
+            try (Connection connection2 = dataSource.getConnection()) {
+                assertThat(limitingDataSource.getAvailablePermits()).isZero();
+            }
+
+            pool.setMaximumPoolSize(1);
+            assertThat(limitingDataSource.getAvailablePermits()).isEqualTo(-1);
+            assertThatThrownBy(dataSource::getConnection).isInstanceOf(SQLTransientConnectionException.class);
+        } finally {
+            pool.setMaximumPoolSize(2);
+        }
+
+        assertThat(limitingDataSource.getAvailablePermits()).isEqualTo(2);
+    }
+
+    @Test
+    void requestsAreServedThroughPermits() {
+        long acquired = permitWaitCount("acquired");
+
+        ResponseEntity<String> response = restTemplate.getForEntity("/people?after_id=0&page_size=1", String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(permitWaitCount("acquired")).isGreaterThan(acquired);
+    }
+
+    private long permitWaitCount(String outcome) {
+        Timer timer = meterRegistry.find(PERMIT_WAIT_METRIC).tag("outcome", outcome).timer();
+        return timer != null ? timer.count() : 0;
+    }
+}
@@ -0,0 +1,127 @@
+package com.naumov.identityservice.datasource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+ * Two in-memory H2 databases stand in for the primary and the replica, the lag query decides the lag.
+ * */
+class ReadOnlyRoutingDataSourceTest {
+    private static final Duration MAX_LAG = Duration.ofSeconds(5);
+
+    private final DataSource primary = h2("primary");
+    private final DataSource replica = h2("replica");
+
+    @AfterEach
+    void clearTransactionState() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    }
+
+    @Test
+    void readOnlyTransactionsGoToReplicaWithinMaxLag() throws SQLException {
+        ReplicaLagMonitor monitor = new ReplicaLagMonitor(replica, "SELECT 4.5", MAX_LAG);
+        DataSource dataSource = ReadOnlyRoutingDataSource.lazy(primary, replica, monitor::isReplicaUsable);
+        monitor.checkLag();
+        assertThat(monitor.isReplicaUsable()).isTrue();
+
+        assertThat(databaseOf(dataSource)).isEqualTo("primary");
+
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        assertThat(databaseOf(dataSource)).isEqualTo("replica");
+    }
+
+    @Test
+    void readOnlyTransactionsStayOnPrimaryWhenRequired() throws SQLException {
+        ReplicaLagMonitor monitor = new ReplicaLagMonitor(replica, "SELECT 0", MAX_LAG);
+        DataSource dataSource = ReadOnlyRoutingDataSource.lazy(primary, replica, monitor::isReplicaUsable);
+        monitor.checkLag();
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        String database = ReadOnlyRoutingDataSource.onPrimary(() -> {
+            try {
+                return databaseOf(dataSource);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        assertThat(database).isEqualTo("primary");
+        assertThat(databaseOf(dataSource)).isEqualTo("replica");
+    }
+
+    /*
+     * A connection taken before the transaction is marked read-only, as the transaction manager does, still
+     * goes to the replica: the lazy proxy takes the physical connection at its first real use.
+     * */
+    @Test
+    void physicalConnectionIsTakenAtFirstStatement() throws SQLException {
+        ReplicaLagMonitor monitor = new ReplicaLagMonitor(replica, "SELECT 0", MAX_LAG);
+        DataSource dataSource = ReadOnlyRoutingDataSource.lazy(primary, replica, monitor::isReplicaUsable);
+        monitor.checkLag();
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+            assertThat(connection.getMetaData().getURL()).contains("replica");
+        }
+    }
+
+    /*
+     * The lag is read from a table of the replica database: reads go back to the primary while the replica
+     * lags or the lag query fails, and return to the replica after the next good check.
+     * */
+    @Test
+    void readOnlyTransactionsFallBackToPrimary() throws SQLException {
+        ReplicaLagMonitor monitor = new ReplicaLagMonitor(replica, "SELECT seconds FROM replication_lag", MAX_LAG);
+        DataSource dataSource = ReadOnlyRoutingDataSource.lazy(primary, replica, monitor::isReplicaUsable);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        execute(replica, "CREATE TABLE replication_lag (seconds DOUBLE)", "INSERT INTO replication_lag VALUES (0)");
+
+        // before the first check
+        assertThat(databaseOf(dataSource)).isEqualTo("primary");
+
+        monitor.checkLag();
+        assertThat(databaseOf(dataSource)).isEqualTo("replica");
+
+        execute(replica, "UPDATE replication_lag SET seconds = 5.5");
+        monitor.checkLag();
+        assertThat(databaseOf(dataSource)).isEqualTo("primary");
+
+        execute(replica, "DROP TABLE replication_lag");
+        monitor.checkLag();
+        assertThat(databaseOf(dataSource)).isEqualTo("primary");
+
+        execute(replica, "CREATE TABLE replication_lag (seconds DOUBLE)", "INSERT INTO replication_lag VALUES (1)");
+        monitor.checkLag();
+        assertThat(databaseOf(dataSource)).isEqualTo("replica");
+    }
+
+    private static String databaseOf(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            return connection.getMetaData().getURL().contains("routing-replica") ? "replica" : "primary";
+        }
+    }
+
+    private static void execute(DataSource dataSource, String... sqls) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            for (String sql : sqls) statement.execute(sql);
+        }
+    }
+
+    private static DataSource h2(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:routing-" + name + ";DB_CLOSE_DELAY=-1");
+        return dataSource;
+    }
+}
@@ -0,0 +1,69 @@
+package com.naumov.identityservice.datasource;
+
+import com.naumov.identityservice.config.VirtualThreadsConfiguration.ConnectionLimitingPostProcessor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.naumov.identityservice.datasource.ConnectionLimitingDataSource.PERMIT_WAITING_METRIC;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+ * The replica pool connects to the H2 database of the primary, a replica without lag.
+ * */
+@SpringBootTest(properties = {
+        "identity-service.virtual-threads.enabled=true",
+        "identity-service.virtual-threads.permit-timeout=100ms",
+        "spring.datasource.hikari.maximum-pool-size=2",
+        "identity-service.replica.enabled=true",
+        "identity-service.replica.max-lag=5s",
+        "identity-service.replica.lag-check-interval=1s",
+        "identity-service.replica.lag-query=SELECT 0",
+        "identity-service.replica.hikari.pool-name=replica",
+        "identity-service.replica.hikari.jdbc-url=jdbc:h2:mem:mydb;DB_CLOSE_DELAY=-1",
+        "identity-service.replica.hikari.username=sa",
+        "identity-service.replica.hikari.password=",
+        "identity-service.replica.hikari.maximum-pool-size=3"
+})
+class ReplicaConnectionPermitsTest {
+    @Autowired
+    DataSource dataSource;
+    @Autowired
+    ConnectionLimitingPostProcessor connectionLimiting;
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    /*
+     * The primary and the replica pool are limited beneath the routing, each by its own maximum pool size:
+     * the primary permits all taken leave the replica ones untouched.
+     * */
+    @Test
+    void eachPoolHasItsOwnPermits() throws Exception {
+        Map<String, ConnectionLimitingDataSource> limitedPools = connectionLimiting.getLimitedPools().stream()
+                .collect(Collectors.toMap(ConnectionLimitingDataSource::getPoolName, Function.identity()));
+        assertThat(limitedPools).containsOnlyKeys("dataSource", "replica");
+        ConnectionLimitingDataSource primary = limitedPools.get("dataSource");
+        ConnectionLimitingDataSource replica = limitedPools.get("replica");
+        assertThat(dataSource.unwrap(ConnectionLimitingDataSource.class)).isSameAs(primary);
+
+        try (Connection connection0 = dataSource.getConnection(); Connection connection1 = dataSource.getConnection()) {
+            connection0.isValid(1); // the routing proxy takes the physical connection at the first use
+            connection1.isValid(1);
+
+            assertThat(primary.getAvailablePermits()).isZero();
+            assertThat(replica.getAvailablePermits()).isEqualTo(3);
+        }
+
+        assertThat(meterRegistry.find(PERMIT_WAITING_METRIC).gauges())
+                .extracting(gauge -> gauge.getId().getTag("pool"))
+                .containsExactlyInAnyOrderElementsOf(List.of("dataSource", "replica"));
+    }
+}
@@ -0,0 +1,94 @@
+package com.naumov.identityservice.datasource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.springframework.beans.factory.config.YamlPropertiesFactoryBean;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+
+import static com.naumov.identityservice.datasource.ReplicaLagMonitor.LAG_METRIC;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReplicaLagMonitorTest {
+    private static final Duration MAX_LAG = Duration.ofSeconds(5);
+    private static final String LAG_TEST_SCHEMA = "replica_lag_test";
+
+    /*
+     * A NULL lag is an unknown lag: the replica stops being used until a lag is measured again.
+     * */
+    @Test
+    void unknownLagMakesReplicaUnusable() {
+        JdbcDataSource replica = new JdbcDataSource();
+        replica.setURL("jdbc:h2:mem:replica-lag;DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(replica);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS lag (seconds DOUBLE)");
+        jdbcTemplate.update("DELETE FROM lag");
+        jdbcTemplate.update("INSERT INTO lag VALUES (1.5)");
+
+        ReplicaLagMonitor monitor = new ReplicaLagMonitor(replica, "SELECT seconds FROM lag", MAX_LAG);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        monitor.bindTo(meterRegistry);
+        monitor.checkLag();
+        assertThat(monitor.isReplicaUsable()).isTrue();
+
+        jdbcTemplate.update("UPDATE lag SET seconds = NULL");
+        monitor.checkLag();
+        assertThat(monitor.isReplicaUsable()).isFalse();
+        assertThat(meterRegistry.get(LAG_METRIC).gauge().value()).isNaN();
+
+        jdbcTemplate.update("UPDATE lag SET seconds = 0");
+        monitor.checkLag();
+        assertThat(monitor.isReplicaUsable()).isTrue();
+    }
+
+    /*
+     * The lag query of application.yaml on a replica that lost its primary: all received WAL is replayed,
+     * which is no lag only while the WAL receiver is streaming. Runs against a database given by
+     * mvn test -Didentity-service.test.postgres-url=jdbc:postgresql://localhost:5432/postgres?user=postgres
+     * A schema searched before pg_catalog stands in for the recovery state and pg_stat_wal_receiver.
+     * */
+    @Test
+    @EnabledIfSystemProperty(named = "identity-service.test.postgres-url", matches = ".+")
+    void disconnectedReplicaIsUnusable() {
+        PGSimpleDataSource replica = new PGSimpleDataSource();
+        replica.setURL(System.getProperty("identity-service.test.postgres-url"));
+        replica.setCurrentSchema(LAG_TEST_SCHEMA + ",pg_catalog");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(replica);
+        jdbcTemplate.execute("CREATE SCHEMA " + LAG_TEST_SCHEMA);
+        try {
+            jdbcTemplate.execute("CREATE FUNCTION " + LAG_TEST_SCHEMA + ".pg_is_in_recovery() RETURNS boolean " +
+                    "LANGUAGE sql AS 'SELECT true'");
+            jdbcTemplate.execute("CREATE TABLE " + LAG_TEST_SCHEMA + ".pg_stat_wal_receiver " +
+                    "(status text, last_msg_receipt_time timestamptz)");
+
+            ReplicaLagMonitor monitor = new ReplicaLagMonitor(replica, lagQuery(), MAX_LAG);
+            jdbcTemplate.update("INSERT INTO pg_stat_wal_receiver VALUES ('streaming', now())");
+            monitor.checkLag();
+            assertThat(monitor.isReplicaUsable()).isTrue();
+
+            // no receiver running
+            jdbcTemplate.update("DELETE FROM pg_stat_wal_receiver");
+            monitor.checkLag();
+            assertThat(monitor.isReplicaUsable()).isFalse();
+
+            // the receiver waits for a primary that stopped sending
+            jdbcTemplate.update("INSERT INTO pg_stat_wal_receiver VALUES ('streaming', now() - interval '1 hour')");
+            monitor.checkLag();
+            assertThat(monitor.isReplicaUsable()).isFalse();
+        } finally {
+            jdbcTemplate.execute("DROP SCHEMA " + LAG_TEST_SCHEMA + " CASCADE");
+        }
+    }
+
+    // the test application.yaml shadows the main one on the classpath
+    private static String lagQuery() {
+        YamlPropertiesFactoryBean yaml = new YamlPropertiesFactoryBean();
+        yaml.setResources(new FileSystemResource("src/main/resources/application.yaml"));
+        return yaml.getObject().getProperty("identity-service.replica.lag-query");
+    }
+}
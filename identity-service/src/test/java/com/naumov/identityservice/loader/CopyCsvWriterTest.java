@@ -0,0 +1,50 @@
+package com.naumov.identityservice.loader;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CopyCsvWriterTest {
+    private final StringWriter out = new StringWriter();
+    private final CopyCsvWriter rows = new CopyCsvWriter(out);
+
+    @Test
+    void writesPlainValuesUnquoted() throws IOException {
+        rows.field(42L).field("Иркутская область").field(true).field(LocalDate.of(1996, 12, 12)).endRow();
+        rows.field("second").endRow();
+
+        assertThat(out).hasToString("42,Иркутская область,true,1996-12-12\nsecond\n");
+    }
+
+    /*
+     * COPY reads an empty unquoted field as NULL, so an empty string is quoted.
+     * */
+    @Test
+    void distinguishesNullFromEmptyString() throws IOException {
+        rows.field(null).field("").field(null).endRow();
+
+        assertThat(out).hasToString(",\"\",\n");
+    }
+
+    @Test
+    void quotesDelimitersQuotesAndLineBreaks() throws IOException {
+        rows.field("Lenina st, 1").field("\"Quoted\" name").field("line\nbreak").field("carriage\rreturn").endRow();
+
+        assertThat(out).hasToString("\"Lenina st, 1\",\"\"\"Quoted\"\" name\",\"line\nbreak\",\"carriage\rreturn\"\n");
+    }
+
+    /*
+     * An unquoted \. alone on a line ends COPY FROM STDIN, the rows after it would be lost.
+     * */
+    @Test
+    void quotesEndOfDataMarker() throws IOException {
+        rows.field("\\.").endRow();
+        rows.field("\\.\\").field("a\\.").endRow();
+
+        assertThat(out).hasToString("\"\\.\"\n\\.\\,a\\.\n");
+    }
+}
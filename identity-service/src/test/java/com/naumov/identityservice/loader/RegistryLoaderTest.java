@@ -0,0 +1,123 @@
+package com.naumov.identityservice.loader;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.naumov.identityservice.dto.DtoConverter;
+import com.naumov.identityservice.dto.validation.PersonRequestValidator;
+import com.naumov.identityservice.repository.RegionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.naumov.identityservice.service.PersonMessages.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+ * The loader uses COPY and the functions of PostgreSQL. Runs against a database given by
+ * mvn test -Didentity-service.test.postgres-url=jdbc:postgresql://localhost:5432/postgres?user=postgres
+ * The merge commits, the loaded people are deleted after each test.
+ * */
+@SpringBootTest(properties = "spring.datasource.url=${identity-service.test.postgres-url}")
+@EnabledIfSystemProperty(named = "identity-service.test.postgres-url", matches = ".+")
+class RegistryLoaderTest {
+    private static final String PHONE_PREFIX = "+700000025";
+
+    @Autowired
+    DataSource dataSource;
+    @Autowired
+    ObjectMapper objectMapper;
+    @Autowired
+    PersonRequestValidator personRequestValidator;
+    @Autowired
+    DtoConverter dtoConverter;
+    @Autowired
+    RegionRepository regionRepository;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void deleteLoadedPeople() {
+        String owners = "SELECT owner_id FROM contacts WHERE phone_number LIKE '" + PHONE_PREFIX + "%'";
+        List<Long> ids = jdbcTemplate.queryForList(owners, Long.class);
+        if (ids.isEmpty()) return;
+
+        String idList = ids.stream().map(String::valueOf).collect(Collectors.joining(","));
+        jdbcTemplate.update("DELETE FROM contacts WHERE owner_id IN (" + idList + ")");
+        jdbcTemplate.update("DELETE FROM identity_documents WHERE owner_id IN (" + idList + ")");
+        jdbcTemplate.update("DELETE FROM people_addresses WHERE person_id IN (" + idList + ")");
+        jdbcTemplate.update("DELETE FROM people WHERE id IN (" + idList + ")");
+    }
+
+    /*
+     * Record 1 comes before record 2 with the same phone number, but loses its document to record 0.
+     * As in POST /people/bulk, record 2 only repeats a rejected record and is loaded.
+     * */
+    @Test
+    void recordRepeatingRejectedRecordIsLoaded() throws Exception {
+        String input = String.join("\n",
+                personJson("Loader first", "01", "2501"),
+                personJson("Loader second", "02", "2501"),
+                personJson("Loader third", "02", "2503"));
+
+        StringWriter rejects = new StringWriter();
+        RegistryLoader.Result result = registryLoader().load(toStream(input), rejects);
+
+        assertThat(result).isEqualTo(new RegistryLoader.Result(2, 1));
+        assertThat(rejects.toString().lines().skip(1).toList()).containsExactly(
+                "1," + DOCUMENT_EXISTS_ERROR.formatted("INNER_PASSPORT", "2501"));
+        assertThat(loadedNames()).containsExactlyInAnyOrder("Loader first", "Loader third");
+    }
+
+    /*
+     * The rejects have the errors PersonService returns, whether found while reading or by the merge.
+     * */
+    @Test
+    void rejectsHaveServiceErrors() throws Exception {
+        String input = String.join("\n",
+                personJson("Loader first", "01", "2511"),
+                personJson("Loader second", "01", "2512"),
+                personJson("Loader third", "03", "2513").replace("\"is_primary\": true", "\"is_primary\": false"));
+
+        StringWriter rejects = new StringWriter();
+        registryLoader().load(toStream(input), new StringWriter());
+        RegistryLoader.Result result = registryLoader().load(toStream(input), rejects);
+
+        assertThat(result).isEqualTo(new RegistryLoader.Result(0, 3));
+        assertThat(rejects.toString().lines().skip(1).toList()).containsExactly(
+                "2," + PRIMARY_DOCUMENT_ERROR,
+                "0," + DOCUMENT_EXISTS_ERROR.formatted("INNER_PASSPORT", "2511"),
+                "1," + CONTACT_EXISTS_ERROR.formatted(PHONE_PREFIX + "01"));
+    }
+
+    private RegistryLoader registryLoader() {
+        return new RegistryLoader(dataSource, objectMapper, personRequestValidator, dtoConverter, regionRepository,
+                100);
+    }
+
+    private List<String> loadedNames() {
+        return jdbcTemplate.queryForList("SELECT p.full_name FROM people p JOIN contacts c ON c.owner_id = p.id " +
+                "WHERE c.phone_number LIKE '" + PHONE_PREFIX + "%'", String.class);
+    }
+
+    private static ByteArrayInputStream toStream(String input) {
+        return new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String personJson(String name, String phoneSuffix, String documentNumber) {
+        return """
+                {"name": "%s", "date_of_birth": "12-12-1996", "is_hidden": "false", \
+                "addresses": [{"region": "Иркутская область", "address": "Loader line", "registration_address": true}], \
+                "contacts": [{"phone_number": "%s%s"}], \
+                "identity_documents": [{"type": "INNER_PASSPORT", "full_number": "%s", "issue_date": "12-12-2007", \
+                "is_primary": true}]}""".formatted(name, PHONE_PREFIX, phoneSuffix, documentNumber);
+    }
+}
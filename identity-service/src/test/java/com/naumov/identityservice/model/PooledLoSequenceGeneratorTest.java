@@ -0,0 +1,113 @@
+package com.naumov.identityservice.model;
+
+import com.naumov.identityservice.repository.RegionRepository;
+import com.naumov.identityservice.service.PersonService;
+import liquibase.Contexts;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static com.naumov.identityservice.EntityTestUtil.simplePersonBuilder;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+ * The increments and their skip in changeset 7 are PostgreSQL only. Runs against a database given by
+ * mvn test -Didentity-service.test.postgres-url=jdbc:postgresql://localhost:5432/postgres?user=postgres
+ * The people are rolled back, the sequences keep their state, the increments are restored to the allocation size.
+ * */
+@SpringBootTest(properties = {
+        "spring.datasource.url=${identity-service.test.postgres-url}",
+        "identity-service.id.allocation-size=" + PooledLoSequenceGeneratorTest.ALLOCATION_SIZE
+})
+@EnabledIfSystemProperty(named = "identity-service.test.postgres-url", matches = ".+")
+class PooledLoSequenceGeneratorTest {
+    static final int ALLOCATION_SIZE = 100;
+    private static final List<String> SEQUENCES = List.of("people_seq", "addresses_seq", "people_addresses_seq",
+            "contacts_seq", "identity_documents_seq");
+
+    @Autowired
+    PersonService personService;
+    @Autowired
+    RegionRepository regionRepository;
+    @Autowired
+    TransactionTemplate transactionTemplate;
+    @Autowired
+    DataSource dataSource;
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    /*
+     * One sequence call gives the ids of a block: the people get consecutive ids from the value returned by
+     * the call. A changed allocation size moves the sequence past the ids reserved with the old increment,
+     * so the block still in use by this instance is never handed out again.
+     * */
+    @Test
+    void idsComeFromBlocksReservedBySequence() throws Exception {
+        assertThat(SEQUENCES).allSatisfy(sequence -> assertThat(increment(sequence)).isEqualTo(ALLOCATION_SIZE));
+
+        List<Long> ids = createPeople(3);
+        long blockStart = lastValue("people_seq");
+        assertThat(ids).isEqualTo(LongStream.range(blockStart, blockStart + 3).boxed().toList());
+
+        updateChangelog(ALLOCATION_SIZE * 10);
+        try {
+            assertThat(SEQUENCES).allSatisfy(sequence ->
+                    assertThat(increment(sequence)).isEqualTo(ALLOCATION_SIZE * 10));
+            assertThat(jdbcTemplate.queryForObject("SELECT nextval('people_seq')", Long.class))
+                    .isEqualTo(blockStart + ALLOCATION_SIZE);
+            assertThat(createPeople(1)).containsExactly(blockStart + 3);
+        } finally {
+            updateChangelog(ALLOCATION_SIZE);
+        }
+        assertThat(SEQUENCES).allSatisfy(sequence -> assertThat(increment(sequence)).isEqualTo(ALLOCATION_SIZE));
+    }
+
+    private List<Long> createPeople(int count) {
+        return transactionTemplate.execute(status -> {
+            List<Long> ids = IntStream.range(0, count)
+                    .mapToObj(i -> personService.createPerson(simplePersonBuilder(regionRepository.findAll().get(0))
+                            .phoneNumber("+7000000240" + i)
+                            .documentFullNumber("240" + i)
+                            .build()).getId())
+                    .toList();
+            status.setRollbackOnly();
+            return ids;
+        });
+    }
+
+    // the application run with another identity-service.id.allocation-size
+    private void updateChangelog(int allocationSize) throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            Database database = DatabaseFactory.getInstance()
+                    .findCorrectDatabaseImplementation(new JdbcConnection(connection));
+            Liquibase liquibase = new Liquibase("db/changelog/db.changelog-master.yaml",
+                    new ClassLoaderResourceAccessor(), database);
+            liquibase.setChangeLogParameter("id-allocation-size", allocationSize);
+            liquibase.update(new Contexts());
+        }
+    }
+
+    private int increment(String sequence) {
+        return jdbcTemplate.queryForObject("SELECT increment_by FROM pg_sequences WHERE sequencename = ?",
+                Integer.class, sequence);
+    }
+
+    private long lastValue(String sequence) {
+        return jdbcTemplate.queryForObject("SELECT last_value FROM pg_sequences WHERE sequencename = ?",
+                Long.class, sequence);
+    }
+}
@@ -0,0 +1,54 @@
+package com.naumov.identityservice.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.naumov.identityservice.dto.DtoConverter;
+import com.naumov.identityservice.model.Person;
+import com.naumov.identityservice.service.PersonService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import static com.naumov.identityservice.EntityTestUtil.simplePersonBuilder;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+ * findPersonJsonById uses the JSON functions of PostgreSQL, H2 has none of them. Runs against a database given by
+ * mvn test -Didentity-service.test.postgres-url=jdbc:postgresql://localhost:5432/postgres?user=postgres
+ * */
+@SpringBootTest(properties = "spring.datasource.url=${identity-service.test.postgres-url}")
+@EnabledIfSystemProperty(named = "identity-service.test.postgres-url", matches = ".+")
+@Transactional
+class PersonRepositoryJsonTest {
+    @Autowired
+    PersonRepository personRepository;
+    @Autowired
+    RegionRepository regionRepository;
+    @Autowired
+    PersonService personService;
+    @Autowired
+    DtoConverter dtoConverter;
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Test
+    void personJsonEqualsGetResponse() throws Exception {
+        Person person = personService.createPerson(simplePersonBuilder(regionRepository.findAll().get(0))
+                .phoneNumber("+70000001701")
+                .documentFullNumber("1701")
+                .addressString("Json address, \"quoted\"")
+                .build());
+
+        String json = personRepository.findPersonJsonById(person.getId()).orElseThrow();
+        String expectedJson = objectMapper.writeValueAsString(
+                dtoConverter.toPersonGetResponse(personService.getPerson(person.getId())));
+
+        assertThat(objectMapper.readTree(json)).isEqualTo(objectMapper.readTree(expectedJson));
+    }
+
+    @Test
+    void missingPersonIsEmpty() {
+        assertThat(personRepository.findPersonJsonById(-1)).isEmpty();
+    }
+}
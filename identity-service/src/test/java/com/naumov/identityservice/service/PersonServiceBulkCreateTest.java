@@ -0,0 +1,134 @@
+package com.naumov.identityservice.service;
+
+import com.naumov.identityservice.EntityTestUtil;
+import com.naumov.identityservice.model.IdentityDocument;
+import com.naumov.identityservice.model.Person;
+import com.naumov.identityservice.model.Region;
+import com.naumov.identityservice.repository.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+import static com.naumov.identityservice.EntityTestUtil.element;
+import static com.naumov.identityservice.EntityTestUtil.addAddressRecord;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Transactional
+class PersonServiceBulkCreateTest {
+    @Autowired
+    PersonService personService;
+    @Autowired
+    RegionRepository regionRepository;
+    @Autowired
+    PersonRepository personRepository;
+    @Autowired
+    AddressRepository addressRepository;
+    @Autowired
+    ContactRepository contactRepository;
+    @Autowired
+    IdentityDocumentRepository identityDocumentRepository;
+    @Autowired
+    PersonAddressRepository personAddressRepository;
+
+    @Test
+    void createPeopleWithSharedAddress() {
+        Person person0 = simplePersonBuilder()
+                .phoneNumber("+70000000000")
+                .documentFullNumber("00000")
+                .build();
+        Person person1 = simplePersonBuilder()
+                .phoneNumber("+71111111111")
+                .documentFullNumber("11111")
+                .build();
+
+        List<PersonCreateResult> results = personService.createPeople(List.of(person0, person1));
+
+        assertThat(results).hasSize(2).allMatch(PersonCreateResult::isCreated);
+        assertThat(results).allMatch(result -> result.getPerson().getId() != null);
+        assertThat(personRepository.count()).isEqualTo(2);
+        assertThat(addressRepository.count()).isEqualTo(1);
+        assertThat(personAddressRepository.count()).isEqualTo(2);
+        assertThat(contactRepository.count()).isEqualTo(2);
+        assertThat(identityDocumentRepository.count()).isEqualTo(2);
+    }
+
+    @Test
+    void createPeopleWithExistingAddress() {
+        personService.createPerson(simplePersonBuilder().build());
+
+        Person person = simplePersonBuilder()
+                .phoneNumber("+71111111111")
+                .documentFullNumber("11111")
+                .build();
+        addAddressRecord(person, regionRepository.findAll().get(1), "Address", false);
+
+        List<PersonCreateResult> results = personService.createPeople(List.of(person));
+
+        assertThat(results).hasSize(1).allMatch(PersonCreateResult::isCreated);
+        assertThat(addressRepository.count()).isEqualTo(2);
+        assertThat(personAddressRepository.count()).isEqualTo(3);
+    }
+
+    @Test
+    void rejectInvalidPeopleOnly() {
+        personService.createPerson(simplePersonBuilder().build());
+
+        Person takenPhoneNumber = simplePersonBuilder()
+                .documentFullNumber("11111")
+                .build();
+        Person takenDocument = simplePersonBuilder()
+                .phoneNumber("+71111111111")
+                .build();
+        Person noPrimaryDocument = simplePersonBuilder()
+                .phoneNumber("+72222222222")
+                .documentFullNumber("22222")
+                .documentIsPrimary(false)
+                .build();
+        Person unknownRegion = simplePersonBuilder()
+                .phoneNumber("+73333333333")
+                .documentFullNumber("33333")
+                .build();
+        element(unknownRegion.getAddressRecords(), 0).getAddress().setRegion(Region.builder().name("Unknown").build());
+        Person valid = simplePersonBuilder()
+                .phoneNumber("+74444444444")
+                .documentFullNumber("44444")
+                .build();
+
+        List<PersonCreateResult> results = personService.createPeople(
+                List.of(takenPhoneNumber, takenDocument, noPrimaryDocument, unknownRegion, valid));
+
+        assertThat(results).hasSize(5);
+        assertThat(results.get(0).getError()).contains("phoneNumber=+71234567890");
+        assertThat(results.get(1).getError()).contains("fullNumber=12345");
+        assertThat(results.get(2).isCreated()).isFalse();
+        assertThat(results.get(3).getError()).contains("non-existing region");
+        assertThat(results.get(4).isCreated()).isTrue();
+        assertThat(personRepository.count()).isEqualTo(2);
+    }
+
+    @Test
+    void rejectDuplicatesWithinChunk() {
+        Person person0 = simplePersonBuilder().build();
+        Person samePhoneNumber = simplePersonBuilder()
+                .documentType(IdentityDocument.DocumentType.DRIVER_LICENSE)
+                .build();
+        Person sameDocument = simplePersonBuilder()
+                .phoneNumber("+71111111111")
+                .build();
+
+        List<PersonCreateResult> results = personService.createPeople(List.of(person0, samePhoneNumber, sameDocument));
+
+        assertThat(results.get(0).isCreated()).isTrue();
+        assertThat(results.get(1).isCreated()).isFalse();
+        assertThat(results.get(2).isCreated()).isFalse();
+        assertThat(personRepository.count()).isEqualTo(1);
+    }
+
+    private EntityTestUtil.SimplePersonBuilder simplePersonBuilder() {
+        return EntityTestUtil.simplePersonBuilder(regionRepository.findAll().get(0));
+    }
+}
@@ -207,6 +207,16 @@ class PersonServiceCreateTest {
                 .isInstanceOf(BadInputException.class);
     }
 
+    @Test
+    void createPersonWithDuplicatedContact() {
+        Person newPerson = simplePersonBuilder().build();
+        addContact(newPerson, element(newPerson.getContacts(), 0).getPhoneNumber());
+
+        assertThatThrownBy(() -> personService.createPerson(newPerson))
+                .isInstanceOf(BadInputException.class)
+                .hasMessageContaining("already exists");
+    }
+
     private SimplePersonBuilder simplePersonBuilder() {
         return EntityTestUtil.simplePersonBuilder(regionRepository.findAll().get(0));
     }
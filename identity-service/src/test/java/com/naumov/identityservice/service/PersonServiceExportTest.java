@@ -0,0 +1,96 @@
+package com.naumov.identityservice.service;
+
+import com.naumov.identityservice.exception.BadInputException;
+import com.naumov.identityservice.model.Person;
+import com.naumov.identityservice.model.Region;
+import com.naumov.identityservice.repository.RegionRepository;
+import com.naumov.identityservice.repository.projection.PersonBulkView;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.naumov.identityservice.EntityTestUtil.addContact;
+import static com.naumov.identityservice.EntityTestUtil.simplePersonBuilder;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@Transactional
+class PersonServiceExportTest {
+    @Autowired
+    PersonService personService;
+    @Autowired
+    RegionRepository regionRepository;
+
+    @Test
+    void exportPeople() {
+        List<Region> allRegions = regionRepository.findAll();
+        Region region0 = allRegions.get(0);
+        Region region1 = allRegions.get(1);
+
+        Person person0 = simplePersonBuilder(region0)
+                .phoneNumber("+70000000000")
+                .documentFullNumber("00000")
+                .build();
+        addContact(person0, "+70000000001");
+        person0 = personService.createPerson(person0);
+
+        Person person1 = personService.createPerson(simplePersonBuilder(region1)
+                .phoneNumber("+71111111111")
+                .documentFullNumber("11111")
+                .build());
+
+        List<PersonBulkView> exported = new ArrayList<>();
+        personService.exportPeople(null, 0, Long.MAX_VALUE, false, exported::add);
+
+        assertThat(exported).extracting(PersonBulkView::getId)
+                .containsExactly(person0.getId(), person1.getId());
+
+        // the person with two contacts is exported once with the first contact
+        PersonBulkView view0 = exported.get(0);
+        assertThat(view0.getContactPhoneNumber()).isEqualTo("+70000000000");
+        assertThat(view0.getDocumentFullNumber()).isEqualTo("00000");
+        assertThat(view0.getRegionName()).isEqualTo(region0.getName());
+        assertThat(view0.getAddress()).isEqualTo("Address");
+    }
+
+    @Test
+    void exportPeopleByRegionAndIdRange() {
+        List<Region> allRegions = regionRepository.findAll();
+        Region region0 = allRegions.get(0);
+        Region region1 = allRegions.get(1);
+
+        Person person0 = personService.createPerson(simplePersonBuilder(region0)
+                .phoneNumber("+70000000000")
+                .documentFullNumber("00000")
+                .build());
+        Person person1 = personService.createPerson(simplePersonBuilder(region1)
+                .phoneNumber("+71111111111")
+                .documentFullNumber("11111")
+                .build());
+        Person person2 = personService.createPerson(simplePersonBuilder(region0)
+                .phoneNumber("+72222222222")
+                .documentFullNumber("22222")
+                .build());
+
+        List<PersonBulkView> exported = new ArrayList<>();
+        personService.exportPeople(region0.getName(), 0, Long.MAX_VALUE, false, exported::add);
+        assertThat(exported).extracting(PersonBulkView::getId)
+                .containsExactly(person0.getId(), person2.getId());
+
+        exported.clear();
+        personService.exportPeople(null, person1.getId(), person2.getId(), false, exported::add);
+        assertThat(exported).extracting(PersonBulkView::getId)
+                .containsExactly(person1.getId(), person2.getId());
+    }
+
+    @Test
+    void exportPeopleWithWrongIdRange() {
+        assertThatThrownBy(() -> personService.exportPeople(null, 2, 1, false, view -> {
+        })).isInstanceOf(BadInputException.class);
+    }
+}
@@ -10,6 +10,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
+
+import static com.naumov.identityservice.EntityTestUtil.element;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
@@ -30,8 +33,8 @@ public class PersonServiceFindByNameAndDocumentTest {
 
         assertThat(personRepository.count()).isEqualTo(1);
         assertThat(personService.findByNameAndDocument(savedPerson.getName(),
-                savedPerson.getIdentityDocuments().get(0).getType().name(),
-                savedPerson.getIdentityDocuments().get(0).getFullNumber())).isPresent();
+                element(savedPerson.getIdentityDocuments(), 0).getType().name(),
+                element(savedPerson.getIdentityDocuments(), 0).getFullNumber(), false)).isPresent();
     }
 
     @Test
@@ -42,8 +45,8 @@ public class PersonServiceFindByNameAndDocumentTest {
         assertThat(personRepository.count()).isEqualTo(1);
 
         assertThat(personService.findByNameAndDocument("Wrong name",
-                savedPerson.getIdentityDocuments().get(0).getType().name(),
-                savedPerson.getIdentityDocuments().get(0).getFullNumber())).isEmpty();
+                element(savedPerson.getIdentityDocuments(), 0).getType().name(),
+                element(savedPerson.getIdentityDocuments(), 0).getFullNumber(), false)).isEmpty();
     }
 
     @Test
@@ -54,7 +57,7 @@ public class PersonServiceFindByNameAndDocumentTest {
         assertThat(personRepository.count()).isEqualTo(1);
         assertThatThrownBy(() -> personService.findByNameAndDocument(savedPerson.getName(),
                 "WRONG_DOC_TYPE",
-                savedPerson.getIdentityDocuments().get(0).getFullNumber())).isInstanceOf(BadInputException.class);
+                element(savedPerson.getIdentityDocuments(), 0).getFullNumber(), false)).isInstanceOf(BadInputException.class);
     }
 
     @Test
@@ -64,8 +67,55 @@ public class PersonServiceFindByNameAndDocumentTest {
 
         assertThat(personRepository.count()).isEqualTo(1);
         assertThat(personService.findByNameAndDocument(savedPerson.getName(),
-                savedPerson.getIdentityDocuments().get(0).getType().name(),
-                "1111111111")).isEmpty();
+                element(savedPerson.getIdentityDocuments(), 0).getType().name(),
+                "1111111111", false)).isEmpty();
+    }
+
+    @Test
+    void findBatchInInputOrder() {
+        Person savedPerson0 = personService.createPerson(simplePersonBuilder()
+                .name("Person 0")
+                .phoneNumber("+70000000000")
+                .documentFullNumber("00000")
+                .build());
+        Person savedPerson1 = personService.createPerson(simplePersonBuilder()
+                .name("Person 1")
+                .phoneNumber("+71111111111")
+                .documentFullNumber("11111")
+                .build());
+        String docType = element(savedPerson0.getIdentityDocuments(), 0).getType().name();
+
+        List<Long> foundIds = personService.findByNameAndDocuments(List.of(
+                new PersonFindCriteria("Person 1", docType, "11111"),
+                new PersonFindCriteria("Wrong name", docType, "00000"),
+                new PersonFindCriteria("Person 0", docType, "00000"),
+                new PersonFindCriteria("Person 0", docType, "1111111111")
+        ), false);
+
+        assertThat(foundIds).containsExactly(savedPerson1.getId(), null, savedPerson0.getId(), null);
+    }
+
+    @Test
+    void findBatchWithWrongDoctype() {
+        assertThatThrownBy(() -> personService.findByNameAndDocuments(List.of(
+                new PersonFindCriteria("Name", "WRONG_DOC_TYPE", "00000")
+        ), false)).isInstanceOf(BadInputException.class);
+    }
+
+    @Test
+    void hiddenPersonIsFoundWithIncludeHiddenOnly() {
+        Person savedPerson = personService.createPerson(simplePersonBuilder()
+                .isHidden(true)
+                .build());
+        String docType = element(savedPerson.getIdentityDocuments(), 0).getType().name();
+        String docNumber = element(savedPerson.getIdentityDocuments(), 0).getFullNumber();
+        List<PersonFindCriteria> criteria = List.of(new PersonFindCriteria(savedPerson.getName(), docType, docNumber));
+
+        assertThat(personService.findByNameAndDocument(savedPerson.getName(), docType, docNumber, false)).isEmpty();
+        assertThat(personService.findByNameAndDocument(savedPerson.getName(), docType, docNumber, true))
+                .contains(savedPerson.getId());
+        assertThat(personService.findByNameAndDocuments(criteria, false)).containsExactly((Long) null);
+        assertThat(personService.findByNameAndDocuments(criteria, true)).containsExactly(savedPerson.getId());
     }
 
     private EntityTestUtil.SimplePersonBuilder simplePersonBuilder() {
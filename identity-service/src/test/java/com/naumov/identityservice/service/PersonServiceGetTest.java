@@ -4,6 +4,7 @@ import com.naumov.identityservice.exception.ResourceNotFoundException;
 import com.naumov.identityservice.model.Person;
 import com.naumov.identityservice.model.Region;
 import com.naumov.identityservice.repository.*;
+import com.naumov.identityservice.repository.projection.PersonBulkView;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -55,6 +56,28 @@ class PersonServiceGetTest {
                 .isInstanceOf(ResourceNotFoundException.class);
     }
 
+    @Test
+    void getPeopleByIdsInRequestedOrder() {
+        Region region0 = regionRepository.findAll().get(0);
+        Person savedPerson0 = personService.createPerson(simplePersonBuilder(region0)
+                .phoneNumber("+70000000000")
+                .documentFullNumber("00000")
+                .build());
+        Person savedPerson1 = personService.createPerson(simplePersonBuilder(region0)
+                .phoneNumber("+71111111111")
+                .documentFullNumber("11111")
+                .build());
+
+        List<Person> foundPeople = personService.getPeople(List.of(savedPerson1.getId(), -1L,
+                savedPerson0.getId(), savedPerson1.getId()));
+
+        assertThat(foundPeople).extracting(Person::getId)
+                .containsExactly(savedPerson1.getId(), savedPerson0.getId());
+        assertThat(foundPeople).allMatch(p -> p.getContacts().size() == 1);
+        assertThat(foundPeople).allMatch(p -> p.getIdentityDocuments().size() == 1);
+        assertThat(foundPeople).allMatch(p -> p.getAddressRecords().size() == 1);
+    }
+
     @Test
     void testGetPeopleByRegion() {
         List<Region> allRegions = regionRepository.findAll();
@@ -101,36 +124,78 @@ class PersonServiceGetTest {
         assertThat(personRepository.count()).isEqualTo(4);
 
         // test search by region
-        List<Person> people00 = personService.getPeople(region0.getName(), 0, 2);
+        List<PersonBulkView> people00 = personService.getPeople(region0.getName(), 0, 2, false);
         assertThat(people00.size()).isEqualTo(2);
-        assertThat(people00).allMatch(p -> p.getContacts() != null && p.getContacts().size() == 1);
-        assertThat(people00).allMatch(p -> p.getIdentityDocuments() != null && p.getIdentityDocuments().size() == 1);
-        assertThat(people00).allMatch(p -> p.getAddressRecords() != null && p.getAddressRecords().size() == 1);
-        assertThat(people00).allMatch(p -> p.getAddressRecords().get(0) != null && p.getAddressRecords().get(0).getAddress() != null);
+        assertThat(people00).allMatch(p -> p.getContactId() != null && p.getContactPhoneNumber() != null);
+        assertThat(people00).allMatch(p -> p.getDocumentId() != null && p.getDocumentFullNumber() != null);
+        assertThat(people00).allMatch(p -> p.getAddressId() != null && p.getAddress() != null);
+        assertThat(people00).allMatch(p -> region0.getName().equals(p.getRegionName()));
 
-        List<Person> people01 = personService.getPeople(region0.getName(), 1, 2);
+        List<PersonBulkView> people01 = personService.getPeople(region0.getName(), 1, 2, false);
         assertThat(people01.size()).isEqualTo(1);
 
-        List<Person> people02 = personService.getPeople(region0.getName(), 2, 2);
+        List<PersonBulkView> people02 = personService.getPeople(region0.getName(), 2, 2, false);
         assertThat(people02.size()).isEqualTo(0);
 
-        List<Person> people03 = personService.getPeople(region0.getName(), 0, 5);
+        List<PersonBulkView> people03 = personService.getPeople(region0.getName(), 0, 5, false);
         assertThat(people03.size()).isEqualTo(3);
 
-        List<Person> people20 = personService.getPeople(region2.getName(), 0, 5);
+        List<PersonBulkView> people20 = personService.getPeople(region2.getName(), 0, 5, false);
         assertThat(people20.size()).isEqualTo(0);
 
         // test general search
-        List<Person> people30 = personService.getPeople(0, 3);
+        List<PersonBulkView> people30 = personService.getPeople(0, 3, false);
         assertThat(people30.size()).isEqualTo(3);
 
-        List<Person> people31 = personService.getPeople(1, 3);
+        List<PersonBulkView> people31 = personService.getPeople(1, 3, false);
         assertThat(people31.size()).isEqualTo(1);
 
-        List<Person> people32 = personService.getPeople(2, 3);
+        List<PersonBulkView> people32 = personService.getPeople(2, 3, false);
         assertThat(people32.size()).isEqualTo(0);
 
-        List<Person> people33 = personService.getPeople(0, 5);
+        List<PersonBulkView> people33 = personService.getPeople(0, 5, false);
         assertThat(people33.size()).isEqualTo(4);
     }
-}
\ No newline at end of file
+
+    /*
+     * Hidden people are skipped by the query itself: a page is filled with the visible people that follow,
+     * the hidden ones are returned only with includeHidden.
+     * */
+    @Test
+    void getPeopleExcludesHiddenPeople() {
+        Region region0 = regionRepository.findAll().get(0);
+        Person visible0 = personService.createPerson(simplePersonBuilder(region0)
+                .phoneNumber("+70000000000")
+                .documentFullNumber("00000")
+                .addressString("Address 0")
+                .build());
+        Person hidden = personService.createPerson(simplePersonBuilder(region0)
+                .isHidden(true)
+                .phoneNumber("+71111111111")
+                .documentFullNumber("11111")
+                .addressString("Address 1")
+                .build());
+        Person visible1 = personService.createPerson(simplePersonBuilder(region0)
+                .phoneNumber("+72222222222")
+                .documentFullNumber("22222")
+                .addressString("Address 2")
+                .build());
+
+        assertThat(personService.getPeople(0, 2, false))
+                .extracting(PersonBulkView::getId)
+                .containsExactly(visible0.getId(), visible1.getId());
+        assertThat(personService.getPeople(region0.getName(), 0, 5, false))
+                .extracting(PersonBulkView::getId)
+                .containsExactly(visible0.getId(), visible1.getId());
+        assertThat(personService.getPeopleAfter(visible0.getId(), 1, false))
+                .extracting(PersonBulkView::getId)
+                .containsExactly(visible1.getId());
+        assertThat(personService.getPeopleAfter(region0.getName(), visible0.getId(), 1, true))
+                .extracting(PersonBulkView::getId)
+                .containsExactly(hidden.getId());
+        assertThat(personService.getPeople(0, 5, true)).hasSize(3);
+
+        // lookups by id are not filtered
+        assertThat(personService.getPerson(hidden.getId()).getIsHidden()).isTrue();
+    }
+}
@@ -0,0 +1,148 @@
+package com.naumov.identityservice.service;
+
+import com.naumov.identityservice.EntityTestUtil;
+import com.naumov.identityservice.exception.BadInputException;
+import com.naumov.identityservice.exception.ResourceNotFoundException;
+import com.naumov.identityservice.exception.VersionConflictException;
+import com.naumov.identityservice.model.Contact;
+import com.naumov.identityservice.model.IdentityDocument;
+import com.naumov.identityservice.model.Person;
+import com.naumov.identityservice.repository.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+import static com.naumov.identityservice.EntityTestUtil.element;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@Transactional
+class PersonServicePatchTest {
+    @Autowired
+    PersonService personService;
+    @Autowired
+    RegionRepository regionRepository;
+    @Autowired
+    PersonRepository personRepository;
+    @Autowired
+    ContactRepository contactRepository;
+    @Autowired
+    IdentityDocumentRepository identityDocumentRepository;
+    @Autowired
+    PersonAddressRepository personAddressRepository;
+
+    @Test
+    void patchNameOnly() {
+        Person savedPerson = personService.createPerson(simplePersonBuilder().isHidden(true).build());
+        Long id = savedPerson.getId();
+
+        PersonPatch appliedPatch = personService.patchPerson(id, PersonPatch.builder()
+                .version(savedPerson.getVersion())
+                .name("Patched name")
+                .build());
+
+        assertThat(appliedPatch.getVersion()).isEqualTo(savedPerson.getVersion() + 1);
+        assertThat(appliedPatch.getContacts()).isNull();
+        assertThat(appliedPatch.getIdentityDocuments()).isNull();
+        assertThat(appliedPatch.getAddressRecords()).isNull();
+
+        Person person = personRepository.getReferenceById(id);
+        assertThat(person.getName()).isEqualTo("Patched name");
+        assertThat(person.getDateOfBirth()).isEqualTo(LocalDate.EPOCH);
+        assertThat(person.getIsHidden()).isTrue();
+        assertThat(contactRepository.count()).isEqualTo(1);
+        assertThat(identityDocumentRepository.count()).isEqualTo(1);
+        assertThat(personAddressRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void patchContactsReplacesThem() {
+        Person savedPerson = personService.createPerson(simplePersonBuilder().build());
+        Long id = savedPerson.getId();
+        Long documentId = element(savedPerson.getIdentityDocuments(), 0).getId();
+
+        Contact newContact = Contact.builder()
+                .phoneNumber("+70987654321")
+                .build();
+        PersonPatch appliedPatch = personService.patchPerson(id, PersonPatch.builder()
+                .version(savedPerson.getVersion())
+                .contacts(Set.of(newContact))
+                .build());
+
+        assertThat(appliedPatch.getContacts()).hasSize(1);
+        assertThat(contactRepository.count()).isEqualTo(1);
+        assertThat(contactRepository.findPhoneNumbersIn(List.of("+70987654321"))).hasSize(1);
+        assertThat(identityDocumentRepository.findById(documentId)).isPresent();
+        assertThat(personRepository.getReferenceById(id).getName()).isEqualTo("Name");
+    }
+
+    @Test
+    void patchIdentityDocumentsWithoutPrimary() {
+        Person savedPerson = personService.createPerson(simplePersonBuilder().build());
+
+        IdentityDocument document = IdentityDocument.builder()
+                .id(element(savedPerson.getIdentityDocuments(), 0).getId())
+                .type(IdentityDocument.DocumentType.INNER_PASSPORT)
+                .fullNumber("12345")
+                .issueDate(LocalDate.parse("1999-12-12"))
+                .isPrimary(false)
+                .build();
+        PersonPatch patch = PersonPatch.builder()
+                .version(savedPerson.getVersion())
+                .identityDocuments(Set.of(document))
+                .build();
+
+        assertThatThrownBy(() -> personService.patchPerson(savedPerson.getId(), patch))
+                .isInstanceOf(BadInputException.class);
+    }
+
+    @Test
+    void patchWithoutVersion() {
+        Person savedPerson = personService.createPerson(simplePersonBuilder().build());
+        PersonPatch patch = PersonPatch.builder()
+                .name("Patched name")
+                .build();
+
+        assertThatThrownBy(() -> personService.patchPerson(savedPerson.getId(), patch))
+                .isInstanceOf(BadInputException.class);
+    }
+
+    @Test
+    void patchNonExistingPerson() {
+        PersonPatch patch = PersonPatch.builder()
+                .version(0L)
+                .name("Patched name")
+                .build();
+
+        assertThatThrownBy(() -> personService.patchPerson(-1L, patch))
+                .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    void patchWithStaleVersion() {
+        Person savedPerson = personService.createPerson(simplePersonBuilder().build());
+        Long id = savedPerson.getId();
+        personService.patchPerson(id, PersonPatch.builder()
+                .version(savedPerson.getVersion())
+                .name("First client")
+                .build());
+
+        PersonPatch stalePatch = PersonPatch.builder()
+                .version(savedPerson.getVersion())
+                .name("Second client")
+                .build();
+        assertThatThrownBy(() -> personService.patchPerson(id, stalePatch))
+                .isInstanceOf(VersionConflictException.class);
+        assertThat(personRepository.getReferenceById(id).getName()).isEqualTo("First client");
+    }
+
+    private EntityTestUtil.SimplePersonBuilder simplePersonBuilder() {
+        return EntityTestUtil.simplePersonBuilder(regionRepository.findAll().get(0));
+    }
+}
@@ -3,10 +3,12 @@ package com.naumov.identityservice.service;
 import com.naumov.identityservice.EntityTestUtil;
 import com.naumov.identityservice.exception.BadInputException;
 import com.naumov.identityservice.exception.ResourceNotFoundException;
+import com.naumov.identityservice.exception.VersionConflictException;
 import com.naumov.identityservice.model.IdentityDocument;
 import com.naumov.identityservice.model.Person;
 import com.naumov.identityservice.model.Region;
 import com.naumov.identityservice.repository.*;
+import com.naumov.identityservice.repository.projection.PersonBulkView;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -54,12 +56,13 @@ class PersonServiceUpdateTest {
         Long id = savedPerson.getId();
         Person updatedPerson = simplePersonBuilder()
                 .id(id)
-                .contactId(savedPerson.getContacts().get(0).getId())
-                .identityDocumentId(savedPerson.getIdentityDocuments().get(0).getId())
-                .addressRecordId(savedPerson.getAddressRecords().get(0).getId())
-                .addressId(savedPerson.getAddressRecords().get(0).getAddress().getId())
+                .version(savedPerson.getVersion())
+                .contactId(element(savedPerson.getContacts(), 0).getId())
+                .identityDocumentId(element(savedPerson.getIdentityDocuments(), 0).getId())
+                .addressRecordId(element(savedPerson.getAddressRecords(), 0).getId())
+                .addressId(element(savedPerson.getAddressRecords(), 0).getAddress().getId())
                 .name("Updated name")
-                .dateOfBirth(LocalDate.MAX)
+                .dateOfBirth(LocalDate.of(1990, 5, 17))
                 .build();
 
         personService.updatePerson(updatedPerson);
@@ -72,7 +75,78 @@ class PersonServiceUpdateTest {
 
         Person person = personRepository.getReferenceById(id);
         assertThat(person.getName()).isEqualTo("Updated name");
-        assertThat(person.getDateOfBirth()).isEqualTo(LocalDate.MAX);
+        assertThat(person.getDateOfBirth()).isEqualTo(LocalDate.of(1990, 5, 17));
+    }
+
+    @Test
+    void updateEntityWithoutVersion() {
+        Person savedPerson = personService.createPerson(simplePersonBuilder().build());
+
+        Person updatedPerson = simplePersonBuilder()
+                .id(savedPerson.getId())
+                .build();
+        assertThatThrownBy(() -> personService.updatePerson(updatedPerson))
+                .isInstanceOf(BadInputException.class);
+    }
+
+    @Test
+    void updateNonExistingPerson() {
+        Person updatedPerson = simplePersonBuilder()
+                .id(-1L)
+                .version(0L)
+                .build();
+        assertThatThrownBy(() -> personService.updatePerson(updatedPerson))
+                .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    void versionIsIncrementedOnEveryUpdate() {
+        Person savedPerson = personService.createPerson(simplePersonBuilder().build());
+        Long id = savedPerson.getId();
+        assertThat(savedPerson.getVersion()).isEqualTo(0L);
+
+        for (long version = 0; version < 2; version++) {
+            Person updatedPerson = simplePersonBuilder()
+                    .id(id)
+                    .version(version)
+                    .contactId(element(savedPerson.getContacts(), 0).getId())
+                    .identityDocumentId(element(savedPerson.getIdentityDocuments(), 0).getId())
+                    .addressId(element(savedPerson.getAddressRecords(), 0).getAddress().getId())
+                    .build();
+
+            assertThat(personService.updatePerson(updatedPerson).getVersion()).isEqualTo(version + 1);
+        }
+
+        assertThat(personRepository.getReferenceById(id).getVersion()).isEqualTo(2L);
+    }
+
+    @Test
+    void updateWithStaleVersion() {
+        Person savedPerson = personService.createPerson(simplePersonBuilder().build());
+        Long id = savedPerson.getId();
+
+        // two clients have read version 0, the first one updates the person
+        personService.updatePerson(simplePersonBuilder()
+                .id(id)
+                .version(0L)
+                .contactId(element(savedPerson.getContacts(), 0).getId())
+                .identityDocumentId(element(savedPerson.getIdentityDocuments(), 0).getId())
+                .addressId(element(savedPerson.getAddressRecords(), 0).getAddress().getId())
+                .name("First client")
+                .build());
+
+        Person staleUpdate = simplePersonBuilder()
+                .id(id)
+                .version(0L)
+                .contactId(element(savedPerson.getContacts(), 0).getId())
+                .identityDocumentId(element(savedPerson.getIdentityDocuments(), 0).getId())
+                .addressId(element(savedPerson.getAddressRecords(), 0).getAddress().getId())
+                .name("Second client")
+                .build();
+        assertThatThrownBy(() -> personService.updatePerson(staleUpdate))
+                .isInstanceOf(VersionConflictException.class);
+
+        assertThat(personRepository.getReferenceById(id).getName()).isEqualTo("First client");
     }
 
     @Test
@@ -85,10 +159,11 @@ class PersonServiceUpdateTest {
         Long id = savedPerson.getId();
         Person updatedPerson = simplePersonBuilder()
                 .id(id)
-                .contactId(savedPerson.getContacts().get(0).getId())
-                .identityDocumentId(savedPerson.getIdentityDocuments().get(0).getId())
-                .addressRecordId(savedPerson.getAddressRecords().get(0).getId())
-                .addressId(savedPerson.getAddressRecords().get(0).getAddress().getId())
+                .version(savedPerson.getVersion())
+                .contactId(element(savedPerson.getContacts(), 0).getId())
+                .identityDocumentId(element(savedPerson.getIdentityDocuments(), 0).getId())
+                .addressRecordId(element(savedPerson.getAddressRecords(), 0).getId())
+                .addressId(element(savedPerson.getAddressRecords(), 0).getAddress().getId())
                 .build();
 
         addContact(updatedPerson, "+70987654321");
@@ -117,13 +192,14 @@ class PersonServiceUpdateTest {
         Long id = savedPerson.getId();
         Person updatedPerson = simplePersonBuilder()
                 .id(id)
-                .contactId(savedPerson.getContacts().get(0).getId())
-                .identityDocumentId(savedPerson.getIdentityDocuments().get(0).getId())
-                .addressRecordId(savedPerson.getAddressRecords().get(0).getId())
-                .addressId(savedPerson.getAddressRecords().get(0).getAddress().getId())
+                .version(savedPerson.getVersion())
+                .contactId(element(savedPerson.getContacts(), 0).getId())
+                .identityDocumentId(element(savedPerson.getIdentityDocuments(), 0).getId())
+                .addressRecordId(element(savedPerson.getAddressRecords(), 0).getId())
+                .addressId(element(savedPerson.getAddressRecords(), 0).getAddress().getId())
                 .build();
 
-        updatedPerson.setContacts(Collections.emptyList());
+        updatedPerson.setContacts(Collections.emptySet());
         Person person = personService.updatePerson(updatedPerson);
         assertThat(person.getContacts()).isEmpty();
         assertThat(contactRepository.count()).isEqualTo(0);
@@ -140,13 +216,14 @@ class PersonServiceUpdateTest {
         Long id = savedPerson.getId();
         Person updatedPerson = simplePersonBuilder()
                 .id(id)
-                .contactId(savedPerson.getContacts().get(0).getId())
-                .identityDocumentId(savedPerson.getIdentityDocuments().get(0).getId())
-                .addressRecordId(savedPerson.getAddressRecords().get(0).getId())
-                .addressId(savedPerson.getAddressRecords().get(0).getAddress().getId())
+                .version(savedPerson.getVersion())
+                .contactId(element(savedPerson.getContacts(), 0).getId())
+                .identityDocumentId(element(savedPerson.getIdentityDocuments(), 0).getId())
+                .addressRecordId(element(savedPerson.getAddressRecords(), 0).getId())
+                .addressId(element(savedPerson.getAddressRecords(), 0).getAddress().getId())
                 .build();
 
-        updatedPerson.setIdentityDocuments(Collections.emptyList());
+        updatedPerson.setIdentityDocuments(Collections.emptySet());
         assertThatThrownBy(() -> personService.updatePerson(updatedPerson))
                 .isInstanceOf(BadInputException.class);
     }
@@ -161,10 +238,11 @@ class PersonServiceUpdateTest {
         Long id = savedPerson.getId();
         Person updatedPerson = simplePersonBuilder()
                 .id(id)
-                .contactId(savedPerson.getContacts().get(0).getId())
-                .identityDocumentId(savedPerson.getIdentityDocuments().get(0).getId())
-                .addressRecordId(savedPerson.getAddressRecords().get(0).getId())
-                .addressId(savedPerson.getAddressRecords().get(0).getAddress().getId())
+                .version(savedPerson.getVersion())
+                .contactId(element(savedPerson.getContacts(), 0).getId())
+                .identityDocumentId(element(savedPerson.getIdentityDocuments(), 0).getId())
+                .addressRecordId(element(savedPerson.getAddressRecords(), 0).getId())
+                .addressId(element(savedPerson.getAddressRecords(), 0).getAddress().getId())
                 .build();
 
         addContact(-1L, updatedPerson, "+70987654321");
@@ -183,13 +261,14 @@ class PersonServiceUpdateTest {
         Long id = savedPerson.getId();
         Person updatedPerson = simplePersonBuilder()
                 .id(id)
-                .contactId(savedPerson.getContacts().get(0).getId())
-                .identityDocumentId(savedPerson.getIdentityDocuments().get(0).getId())
-                .addressRecordId(savedPerson.getAddressRecords().get(0).getId())
-                .addressId(savedPerson.getAddressRecords().get(0).getAddress().getId())
+                .version(savedPerson.getVersion())
+                .contactId(element(savedPerson.getContacts(), 0).getId())
+                .identityDocumentId(element(savedPerson.getIdentityDocuments(), 0).getId())
+                .addressRecordId(element(savedPerson.getAddressRecords(), 0).getId())
+                .addressId(element(savedPerson.getAddressRecords(), 0).getAddress().getId())
                 .build();
 
-        addContact(updatedPerson, savedPerson.getContacts().get(0).getPhoneNumber());
+        addContact(updatedPerson, element(savedPerson.getContacts(), 0).getPhoneNumber());
 
         assertThatThrownBy(() -> personService.updatePerson(updatedPerson))
                 .isInstanceOf(BadInputException.class);
@@ -205,10 +284,11 @@ class PersonServiceUpdateTest {
         Long id = savedPerson.getId();
         Person updatedPerson = simplePersonBuilder()
                 .id(id)
-                .contactId(savedPerson.getContacts().get(0).getId())
-                .identityDocumentId(savedPerson.getIdentityDocuments().get(0).getId())
-                .addressRecordId(savedPerson.getAddressRecords().get(0).getId())
-                .addressId(savedPerson.getAddressRecords().get(0).getAddress().getId())
+                .version(savedPerson.getVersion())
+                .contactId(element(savedPerson.getContacts(), 0).getId())
+                .identityDocumentId(element(savedPerson.getIdentityDocuments(), 0).getId())
+                .addressRecordId(element(savedPerson.getAddressRecords(), 0).getId())
+                .addressId(element(savedPerson.getAddressRecords(), 0).getAddress().getId())
                 .build();
 
         addIdentityDocument(-1L, updatedPerson, IdentityDocument.DocumentType.FOREIGN_PASSPORT, "00000", "2000-12-12", false);
@@ -227,10 +307,11 @@ class PersonServiceUpdateTest {
         Long id = savedPerson.getId();
         Person updatedPerson = simplePersonBuilder()
                 .id(id)
-                .contactId(savedPerson.getContacts().get(0).getId())
-                .identityDocumentId(savedPerson.getIdentityDocuments().get(0).getId())
-                .addressRecordId(savedPerson.getAddressRecords().get(0).getId())
-                .addressId(savedPerson.getAddressRecords().get(0).getAddress().getId())
+                .version(savedPerson.getVersion())
+                .contactId(element(savedPerson.getContacts(), 0).getId())
+                .identityDocumentId(element(savedPerson.getIdentityDocuments(), 0).getId())
+                .addressRecordId(element(savedPerson.getAddressRecords(), 0).getId())
+                .addressId(element(savedPerson.getAddressRecords(), 0).getAddress().getId())
                 .build();
 
         addIdentityDocument(updatedPerson, IdentityDocument.DocumentType.INNER_PASSPORT, "12345", "1999-12-12", false);
@@ -249,10 +330,11 @@ class PersonServiceUpdateTest {
         Long id = savedPerson.getId();
         Person updatedPerson = simplePersonBuilder()
                 .id(id)
-                .contactId(savedPerson.getContacts().get(0).getId())
-                .identityDocumentId(savedPerson.getIdentityDocuments().get(0).getId())
-                .addressRecordId(savedPerson.getAddressRecords().get(0).getId())
-                .addressId(savedPerson.getAddressRecords().get(0).getAddress().getId())
+                .version(savedPerson.getVersion())
+                .contactId(element(savedPerson.getContacts(), 0).getId())
+                .identityDocumentId(element(savedPerson.getIdentityDocuments(), 0).getId())
+                .addressRecordId(element(savedPerson.getAddressRecords(), 0).getId())
+                .addressId(element(savedPerson.getAddressRecords(), 0).getAddress().getId())
                 .build();
 
         addIdentityDocument(updatedPerson, IdentityDocument.DocumentType.INNER_PASSPORT, "22222", "1999-12-12", true);
@@ -271,11 +353,12 @@ class PersonServiceUpdateTest {
         Long id = savedPerson.getId();
         Person updatedPerson = simplePersonBuilder()
                 .id(id)
-                .contactId(savedPerson.getContacts().get(0).getId())
-                .identityDocumentId(savedPerson.getIdentityDocuments().get(0).getId())
+                .version(savedPerson.getVersion())
+                .contactId(element(savedPerson.getContacts(), 0).getId())
+                .identityDocumentId(element(savedPerson.getIdentityDocuments(), 0).getId())
                 .build();
 
-        updatedPerson.setAddressRecords(Collections.emptyList());
+        updatedPerson.setAddressRecords(Collections.emptySet());
         Person person = personService.updatePerson(updatedPerson);
 
         assertThat(person.getAddressRecords()).isEmpty();
@@ -315,14 +398,15 @@ class PersonServiceUpdateTest {
         // update person1
         Person newPerson1 = Person.builder()
                 .id(savedPerson1.getId())
+                .version(savedPerson1.getVersion())
                 .name("Person 1")
                 .dateOfBirth(LocalDate.EPOCH)
                 .isHidden(true)
                 .build();
-        addIdentityDocument(savedPerson1.getIdentityDocuments().get(0).getId(), newPerson1, IdentityDocument.DocumentType.INTERNATIONAL_PASSPORT, "0123401234", "2001-01-01", true);
+        addIdentityDocument(element(savedPerson1.getIdentityDocuments(), 0).getId(), newPerson1, IdentityDocument.DocumentType.INTERNATIONAL_PASSPORT, "0123401234", "2001-01-01", true);
         addAddressRecord(
-                savedPerson1.getAddressRecords().get(1).getAddress().getId(),
-                savedPerson1.getAddressRecords().get(1).getId(),
+                element(savedPerson1.getAddressRecords(), 1).getAddress().getId(),
+                element(savedPerson1.getAddressRecords(), 1).getId(),
                 newPerson1,
                 region1,
                 "Address line 1",
@@ -335,6 +419,66 @@ class PersonServiceUpdateTest {
         assertThat(personAddressRepository.count()).isEqualTo(2);
     }
 
+    /*
+     * The people of a region are listed by the denormalized registration region: it follows the region change
+     * of a shared registration address for all the people registered there, and the registration flag.
+     * */
+    @Test
+    void registrationRegionFollowsRegistrationAddress() {
+        Region region0 = regionRepository.findAll().get(0);
+        Region region1 = regionRepository.findAll().get(1);
+
+        Person person0 = Person.builder()
+                .name("Person 0")
+                .dateOfBirth(LocalDate.EPOCH)
+                .build();
+        addIdentityDocument(person0, IdentityDocument.DocumentType.INNER_PASSPORT, "12345", "1999-12-12", true);
+        addAddressRecord(person0, region0, "Address line 0", true);
+        Person savedPerson0 = personService.createPerson(person0);
+
+        Person person1 = Person.builder()
+                .name("Person 1")
+                .dateOfBirth(LocalDate.EPOCH)
+                .build();
+        addIdentityDocument(person1, IdentityDocument.DocumentType.INNER_PASSPORT, "67890", "1999-12-12", true);
+        addAddressRecord(person1, region0, "Address line 0", true);
+        Person savedPerson1 = personService.createPerson(person1);
+        Long addressId = element(savedPerson0.getAddressRecords(), 0).getAddress().getId();
+
+        assertThat(personService.getPeople(region0.getName(), 0, 5, false)).hasSize(2);
+
+        // the shared address is moved to another region by person0
+        Person newPerson0 = Person.builder()
+                .id(savedPerson0.getId())
+                .version(savedPerson0.getVersion())
+                .name("Person 0")
+                .dateOfBirth(LocalDate.EPOCH)
+                .build();
+        addIdentityDocument(element(savedPerson0.getIdentityDocuments(), 0).getId(), newPerson0,
+                IdentityDocument.DocumentType.INNER_PASSPORT, "12345", "1999-12-12", true);
+        addAddressRecord(addressId, null, newPerson0, region1, "Address line 0", true);
+        personService.updatePerson(newPerson0);
+
+        assertThat(personService.getPeople(region0.getName(), 0, 5, false)).isEmpty();
+        assertThat(personService.getPeople(region1.getName(), 0, 5, false)).hasSize(2);
+
+        // person1 keeps the address, but not as the registration one
+        Person newPerson1 = Person.builder()
+                .id(savedPerson1.getId())
+                .version(savedPerson1.getVersion())
+                .name("Person 1")
+                .dateOfBirth(LocalDate.EPOCH)
+                .build();
+        addIdentityDocument(element(savedPerson1.getIdentityDocuments(), 0).getId(), newPerson1,
+                IdentityDocument.DocumentType.INNER_PASSPORT, "67890", "1999-12-12", true);
+        addAddressRecord(addressId, null, newPerson1, region1, "Address line 0", false);
+        personService.updatePerson(newPerson1);
+
+        assertThat(personService.getPeople(region1.getName(), 0, 5, false))
+                .extracting(PersonBulkView::getId)
+                .containsExactly(savedPerson0.getId());
+    }
+
     private void assertReposStateIsValid() {
         assertThat(personRepository.count()).isEqualTo(1);
         assertThat(addressRepository.count()).isEqualTo(1);
@@ -0,0 +1,78 @@
+package com.naumov.identityservice.service;
+
+import com.naumov.identityservice.model.Region;
+import com.naumov.identityservice.repository.RegionRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.Hibernate;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Transactional
+class RegionRegistryTest {
+    @Autowired
+    RegionRegistry regionRegistry;
+    @Autowired
+    RegionRepository regionRepository;
+    @Autowired
+    EntityManager entityManager;
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    void regionsArePreloaded() {
+        assertThat(regionRegistry.size()).isEqualTo(regionRepository.count());
+    }
+
+    @Test
+    void findByNameReturnsReferenceWithoutLoading() {
+        Region region = regionRepository.findAll().get(0);
+        entityManager.clear();
+
+        Optional<Region> foundRegion = regionRegistry.findByName(region.getName());
+
+        assertThat(foundRegion).isPresent();
+        assertThat(foundRegion.get().getId()).isEqualTo(region.getId());
+        assertThat(Hibernate.isInitialized(foundRegion.get())).isFalse();
+    }
+
+    @Test
+    void findByNameCountsHitsAndMisses() {
+        String regionName = regionRepository.findAll().get(0).getName();
+        double hits = lookups("hit");
+        double misses = lookups("miss");
+
+        regionRegistry.findByName(regionName);
+        regionRegistry.findByName("Non-existing region");
+
+        assertThat(lookups("hit")).isEqualTo(hits + 1);
+        assertThat(lookups("miss")).isEqualTo(misses + 1);
+    }
+
+    @Test
+    void refreshLoadsNewRegions() {
+        regionRepository.save(Region.builder().id(1000L).name("New region").build());
+        assertThat(regionRegistry.findByName("New region")).isEmpty();
+
+        regionRegistry.refresh();
+        assertThat(regionRegistry.findByName("New region")).isPresent();
+
+        regionRepository.deleteById(1000L);
+        regionRegistry.refresh();
+        assertThat(regionRegistry.findByName("New region")).isEmpty();
+    }
+
+    private double lookups(String result) {
+        return meterRegistry.get("identity-service.region-registry.lookups")
+                .tag("result", result)
+                .counter()
+                .count();
+    }
+}